@@ -0,0 +1,341 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sorts the positions of the records instead of the records. The
+ * output is a permutation file that lists, in key order, the index of
+ * each record in the input, as one long or int per record, so other
+ * files aligned with the input can be put in the same order without
+ * the sorted records ever being written. The input is left as it is.
+ *
+ * Run generation puts each record's index in place of its ID, so the
+ * runs and merges carry (key, index) pairs and equal keys keep their
+ * input order. The final merge writes only the indexes.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class ArgSorter {
+    /**
+     * the bytes of output apply gathers before writing them
+     */
+    public final static int APPLY_BYTES = 4 << 20;
+    /**
+     * the most records one read of the source may span, so indexes
+     * that are close together share a read instead of each seeking
+     */
+    public final static int SPAN_RECORDS = 64;
+
+    private String input;
+    private String permFile;
+    private String runFile;
+    private int indexBytes;
+    private int heapRecords;
+    private int fanIn;
+    private MergePlanner planner;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new ArgSorter object that writes long indexes.
+     *
+     * @param input
+     *            the file of records to sort
+     * @param permFile
+     *            the file to write the permutation to
+     * @param runFile
+     *            the scratch file for the runs
+     */
+    public ArgSorter(String input, String permFile, String runFile) {
+        this.input = input;
+        this.permFile = permFile;
+        this.runFile = runFile;
+        this.indexBytes = Long.BYTES;
+        this.heapRecords = ByteProcessor.HEAP_RECORDS;
+        this.fanIn = MergePlanner.DEFAULT_FAN_IN;
+    }
+
+    /**
+     * Set the width of each index in the permutation file
+     *
+     * @param bytes
+     *          4 for ints, which halves the output when the input has
+     *          fewer than 2^31 records, or 8 for longs
+     */
+    public void setIndexBytes(int bytes)
+    {
+        checkIndexBytes(bytes);
+        this.indexBytes = bytes;
+    }
+
+    /**
+     * Set the number of records the replacement selection heap holds
+     *
+     * @param records
+     *          The heap size in records
+     */
+    public void setHeapRecords(int records)
+    {
+        this.heapRecords = records;
+    }
+
+    /**
+     * Set the number of runs merged at once
+     *
+     * @param k
+     *          The merge fan-in
+     */
+    public void setFanIn(int k)
+    {
+        this.fanIn = k;
+    }
+
+    /**
+     * Write the permutation that sorts the input
+     *
+     * @throws IOException
+     */
+    public void sort() throws IOException
+    {
+        long records = new File(input).length() / Record.BYTES;
+        if (indexBytes == Integer.BYTES && records > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(input + " has " + records
+                + " records, too many for int indexes");
+        }
+        ByteProcessor processor = new ByteProcessor(input,
+            new MinHeap<Record>(new Record[heapRecords], 0, heapRecords),
+            runFile, heapRecords);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(permFile), APPLY_BYTES));
+        planner = null;
+        try
+        {
+            if (processor.isSorted())
+            {
+                //Already in key order, so every record stays put
+                for (long i = 0; i < records; i++)
+                {
+                    writeIndex(out, i);
+                }
+                return;
+            }
+            processor.setIndexIds(true);
+            processor.readRecords();
+            planner = new MergePlanner(fanIn, null);
+            planner.plan(MergePlanner.findRuns(runFile));
+            MergeIterator sorted = planner.iterate(runFile);
+            try
+            {
+                while (sorted.hasNext())
+                {
+                    writeIndex(out, sorted.next().getID());
+                }
+            }
+            finally
+            {
+                sorted.close();
+            }
+        }
+        finally
+        {
+            out.close();
+            new File(runFile).delete();
+        }
+    }
+
+    /**
+     * Write one index in the chosen width
+     *
+     * @param out
+     *          The permutation file
+     * @param index
+     *          The index
+     * @throws IOException
+     */
+    private void writeIndex(DataOutputStream out, long index)
+        throws IOException
+    {
+        if (indexBytes == Integer.BYTES)
+        {
+            out.writeInt((int)index);
+        }
+        else
+        {
+            out.writeLong(index);
+        }
+    }
+
+    /**
+     * Reorder a file of fixed width records by a permutation. Indexes
+     * are read in batches, each batch is sorted by index so the source
+     * is read front to back, and indexes close together are fetched
+     * with one read. The gathered batch is then written out in
+     * permutation order, to a temporary file that replaces dest only
+     * once every index has been checked, so a bad permutation leaves
+     * dest as it was.
+     *
+     * @param permFile
+     *          The permutation file
+     * @param indexBytes
+     *          The width of its indexes, 4 or 8
+     * @param source
+     *          The file to reorder
+     * @param width
+     *          The bytes in each record of source
+     * @param dest
+     *          The file to write the reordered records to
+     * @throws IOException
+     *          Also if an index is past the end of source
+     */
+    public static void apply(String permFile, int indexBytes, String source,
+        int width, String dest) throws IOException
+    {
+        checkIndexBytes(indexBytes);
+        long sourceRecords = new File(source).length() / width;
+        long left = new File(permFile).length() / indexBytes;
+        int batch = Math.max(1, APPLY_BYTES / width);
+        long[] indexes = new long[batch];
+        long[] slots = new long[batch];
+        byte[] gathered = new byte[batch * width];
+        byte[] span = new byte[SPAN_RECORDS * width];
+        DataInputStream perm = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(permFile), APPLY_BYTES));
+        RandomAccessFile src = new RandomAccessFile(source, "r");
+        File tmp = new File(dest + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        boolean done = false;
+        try
+        {
+            while (left > 0)
+            {
+                int n = (int)Math.min(left, batch);
+                for (int i = 0; i < n; i++)
+                {
+                    indexes[i] = indexBytes == Integer.BYTES
+                        ? perm.readInt() : perm.readLong();
+                    if (indexes[i] < 0 || indexes[i] >= sourceRecords)
+                    {
+                        throw new IOException("index " + indexes[i]
+                            + " is past the end of " + source);
+                    }
+                    slots[i] = i;
+                }
+                BlockScan.sortBlock(indexes, slots, n);
+                for (int i = 0; i < n;)
+                {
+                    //Take every index within one span of the first
+                    int j = i + 1;
+                    while (j < n && indexes[j] - indexes[i] < SPAN_RECORDS)
+                    {
+                        j++;
+                    }
+                    int spanned = (int)(indexes[j - 1] - indexes[i]) + 1;
+                    src.seek(indexes[i] * width);
+                    src.readFully(span, 0, spanned * width);
+                    for (int k = i; k < j; k++)
+                    {
+                        System.arraycopy(span,
+                            (int)(indexes[k] - indexes[i]) * width,
+                            gathered, (int)slots[k] * width, width);
+                    }
+                    i = j;
+                }
+                out.write(gathered, 0, n * width);
+                left -= n;
+            }
+            done = true;
+        }
+        finally
+        {
+            perm.close();
+            src.close();
+            out.close();
+            if (!done)
+            {
+                tmp.delete();
+            }
+        }
+        Files.move(tmp.toPath(), new File(dest).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reject an index width other than int or long
+     *
+     * @param bytes
+     *          The width
+     */
+    private static void checkIndexBytes(int bytes)
+    {
+        if (bytes != Integer.BYTES && bytes != Long.BYTES)
+        {
+            throw new IllegalArgumentException("indexes are 4 or 8 bytes");
+        }
+    }
+
+    /**
+     * Get the planner used by the last sort
+     *
+     * @return
+     *          The planner, or null if the input was already sorted
+     */
+    public MergePlanner getPlanner()
+    {
+        return planner;
+    }
+
+    /**
+     * @param args
+     *     Command line parameters: the file to sort and the permutation
+     *     file to write, or -apply followed by a permutation file, a
+     *     source file, its record width and the file to write the
+     *     reordered source to. Add -int for int indexes.
+     */
+    public static void main(String[] args) {
+        int bytes = Long.BYTES;
+        List<String> files = new ArrayList<String>();
+        for (String arg : args)
+        {
+            if (arg.equals("-int"))
+            {
+                bytes = Integer.BYTES;
+            }
+            else
+            {
+                files.add(arg);
+            }
+        }
+        try
+        {
+            if (files.get(0).equals("-apply"))
+            {
+                apply(files.get(1), bytes, files.get(2),
+                    Integer.parseInt(files.get(3)), files.get(4));
+                return;
+            }
+            ArgSorter sorter = new ArgSorter(files.get(0), files.get(1),
+                Externalsort.RUN_FILE);
+            sorter.setIndexBytes(bytes);
+            sorter.sort();
+            if (sorter.getPlanner() != null)
+            {
+                System.out.println(sorter.getPlanner().report());
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class ArgSorterTest extends TestCase {
+    private String input;
+    private String perm;
+    private String runFile;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/argInput.bin";
+        perm = "solutionTestData/argPerm.bin";
+        runFile = "solutionTestData/argRun.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        String[] names = { input, perm, runFile,
+            "solutionTestData/argColumn.bin", "solutionTestData/argSorted.bin",
+            "solutionTestData/argReordered.bin" };
+        for (String name : names) {
+            new File(name).delete();
+        }
+    }
+
+    /**
+     * Read the key of record i
+     *
+     * @param raf
+     *            the file of records
+     * @param i
+     *            the record
+     * @return the key
+     * @throws IOException
+     */
+    private double keyAt(RandomAccessFile raf, long i) throws IOException {
+        raf.seek(i * Record.BYTES + 8);
+        return raf.readDouble();
+    }
+
+    /**
+     * The permutation visits the keys in order, every index once, and
+     * equal keys in input order
+     *
+     * @throws IOException
+     */
+    public void testPermutationSortsKeys() throws IOException {
+        ByteFile file = new ByteFile(input, 40);
+        file.writeRandomRecords(new Random(44));
+        //Copy some keys so there are ties to break
+        RandomAccessFile raf = new RandomAccessFile(input, "rw");
+        for (long i = 0; i < 1000; i += 2) {
+            raf.seek((i + 1) * Record.BYTES + 8);
+            raf.writeDouble(keyAt(raf, i));
+        }
+        byte[] before = Files.readAllBytes(new File(input).toPath());
+
+        ArgSorter sorter = new ArgSorter(input, perm, runFile);
+        sorter.setHeapRecords(ByteProcessor.RECORDS_PER_BLOCK);
+        sorter.setFanIn(3);
+        sorter.sort();
+        assertTrue(sorter.getPlanner().getMerges() > 1);
+        long n = 40L * ByteProcessor.RECORDS_PER_BLOCK;
+        assertEquals(n * Long.BYTES, new File(perm).length());
+
+        DataInputStream in = new DataInputStream(new FileInputStream(perm));
+        boolean[] seen = new boolean[(int)n];
+        long prev = in.readLong();
+        seen[(int)prev] = true;
+        for (long i = 1; i < n; i++) {
+            long index = in.readLong();
+            assertFalse(seen[(int)index]);
+            seen[(int)index] = true;
+            int cmp = Double.compare(keyAt(raf, prev), keyAt(raf, index));
+            assertTrue(cmp < 0 || (cmp == 0 && prev < index));
+            prev = index;
+        }
+        in.close();
+        raf.close();
+        //The input is left alone and the run file is gone
+        assertTrue(Arrays.equals(before, Files.readAllBytes(
+            new File(input).toPath())));
+        assertFalse(new File(runFile).exists());
+    }
+
+    /**
+     * Applying the permutation to the input and to an aligned column
+     * puts both in key order
+     *
+     * @throws IOException
+     */
+    public void testApply() throws IOException {
+        new ByteFile(input, 30).writeRandomRecords(new Random(45));
+        long n = 30L * ByteProcessor.RECORDS_PER_BLOCK;
+        String column = "solutionTestData/argColumn.bin";
+        DataOutputStream col = new DataOutputStream(
+            new FileOutputStream(column));
+        for (int i = 0; i < n; i++) {
+            col.writeInt(3 * i);
+        }
+        col.close();
+
+        ArgSorter sorter = new ArgSorter(input, perm, runFile);
+        sorter.setIndexBytes(Integer.BYTES);
+        sorter.sort();
+        assertEquals(n * Integer.BYTES, new File(perm).length());
+
+        String sorted = "solutionTestData/argSorted.bin";
+        ArgSorter.apply(perm, Integer.BYTES, input, Record.BYTES, sorted);
+        assertTrue(new ByteProcessor(sorted, null).isSorted());
+        String reordered = "solutionTestData/argReordered.bin";
+        ArgSorter.apply(perm, Integer.BYTES, column, Integer.BYTES,
+            reordered);
+        DataInputStream p = new DataInputStream(new FileInputStream(perm));
+        DataInputStream r = new DataInputStream(
+            new FileInputStream(reordered));
+        for (long i = 0; i < n; i++) {
+            assertEquals(3 * p.readInt(), r.readInt());
+        }
+        p.close();
+        r.close();
+
+        //An index past the end of the source is caught, and the
+        //earlier output is left as it was
+        byte[] before = Files.readAllBytes(new File(reordered).toPath());
+        Exception bad = null;
+        try {
+            ArgSorter.apply(perm, Integer.BYTES, column, 8, reordered);
+        }
+        catch (IOException e) {
+            bad = e;
+        }
+        assertNotNull(bad);
+        assertTrue(Arrays.equals(before, Files.readAllBytes(
+            new File(reordered).toPath())));
+        assertFalse(new File(reordered + ".tmp").exists());
+    }
+
+    /**
+     * A sorted input gives the identity permutation without any runs
+     *
+     * @throws IOException
+     */
+    public void testSortedInput() throws IOException {
+        new ByteFile(input, 5).writeRandomRecords(new Random(46));
+        new Sorter(input, runFile).sort();
+        ArgSorter sorter = new ArgSorter(input, perm, runFile);
+        sorter.sort();
+        assertNull(sorter.getPlanner());
+        DataInputStream in = new DataInputStream(new FileInputStream(perm));
+        for (long i = 0; i < 5L * ByteProcessor.RECORDS_PER_BLOCK; i++) {
+            assertEquals(i, in.readLong());
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded ring of block buffers that connects two stages running on
+ * different threads. The producer takes a free block, fills it and
+ * puts it in the ring; the consumer takes it, uses it and recycles it.
+ * No buffer is ever allocated after the ring is made, and a producer
+ * that gets too far ahead waits for a free block.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class BlockRing {
+    /**
+     * marks the end of the stream, never recycled
+     */
+    private static final Block END = new Block(0);
+
+    private BlockingQueue<Block> free;
+    private BlockingQueue<Block> full;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new BlockRing object.
+     *
+     * @param blocks
+     *            the number of block buffers in the ring
+     * @param blockBytes
+     *            the size of each buffer
+     */
+    public BlockRing(int blocks, int blockBytes) {
+        free = new ArrayBlockingQueue<Block>(blocks);
+        //One extra slot so the end marker never waits
+        full = new ArrayBlockingQueue<Block>(blocks + 1);
+        for (int i = 0; i < blocks; i++)
+        {
+            free.add(new Block(blockBytes));
+        }
+    }
+
+    /**
+     * Wait for a block the producer can fill
+     *
+     * @return
+     *          The empty block
+     * @throws InterruptedIOException
+     *          If the stage is cancelled while waiting
+     */
+    public Block takeFree() throws InterruptedIOException
+    {
+        return take(free);
+    }
+
+    /**
+     * Pass a filled block on to the consumer
+     *
+     * @param block
+     *          The block, with its length set
+     */
+    public void put(Block block)
+    {
+        full.add(block);
+    }
+
+    /**
+     * Wait for the next filled block
+     *
+     * @return
+     *          The block, or one that isEnd() once the producer is done
+     * @throws InterruptedIOException
+     *          If the stage is cancelled while waiting
+     */
+    public Block take() throws InterruptedIOException
+    {
+        return take(full);
+    }
+
+    /**
+     * Give a used block back to the producer
+     *
+     * @param block
+     *          The block
+     */
+    public void recycle(Block block)
+    {
+        free.add(block);
+    }
+
+    /**
+     * Tell the consumer no more blocks are coming
+     */
+    public void finish()
+    {
+        full.add(END);
+    }
+
+    /**
+     * Wait for a block from a queue
+     *
+     * @param queue
+     *          The queue
+     * @return
+     *          The block
+     * @throws InterruptedIOException
+     */
+    private static Block take(BlockingQueue<Block> queue)
+        throws InterruptedIOException
+    {
+        try
+        {
+            return queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("pipeline stage cancelled");
+        }
+    }
+
+    /**
+     * The reader stage: read the rest of raf into the ring, then
+     * finish it, even if a read fails
+     *
+     * @param raf
+     *          The file to read from its current position
+     * @throws IOException
+     */
+    public void fill(RandomAccessFile raf) throws IOException
+    {
+        try
+        {
+            while (true)
+            {
+                Block block = takeFree();
+                //Fill the whole buffer so no record is split between two
+                block.length = 0;
+                int read;
+                while (block.length < block.data.length && (read = raf.read(
+                    block.data, block.length,
+                    block.data.length - block.length)) != -1)
+                {
+                    block.length += read;
+                }
+                if (block.length == 0)
+                {
+                    recycle(block);
+                    break;
+                }
+                put(block);
+            }
+        }
+        finally
+        {
+            finish();
+        }
+    }
+
+    /**
+     * The writer stage: pass every block in the ring to sink until the
+     * ring is finished. After a failed write the blocks are still
+     * recycled so the producer is never left waiting.
+     *
+     * @param sink
+     *          Where the blocks go, such as RandomAccessFile::write
+     * @throws IOException
+     *          The first write that failed
+     */
+    public void drain(Sink sink) throws IOException
+    {
+        IOException failed = null;
+        for (Block block = take(); !block.isEnd(); block = take())
+        {
+            if (failed == null)
+            {
+                try
+                {
+                    sink.write(block.data, 0, block.length);
+                }
+                catch (IOException e)
+                {
+                    failed = e;
+                }
+            }
+            recycle(block);
+        }
+        if (failed != null)
+        {
+            throw failed;
+        }
+    }
+
+    /**
+     * Somewhere the writer stage can put bytes
+     */
+    public interface Sink {
+        /**
+         * Write bytes
+         *
+         * @param data
+         *          The buffer
+         * @param offset
+         *          The first byte to write
+         * @param length
+         *          The number of bytes
+         * @throws IOException
+         */
+        void write(byte[] data, int offset, int length) throws IOException;
+    }
+
+    /**
+     * One buffer of the ring and how much of it is used
+     */
+    public static class Block {
+        private byte[] data;
+        private int length;
+
+        // ----------------------------------------------------------
+        /**
+         * Create a new Block object.
+         *
+         * @param bytes
+         *            the size of the buffer
+         */
+        Block(int bytes) {
+            data = new byte[bytes];
+        }
+
+        /**
+         * Get the buffer
+         *
+         * @return
+         *          The buffer
+         */
+        public byte[] getData()
+        {
+            return data;
+        }
+
+        /**
+         * Get the number of bytes in use
+         *
+         * @return
+         *          The length
+         */
+        public int getLength()
+        {
+            return length;
+        }
+
+        /**
+         * Set the number of bytes in use
+         *
+         * @param bytes
+         *          The length
+         */
+        public void setLength(int bytes)
+        {
+            length = bytes;
+        }
+
+        /**
+         * Check if this block marks the end of the stream
+         *
+         * @return
+         *          True for the end marker
+         */
+        public boolean isEnd()
+        {
+            return this == END;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class BlockRingTest extends TestCase {
+    private String source;
+    private String copy;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        source = "solutionTestData/ringSource.bin";
+        copy = "solutionTestData/ringCopy.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(source).delete();
+        new File(copy).delete();
+    }
+
+    /**
+     * A reader and a writer thread joined by a small ring copy a file
+     * that does not end on a buffer boundary
+     *
+     * @throws Exception
+     */
+    public void testCopyThroughRing() throws Exception {
+        byte[] data = new byte[10 * 1000 + 7];
+        new Random(38).nextBytes(data);
+        Files.write(new File(source).toPath(), data);
+
+        BlockRing ring = new BlockRing(2, 1000);
+        RandomAccessFile in = new RandomAccessFile(source, "r");
+        RandomAccessFile out = new RandomAccessFile(copy, "rw");
+        out.setLength(0);
+        Thread reader = new Thread(() -> {
+            try {
+                ring.fill(in);
+            }
+            catch (IOException e) {
+                fail(e.getMessage());
+            }
+        });
+        reader.start();
+        ring.drain(out::write);
+        reader.join();
+        in.close();
+        out.close();
+        assertTrue(Arrays.equals(data,
+            Files.readAllBytes(new File(copy).toPath())));
+    }
+
+    /**
+     * Run generation through the pipeline writes every record, with
+     * runs at least as long as the heap
+     *
+     * @throws IOException
+     */
+    public void testRunsMatchHeapOrder() throws IOException {
+        ByteFile file = new ByteFile(source, 40);
+        file.writeRandomRecords(new Random(38));
+        for (int heapRecords : new int[] { 16, 1000, 4096 }) {
+            ByteProcessor processor = new ByteProcessor(source,
+                new MinHeap<Record>(new Record[heapRecords], 0,
+                    heapRecords), copy, heapRecords);
+            processor.readRecords();
+            assertEquals(new File(source).length(),
+                new File(copy).length());
+            assertEquals(processor.getRunChecksum(),
+                MergeManifest.checksum(copy, 0, processor.getRunBytes()));
+            //Only the runs cut off by the end of the input are short
+            List<Run> runs = MergePlanner.findRuns(copy);
+            for (int r = 0; r < runs.size() - 2; r++) {
+                assertTrue(runs.get(r).getRecords() >= heapRecords);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the BlockScan kernels against the record at a time loops they
+ * replace, on 512 record blocks held in memory so only the CPU work is
+ * measured.
+ * Run with: java BlockScanBenchmark [blocks]
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class BlockScanBenchmark {
+
+    /**
+     * @param args
+     *     Command line parameters: optionally the number of blocks
+     */
+    public static void main(String[] args) {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        byte[][] sorted = new byte[blocks][];
+        byte[][] random = new byte[blocks][];
+        Random rng = new Random(blocks);
+        double key = 0;
+        for (int b = 0; b < blocks; b++)
+        {
+            ByteBuffer s = ByteBuffer.allocate(ByteProcessor.BYTES_PER_BLOCK);
+            ByteBuffer r = ByteBuffer.allocate(ByteProcessor.BYTES_PER_BLOCK);
+            for (int i = 0; i < ByteProcessor.RECORDS_PER_BLOCK; i++)
+            {
+                key += rng.nextDouble();
+                s.putLong(rng.nextLong()).putDouble(key);
+                r.putLong(rng.nextLong()).putDouble(rng.nextDouble());
+            }
+            sorted[b] = s.array();
+            random[b] = r.array();
+        }
+        //Warm up, then time
+        for (int round = 0; round < 3; round++)
+        {
+            long scalar = time(() -> scalarIsSorted(sorted));
+            long block = time(() -> blockIsSorted(sorted));
+            long sortScalar = time(() -> scalarSort(random));
+            long sortBlock = time(() -> blockSort(random));
+            if (round == 2)
+            {
+                System.out.printf("isSorted: record loop %d us, "
+                    + "block scan %d us (%.2fx)%n", scalar / 1000,
+                    block / 1000, (double)scalar / block);
+                System.out.printf("sort block: Arrays.sort(Record[]) %d us, "
+                    + "network + merge %d us (%.2fx)%n", sortScalar / 1000,
+                    sortBlock / 1000, (double)sortScalar / sortBlock);
+            }
+        }
+    }
+
+    /**
+     * Time one task
+     *
+     * @param task
+     *          The task
+     * @return
+     *          The elapsed nanoseconds
+     */
+    private static long time(Runnable task)
+    {
+        long start = System.nanoTime();
+        task.run();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The isSorted loop as it was, one ByteBuffer call per field
+     *
+     * @param blocks
+     *          The blocks to check
+     * @return
+     *          True if sorted
+     */
+    private static boolean scalarIsSorted(byte[][] blocks)
+    {
+        double prevRecKey = -Double.MAX_VALUE;
+        for (byte[] block : blocks)
+        {
+            ByteBuffer bb = ByteBuffer.wrap(block);
+            for (int rec = 0; rec < ByteProcessor.RECORDS_PER_BLOCK; rec++)
+            {
+                bb.getLong();
+                double recKey = bb.getDouble();
+                if (recKey < prevRecKey)
+                {
+                    return false;
+                }
+                prevRecKey = recKey;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The isSorted loop using BlockScan
+     *
+     * @param blocks
+     *          The blocks to check
+     * @return
+     *          True if sorted
+     */
+    private static boolean blockIsSorted(byte[][] blocks)
+    {
+        long[] ids = new long[ByteProcessor.RECORDS_PER_BLOCK];
+        long[] keys = new long[ByteProcessor.RECORDS_PER_BLOCK];
+        long prevRecKey = Long.MIN_VALUE;
+        for (byte[] block : blocks)
+        {
+            int n = BlockScan.decode(block, block.length, ids, keys);
+            if (keys[0] < prevRecKey
+                || BlockScan.firstDescent(keys, null, 0, n) < n)
+            {
+                return false;
+            }
+            prevRecKey = keys[n - 1];
+        }
+        return true;
+    }
+
+    /**
+     * Sort every block as Record objects
+     *
+     * @param blocks
+     *          The blocks to sort
+     */
+    private static void scalarSort(byte[][] blocks)
+    {
+        for (byte[] block : blocks)
+        {
+            ByteBuffer bb = ByteBuffer.wrap(block);
+            Record[] recs = new Record[ByteProcessor.RECORDS_PER_BLOCK];
+            for (int i = 0; i < recs.length; i++)
+            {
+                recs[i] = new Record(bb.getLong(), bb.getDouble());
+            }
+            Arrays.sort(recs);
+        }
+    }
+
+    /**
+     * Sort every block with BlockScan
+     *
+     * @param blocks
+     *          The blocks to sort
+     */
+    private static void blockSort(byte[][] blocks)
+    {
+        long[] ids = new long[ByteProcessor.RECORDS_PER_BLOCK];
+        long[] keys = new long[ByteProcessor.RECORDS_PER_BLOCK];
+        for (byte[] block : blocks)
+        {
+            int n = BlockScan.decode(block, block.length, ids, keys);
+            BlockScan.sortBlock(keys, ids, n);
+        }
+    }
+}
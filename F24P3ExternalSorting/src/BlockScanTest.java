@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class BlockScanTest extends TestCase {
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        //nothing to set up.
+    }
+
+    /**
+     * Test that sortable longs order keys like Double.compare
+     */
+    public void testSortable() {
+        double[] keys = { Double.NEGATIVE_INFINITY, -5.5, -Double.MIN_VALUE,
+            -0.0, 0.0, Double.MIN_VALUE, 1.0, Double.POSITIVE_INFINITY,
+            Double.NaN };
+        for (int i = 1; i < keys.length; i++) {
+            assertTrue(BlockScan.sortable(keys[i - 1])
+                < BlockScan.sortable(keys[i]));
+            assertEquals(keys[i], BlockScan.key(BlockScan.sortable(keys[i])),
+                0.0);
+        }
+    }
+
+    /**
+     * Test finding descents with and without ID tie breaks
+     */
+    public void testFirstDescent() {
+        long[] keys = new long[40];
+        long[] ids = new long[40];
+        for (int i = 0; i < 40; i++) {
+            keys[i] = i / 2;
+            ids[i] = 10 - i % 2;
+        }
+        assertEquals(40, BlockScan.firstDescent(keys, null, 0, 40));
+        assertEquals(1, BlockScan.firstDescent(keys, ids, 0, 40));
+        keys[33] = 0;
+        assertEquals(33, BlockScan.firstDescent(keys, null, 0, 40));
+        assertEquals(33, BlockScan.firstDescent(keys, null, 20, 40));
+        assertEquals(0, BlockScan.min(keys, 40));
+        assertEquals(19, BlockScan.max(keys, 40));
+        long[] wide = { Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+        long[] wideIds = { 0, 2, 1 };
+        assertEquals(1, BlockScan.firstDescent(wide, null, 0, 3));
+        assertEquals(2, BlockScan.firstDescent(wide, wideIds, 1, 3));
+        assertEquals(3, BlockScan.firstDescent(wide, null, 1, 3));
+    }
+
+    /**
+     * Test sorting blocks of several sizes against Arrays.sort
+     */
+    public void testSortBlock() {
+        Random rng = new Random(5);
+        int[] sizes = { 0, 1, 15, 16, 17, 100, 512 };
+        for (int n : sizes) {
+            long[] keys = new long[n];
+            long[] ids = new long[n];
+            Record[] expected = new Record[n];
+            for (int i = 0; i < n; i++) {
+                double key = rng.nextInt(50) - 25.0;
+                ids[i] = rng.nextInt(1000);
+                keys[i] = BlockScan.sortable(key);
+                expected[i] = new Record(ids[i], key);
+            }
+            Arrays.sort(expected);
+            BlockScan.sortBlock(keys, ids, n);
+            for (int i = 0; i < n; i++) {
+                assertEquals(expected[i].getKey(), BlockScan.key(keys[i]),
+                    0.0);
+                assertEquals(expected[i].getID(), ids[i]);
+            }
+        }
+    }
+}
@@ -30,9 +30,13 @@ public class ByteFile {
      */
     public final static int BYTES_PER_BLOCK = BYTES_PER_RECORD
         * RECORDS_PER_BLOCK;
+    /**
+     * the number of blocks copied per read when streaming a file
+     */
+    public final static int COPY_BLOCKS = 64;
 
     private String filename;
-    private int numBlocks;
+    private long numBlocks;
 
     // ----------------------------------------------------------
     /**
@@ -43,7 +47,7 @@ public class ByteFile {
      * @param numBlocks
      *            the number of blocks in this file
      */
-    public ByteFile(String filename, int numBlocks) {
+    public ByteFile(String filename, long numBlocks) {
         this.filename = filename;
         this.numBlocks = numBlocks;
     }
@@ -80,7 +84,7 @@ public class ByteFile {
         // ensuring file will have only the new data
 
         RandomAccessFile raf = new RandomAccessFile(theFile, "rw");
-        for (int block = 0; block < numBlocks; block++) {
+        for (long block = 0; block < numBlocks; block++) {
             bb.position(0); // resets to byte position zero in ByteBuffer
 
             for (int rec = 0; rec < RECORDS_PER_BLOCK; rec++) {
@@ -105,58 +109,32 @@ public class ByteFile {
      */
     public boolean isSorted() throws IOException {
         byte[] basicBuffer = new byte[BYTES_PER_BLOCK];
-        ByteBuffer bb = ByteBuffer.wrap(basicBuffer);
-
+        long[] ids = new long[RECORDS_PER_BLOCK];
+        long[] keys = new long[RECORDS_PER_BLOCK];
         File theFile = new File(filename);
         RandomAccessFile raf = new RandomAccessFile(theFile, "r");
         raf.seek(0);
-        Double prevRecKey = Double.MIN_VALUE;
+        long prevRecKey = Long.MIN_VALUE;
         
-        for (int block = 0; block < numBlocks; block++) {
-            raf.read(basicBuffer);
+        for (long block = 0; block < numBlocks; block++) {
+            int currBytes = raf.read(basicBuffer);
             // ^^^ the slow, costly operation!!! Good thing we use buffer
+            if (currBytes == -1) {
+                break;
+            }
 
-            bb.position(0); // goes to byte position zero in ByteBuffer
-            for (int rec = 0; rec < RECORDS_PER_BLOCK; rec++) {
-                long recID = bb.getLong();
-                // ^^^ reading the recID is important to advance the byteBuffer
-                // position, but it is not used in the sort order
-                double recKey = bb.getDouble();
-                if (recKey < prevRecKey) {
-                    raf.close();
-                    return false;
-                }
-                else {
-                    prevRecKey = recKey;
-                }
+            // decode the whole block, then check it in one pass
+            int n = BlockScan.decode(basicBuffer, currBytes, ids, keys);
+            if (n > 0 && (keys[0] < prevRecKey
+                || BlockScan.firstDescent(keys, null, 0, n) < n)) {
+                raf.close();
+                return false;
+            }
+            if (n > 0) {
+                prevRecKey = keys[n - 1];
             }
         }
         raf.close(); // be sure to close file
         return true;
     }
-    
-    /**
-     * Copy over the data from this ByteFile to runFile
-     * 
-     * @param runFile
-     *          The file we want to copy data to
-     * @throws IOException
-     */
-    public void updateRunFile(String runFile) throws IOException
-    {
-        RandomAccessFile of = new RandomAccessFile(filename, "r");
-        RandomAccessFile rf = new RandomAccessFile(runFile, "rw"); 
-        rf.setLength(0);
-        
-        byte[] buffer = new byte[numBlocks * BYTES_PER_BLOCK];
-        int bytesRead;
-        
-        //Copy over the data from ByteFile
-        while ((bytesRead = of.read(buffer)) != -1) {
-            rf.write(buffer, 0, bytesRead);
-        }
-        
-        rf.close();
-        of.close();
-    }
 }
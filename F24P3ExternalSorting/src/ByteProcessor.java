@@ -1,7 +1,12 @@
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 /**
  * Processor class containing methods to sort the input file
  * 
@@ -22,10 +27,35 @@ public class ByteProcessor {
      */
     public final static int BYTES_PER_BLOCK = BYTES_PER_RECORD
         * RECORDS_PER_BLOCK;
+    /**
+     * the number of records the replacement selection heap holds
+     */
+    public final static int HEAP_RECORDS = 8 * RECORDS_PER_BLOCK;
+    /**
+     * the number of buffers between two stages of run generation
+     */
+    public final static int RING_BUFFERS = 4;
+    /**
+     * the number of blocks in each of those buffers, so the stages
+     * hand off work often enough to overlap but not once per block
+     */
+    public final static int RING_BLOCKS = 16;
 
     private String filename;
-    private int numBlocks;
-    private MinHeap<Record> heap;
+    private String runFile;
+    private int heapRecords;
+    private long numBlocks;
+    private PriorityHeap<Record> heap;
+    private Combiner combiner;
+    private RunStore store;
+    private boolean indexIds;
+    private long nextIndex;
+    private boolean loadSort;
+    private long[] loadIds;
+    private long[] loadKeys;
+    private int loadCount;
+    private long runBytes;
+    private long runChecksum;
 
     // ----------------------------------------------------------
     /**
@@ -34,108 +64,331 @@ public class ByteProcessor {
      * @param filename
      *            file name
      * @param heap
-     *            the MinHeap for this processor
+     *            the heap for this processor
+     */
+    public ByteProcessor(String filename, PriorityHeap<Record> heap) {
+        this(filename, heap, Externalsort.RUN_FILE, HEAP_RECORDS);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new ByteProcessor object with its own run file.
+     *
+     * @param filename
+     *            file name
+     * @param heap
+     *            the heap for this processor
+     * @param runFile
+     *            the file the runs are written to
+     * @param heapRecords
+     *            the number of records the heap holds
      */
-    public ByteProcessor(String filename, MinHeap<Record> heap) {
+    public ByteProcessor(String filename, PriorityHeap<Record> heap,
+        String runFile, int heapRecords) {
         this.filename = filename;
         this.heap = heap;
+        this.runFile = runFile;
+        this.heapRecords = heapRecords;
+    }
+
+    /**
+     * Set the combiner used to fold equal records while the runs
+     * are built
+     *
+     * @param combiner
+     *          The combiner, or null to keep every record
+     */
+    public void setCombiner(Combiner combiner)
+    {
+        this.combiner = combiner;
     }
     
     /**
-     * Get the number of blocks in the input file
+     * Keep the runs in a RunStore instead of writing them to the run
+     * file
+     *
+     * @param runStore
+     *          The store, or null to write the run file
+     */
+    public void setRunStore(RunStore runStore)
+    {
+        this.store = runStore;
+    }
+
+    /**
+     * Replace the ID of each record with its position in the input,
+     * so the runs hold (key, original index) pairs for an argsort
+     *
+     * @param index
+     *          True to sort positions instead of IDs
+     */
+    public void setIndexIds(boolean index)
+    {
+        this.indexIds = index;
+    }
+
+    /**
+     * Make runs by loading heapRecords records, sorting them as arrays
+     * and storing them, instead of by replacement selection. The runs
+     * are only as long as memory, about half as long as replacement
+     * selection makes on random input, but the sorting costs much less
+     * than a heap of Record objects. The heap is not used and may be
+     * null.
+     *
+     * @param load
+     *          True to load, sort and store
+     */
+    public void setLoadSort(boolean load)
+    {
+        this.loadSort = load;
+    }
+
+    /**
+     * Get the number of blocks in the input file, counting a last
+     * partial block, from the file length
      * 
      * @return
      *          The number of blocks in the input file
      * @throws IOException
      */
-    public int getBlocks() throws IOException
+    public long getBlocks() throws IOException
     {
-        RandomAccessFile raf = new RandomAccessFile(filename, "r");
-        int blocks = 0;
-        
-        byte[] buffer = new byte[BYTES_PER_BLOCK];
-        int bytesRead;
-
-        //While not at the end of file increment block counter
-        while ((bytesRead = raf.read(buffer)) != -1) {
-            blocks++;
-        }
-        
-        raf.close();
-        return blocks;
+        long bytes = new File(filename).length();
+        return (bytes + BYTES_PER_BLOCK - 1) / BYTES_PER_BLOCK;
     }
     
     // ----------------------------------------------------------
     /**
      * Read the records from the input file and 
-     * create the runFile using replacement selection
+     * create the runFile using replacement selection.
+     * A reader thread and a writer thread move the blocks through
+     * two BlockRings, so the disk stays busy during the heap work.
      *
      * @throws IOException
      */
     public void readRecords() throws IOException {
         this.numBlocks = getBlocks();
-        //System.out.println(numBlocks);
-        byte[] basicBuffer = new byte[BYTES_PER_BLOCK];
-        ByteBuffer bb = ByteBuffer.wrap(basicBuffer);
         File theFile = new File(filename);
-        File runFile = new File("solutionTestData/runFile.bin");
         
         RandomAccessFile raf = new RandomAccessFile(theFile, "r");
         RandomAccessFile rf = new RandomAccessFile(runFile, "rw");
         rf.setLength(0);
-        int i = 0;
-        //Read each block in the input file
-        for (int block = 0; block < numBlocks; block++) {
-            bb.position(0); // resets to byte position zero in ByteBuffer
-            int currBytes = raf.read(basicBuffer);
-            
-            if (currBytes == -1)
-            {
-                break;
-            }
-            //Build the heap with 8 blocks if heap is empty
-            if (i < 8) {
-                for (int rec = 0; rec < RECORDS_PER_BLOCK; rec++) 
-                {
-                    Record curr = new Record(bb.getLong(), bb.getDouble());
-                        
-                    heap.insert(curr);
+        nextIndex = 0;
+        //The reader and writer stages run beside the selection stage
+        int bufferBytes = RING_BLOCKS * BYTES_PER_BLOCK;
+        BlockRing input = new BlockRing(RING_BUFFERS, bufferBytes);
+        BlockRing output = new BlockRing(RING_BUFFERS, bufferBytes);
+        ExecutorService stages = Executors.newFixedThreadPool(2);
+        try {
+            Future<Void> reader = stages.submit(() -> {
+                input.fill(raf);
+                return null;
+            });
+            Future<Void> written = stages.submit(() -> {
+                if (store != null) {
+                    output.drain(store::append);
+                }
+                else {
+                    output.drain(rf::write);
                 }
-                i++;
+                return null;
+            });
+            RecordWriter writer = new RecordWriter(output, combiner);
+            //Number of records placed in the heap array, hidden or not
+            int loaded = 0;
+            if (loadSort)
+            {
+                loadIds = new long[heapRecords];
+                loadKeys = new long[heapRecords];
+                loadCount = 0;
             }
             else
             {
-                //If the heap is not empty
-                if (heap.heapSize() > 0)
+                heap.setHeapSize(0);
+            }
+            //Take each block of the input file from the reader
+            for (BlockRing.Block block = input.take(); !block.isEnd();
+                block = input.take()) {
+                int currBytes = block.getLength();
+                ByteBuffer bb = ByteBuffer.wrap(block.getData(), 0,
+                    currBytes - (currBytes % BYTES_PER_RECORD));
+                if (loadSort)
                 {
-                    //Perform replacement selection on the heap
-                    rf.seek(rf.length());
-                    rf.write(replacementSelection(heap, bb).array());
+                    loadSort(bb, writer);
                 }
                 else
                 {
-                    //Write the hidden values to the runFile
-                    i = 0;
-                    heap.setHeapSize(4096);
-                    heap.buildHeap();
-                    while (heap.heapSize() > 0)
+                    //Fill the heap with the first heapRecords records
+                    while (loaded < heapRecords && bb.hasRemaining())
                     {
-                        rf.seek(rf.length());
-                        rf.write(replacementSelection(heap).array());
+                        heap.insert(nextRecord(bb));
+                        loaded++;
                     }
+                    //Perform replacement selection on the rest
+                    replacementSelection(heap, bb, writer);
                 }
+                input.recycle(block);
             }
+            //Write the last loaded or hidden records to the run file
+            if (loadSort)
+            {
+                storeRun(writer);
+                loadIds = null;
+                loadKeys = null;
+            }
+            else
+            {
+                replacementSelection(heap, loaded, writer);
+            }
+            writer.flush();
+            output.finish();
+            await(reader);
+            await(written);
+            runBytes = writer.getBytesWritten();
+            runChecksum = writer.getChecksum();
+        }
+        finally {
+            stages.shutdownNow();
+            raf.close(); // be sure to close file
+            rf.close();
         }
-        //Write the hidden values to the run file
-        heap.setHeapSize(4096);
-        heap.buildHeap();
-        while (heap.heapSize() > 0)
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Wait for a pipeline stage and pass on its failure
+     *
+     * @param stage
+     *            the stage
+     * @throws IOException
+     */
+    private static void await(Future<Void> stage) throws IOException {
+        try {
+            stage.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("run generation cancelled");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Load the records of a block, storing a sorted run each time
+     * heapRecords of them have been loaded
+     *
+     * @param bb
+     *          The block
+     * @param writer
+     *          The writer the runs go to
+     * @throws IOException
+     */
+    private void loadSort(ByteBuffer bb, RecordWriter writer)
+        throws IOException
+    {
+        while (bb.hasRemaining())
         {
-            rf.seek(rf.length());
-            rf.write(replacementSelection(heap).array());
+            long id = bb.getLong();
+            double key = bb.getDouble();
+            if (indexIds)
+            {
+                id = nextIndex++;
+            }
+            if (combiner != null)
+            {
+                id = combiner.start(new Record(id, key)).getID();
+            }
+            loadIds[loadCount] = id;
+            loadKeys[loadCount] = BlockScan.sortable(key);
+            if (++loadCount == heapRecords)
+            {
+                storeRun(writer);
+            }
         }
-        raf.close(); // be sure to close file
-        rf.close();
+    }
+
+    /**
+     * Sort the loaded records and write them as one run
+     *
+     * @param writer
+     *          The writer the run goes to
+     * @throws IOException
+     */
+    private void storeRun(RecordWriter writer) throws IOException
+    {
+        BlockScan.sortBlock(loadKeys, loadIds, loadCount);
+        if (combiner != null)
+        {
+            for (int i = 0; i < loadCount; i++)
+            {
+                writer.put(new Record(loadIds[i],
+                    BlockScan.key(loadKeys[i])));
+            }
+        }
+        else
+        {
+            //No records to fold, so copy them out a block at a time
+            byte[] out = new byte[BYTES_PER_BLOCK];
+            ByteBuffer ob = ByteBuffer.wrap(out);
+            for (int i = 0; i < loadCount; i++)
+            {
+                ob.putLong(loadIds[i]);
+                ob.putDouble(BlockScan.key(loadKeys[i]));
+                if (!ob.hasRemaining() || i == loadCount - 1)
+                {
+                    writer.putBytes(out, 0, ob.position());
+                    ob.clear();
+                }
+            }
+        }
+        loadCount = 0;
+    }
+
+    /**
+     * Read the next input record from a buffer, applying the
+     * combiner's starting value or its position in place of the ID
+     *
+     * @param bb
+     *          The buffer to read from
+     * @return
+     *          The record
+     */
+    private Record nextRecord(ByteBuffer bb)
+    {
+        long id = bb.getLong();
+        if (indexIds)
+        {
+            id = nextIndex++;
+        }
+        Record rec = new Record(id, bb.getDouble());
+        return combiner == null ? rec : combiner.start(rec);
+    }
+
+    /**
+     * Get the number of bytes the last readRecords wrote to the run file
+     *
+     * @return
+     *          The number of bytes
+     */
+    public long getRunBytes()
+    {
+        return runBytes;
+    }
+
+    /**
+     * Get the CRC32 of the run file written by the last readRecords
+     *
+     * @return
+     *          The checksum
+     */
+    public long getRunChecksum()
+    {
+        return runChecksum;
     }
 
     // ----------------------------------------------------------
@@ -146,363 +399,153 @@ public class ByteProcessor {
      * @throws IOException
      */
     public boolean isSorted() throws IOException {
+        return isSorted(null);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * checks if a file of records is sorted or not, and fingerprints
+     * it in the same pass. With a fingerprint the whole file is read
+     * even after an out of order record is found.
+     *
+     * @param fingerprint
+     *            receives every record of the file, or null
+     * @return true if it is sorted, otherwise false
+     * @throws IOException
+     */
+    public boolean isSorted(Fingerprint fingerprint) throws IOException {
+        return isSorted(fingerprint, false);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * checks if a file of records is in natural Record order, by key
+     * and then ID, which is the order a merge produces
+     *
+     * @return true if it is sorted by key and ID, otherwise false
+     * @throws IOException
+     */
+    public boolean isSortedById() throws IOException {
+        return isSorted(null, true);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * checks if a file of records is sorted by key, and by ID within
+     * equal keys if asked
+     *
+     * @param fingerprint
+     *            receives every record of the file, or null
+     * @param byId
+     *            true to also require equal keys in ID order
+     * @return true if it is sorted, otherwise false
+     * @throws IOException
+     */
+    private boolean isSorted(Fingerprint fingerprint, boolean byId)
+        throws IOException {
         byte[] basicBuffer = new byte[BYTES_PER_BLOCK];
-        ByteBuffer bb = ByteBuffer.wrap(basicBuffer);
+        long[] ids = new long[RECORDS_PER_BLOCK];
+        long[] keys = new long[RECORDS_PER_BLOCK];
         this.numBlocks = getBlocks();
-        
+
         File theFile = new File(filename);
         RandomAccessFile raf = new RandomAccessFile(theFile, "r");
         raf.seek(0);
-        Double prevRecKey = Double.MIN_VALUE;
+        long prevRecKey = Long.MIN_VALUE;
+        long prevRecID = Long.MIN_VALUE;
+        boolean sorted = true;
         
-        for (int block = 0; block < numBlocks; block++) {
-            raf.read(basicBuffer);
+        for (long block = 0; block < numBlocks; block++) {
+            int currBytes = raf.read(basicBuffer);
             // ^^^ the slow, costly operation!!! Good thing we use buffer
+            if (currBytes == -1) {
+                break;
+            }
 
-            bb.position(0); // goes to byte position zero in ByteBuffer
-            for (int rec = 0; rec < RECORDS_PER_BLOCK; rec++) {
-                long recID = bb.getLong();
-                // ^^^ reading the recID is important to advance the byteBuffer
-                // position, but it is not used in the sort order
-                double recKey = bb.getDouble();
-                if (recKey < prevRecKey) {
-                    raf.close();
-                    return false;
-                }
-                else {
-                    prevRecKey = recKey;
+            // decode the whole block, then check it in one pass
+            int n = BlockScan.decode(basicBuffer, currBytes, ids, keys);
+            if (fingerprint != null) {
+                fingerprint.update(ids, keys, n);
+            }
+            if (sorted && n > 0 && (keys[0] < prevRecKey
+                || (byId && keys[0] == prevRecKey && ids[0] < prevRecID)
+                || BlockScan.firstDescent(keys, byId ? ids : null, 0, n)
+                    < n)) {
+                sorted = false;
+                if (fingerprint == null) {
+                    break;
                 }
             }
+            if (n > 0) {
+                prevRecKey = keys[n - 1];
+                prevRecID = ids[n - 1];
+            }
         }
         raf.close(); // be sure to close file
-        return true;
+        return sorted;
     }
     
     /**
      * Perform replacement selection when we have an input buffer
      * 
      * @param recHeap
-     *          The heap built from the input file
+     *          The full heap built from the input file
      * @param inputBuffer
      *          The input buffer containing a block of records
-     * @return
-     *          The output buffer containing replacement selected records
+     * @param writer
+     *          The writer the replacement selected records go to
+     * @throws IOException
      */
-    public ByteBuffer replacementSelection(MinHeap<Record> recHeap, 
-        ByteBuffer inputBuffer)
+    public void replacementSelection(PriorityHeap<Record> recHeap, 
+        ByteBuffer inputBuffer, RecordWriter writer) throws IOException
     {
-        byte[] outBuffer = new byte[8192];
-        ByteBuffer ob = ByteBuffer.wrap(outBuffer);
-        
         //If inputBuffer has elements still continue selection
         while (inputBuffer.hasRemaining())
         {
-            //Get the min record and add it to the outBuffer
+            //Every record is hidden, so start the next run
+            if (recHeap.heapSize() == 0)
+            {
+                recHeap.setHeapSize(heapRecords);
+                recHeap.buildHeap();
+            }
+            //Get the min record and add it to the output
             Record min = recHeap.getMin();
-            ob.putLong(min.getID());
-            ob.putDouble(min.getKey());
+            writer.put(min);
             //Get the next record from the inputBuffer
-            long currID = inputBuffer.getLong();
-            double currKey = inputBuffer.getDouble();
-            Record rec = new Record(currID, currKey);
-            //If the next record is greater than the last added record
-            if (rec.compareTo(min) > 0)
+            Record rec = nextRecord(inputBuffer);
+            //Add the record to heap in place of the min
+            recHeap.replaceMin(rec);
+            //If the next record is less than the last added record hide it
+            if (rec.compareTo(min) < 0)
             {
-                //Add the record to heap
-                if (recHeap.heapSize() > 0)
-                {
-                    recHeap.modify(0, rec);
-                }
-                else
-                {
-                    recHeap.insert(rec);
-                }
-            }
-            else
-            {
-                //Add the record to heap then hide it
-                if (recHeap.heapSize() > 0)
-                {
-                    recHeap.modify(0, rec);
-                    recHeap.removeMin();
-                }
-                else
-                {
-                    recHeap.insert(rec);
-                    recHeap.removeMin();
-                }
+                recHeap.removeMin();
             }
         }
-        return ob;
     }
     
     /**
-     * Perform replacement selection with no input buffer
+     * Perform replacement selection with no input buffer, writing
+     * every record left in the heap array
      * 
      * @param recHeap
      *          The heap built from the input file
-     * @return
-     *          A block of min records from the heap
-     */
-    public ByteBuffer replacementSelection(MinHeap<Record> recHeap)
-    {
-        byte[] outBuffer = new byte[8192];
-        ByteBuffer ob = ByteBuffer.wrap(outBuffer);
-        //Counter to tell how many bytes are in outBuffer
-        int n = 0;
-        //while the buffer is not full and heap is not empty add the min to ob
-        while (n < 8192 && recHeap.heapSize() > 0)
-        {
-            Record min = recHeap.removeMin();
-            ob.putLong(min.getID());
-            ob.putDouble(min.getKey());
-            //System.out.println("OutBuffer: " + ob.position());
-            n += 16;
-        }
-        return ob;
-    }
-    
-    /**
-     * Perform multiway merge on the runFile and return to outFile
-     * 
-     * @param bpr
-     *          The number of blocks per run
+     * @param loaded
+     *          The number of records in the heap array, hidden or not
+     * @param writer
+     *          The writer the records go to
      * @throws IOException
      */
-    public void multiMerge(int bpr) throws IOException
+    public void replacementSelection(PriorityHeap<Record> recHeap,
+        int loaded, RecordWriter writer) throws IOException
     {
-        int numRuns;
-        byte[] outBuffer = new byte[8192];
-        ByteBuffer ob = ByteBuffer.wrap(outBuffer);
-        byte[] blockBuffer = new byte[8192];
-        ByteBuffer bb = ByteBuffer.wrap(blockBuffer);
-        int[] currBlock;
-        int[] lastBlock;
-        File runFile = new File("solutionTestData/runFile.bin");
-        File outFile = new File("solutionTestData/outFile.bin");
-        
-        MinHeap<Record> mergeHeap = new MinHeap<Record>(new Record[4096], 
-            0, 4096);
-        
-        //Run file
-        RandomAccessFile rf = new RandomAccessFile(runFile, "r");
-        //Out file
-        RandomAccessFile of = new RandomAccessFile(outFile, "rw");
-        of.setLength(0);
-        if (bpr > numBlocks || bpr == 0)
-        {
-            bpr = numBlocks;
-        }
-        if (numBlocks % bpr == 0)
-        {
-            numRuns = numBlocks / bpr; 
-        }
-        else
-        {
-            numRuns = (numBlocks / bpr) + 1;
-        }
-        
-        //Counter to tell how many runs have been merged
-        int currRun = 0;
-        //Counter to tell how many bytes are in outBuffer
-        int n = 0;
-        //Perform merge on 8 runs at a time
-        while (numRuns >= 8)
-        {
-            currBlock = new int[8];
-            lastBlock = new int[8];
-            
-            n = 0;
-            //Build the heap using the first block from 8 runs
-            for (int i = 0; i < 8; i++)
-            {
-                //Calculate the file position for the first block of each run
-                currBlock[i] = ((bpr * i) * BYTES_PER_BLOCK) 
-                    + ((bpr * currRun) * BYTES_PER_BLOCK);
-                rf.seek(currBlock[i]);
-                bb.position(0);
-                //Read in the first block for run i
-                int currIn = rf.read(blockBuffer);
-                //Store the number of records in the block for run i
-                lastBlock[i] = (currIn / 16);
-                for (int rec = 0; rec < RECORDS_PER_BLOCK; rec++) 
-                {
-                    Record curr = new Record(bb.getLong(), 
-                        bb.getDouble(), i);
-                        
-                    mergeHeap.insert(curr);
-                }
-            }
-            
-            //Current run being placed in out buffer
-            int block = -1;
-            //Continue merging until all runs are exhausted
-            while (mergeHeap.heapSize() > 0)
-            {
-                //Write outbuffer to outfile and clear outbuffer if it is full
-                if (n >= 8192)
-                {
-                    of.write(outBuffer);
-                    outBuffer = new byte[8192];
-                    ob = ByteBuffer.wrap(outBuffer);
-                    n = 0;
-                }
-                
-                //Remove the min record and add it to outBuffer
-                Record min = mergeHeap.removeMin();
-                ob.putLong(min.getID());
-                ob.putDouble(min.getKey());
-                n += 16;
-                //Get the current run
-                block = min.getRun();
-                //Decrement the number of records left in the heap for the run
-                lastBlock[block]--;
-                //If there are no records left in the heap for the run
-                if (lastBlock[block] == 0)
-                {
-                    //Calculate the file position of the first block
-                    int firstBlock = ((bpr * block) * BYTES_PER_BLOCK) 
-                        + ((bpr * currRun) * BYTES_PER_BLOCK);
-                    //Check if there are still blocks remaining for this run
-                    if (currBlock[block] < 
-                        (firstBlock + ((bpr - 1) * BYTES_PER_BLOCK)))
-                    {
-                        //Move to next block for this run
-                        currBlock[block] += BYTES_PER_BLOCK;
-                        rf.seek(currBlock[block]);
-                        bb.position(0);
-                        //Read the block and add it to heap
-                        int currIn = rf.read(blockBuffer);
-                        if (currIn != -1)
-                        {
-                            lastBlock[block] = (currIn / 16);
-                            while (bb.position() < bb.limit()) 
-                            {
-                                Record curr = new Record(bb.getLong(), 
-                                    bb.getDouble(), block);
-                                    
-                                mergeHeap.insert(curr);
-                            }
-                        }
-                    }
-                    block = -1;
-                }
-                
-            }
-            
-            //Decrement number of runs by 8
-            numRuns -= 8;
-            //Increment number of runs merged by 8
-            currRun += 8;
-            
-            //If there are still records in output buffer at end write them
-            if (n > 0)
-            {
-                of.write(outBuffer);
-                //ob.clear();
-                outBuffer = new byte[8192];
-                ob = ByteBuffer.wrap(outBuffer);
-                ob.position(0);
-                n = 0;
-            }
-            //Flush heap
-            mergeHeap = new MinHeap<Record>(new Record[4096], 0, 4096);
-        }
-        
-        currBlock = new int[numRuns];
-        lastBlock = new int[numRuns];
-        //Build the heap with the first block of numRuns
-        for (int i = 0; i < numRuns; i++)
+        recHeap.setHeapSize(loaded);
+        recHeap.buildHeap();
+        while (recHeap.heapSize() > 0)
         {
-            currBlock[i] = ((bpr * i) * BYTES_PER_BLOCK) 
-                + ((bpr * currRun) * BYTES_PER_BLOCK);
-            rf.seek(currBlock[i]);
-            bb.position(0);
-            int currIn = rf.read(blockBuffer);
-            lastBlock[i] = (currIn / 16);
-            for (int rec = 0; rec < RECORDS_PER_BLOCK; rec++) 
-            {
-                Record curr = new Record(bb.getLong(), 
-                    bb.getDouble(), i);
-                    
-                mergeHeap.insert(curr);
-            }
+            writer.put(recHeap.removeMin());
         }
-        
-        int block = -1;
-        //Continue until all runs are exhausted
-        while (mergeHeap.heapSize() > 0)
-        {
-            //If outBuffer is full write it to outFile and clear it
-            if (n >= 8192)
-            {
-                of.write(outBuffer);
-                //ob.clear();
-                outBuffer = new byte[BYTES_PER_BLOCK];
-                ob = ByteBuffer.wrap(outBuffer);
-                n = 0;
-            }
-            
-            
-            Record min = mergeHeap.removeMin();
-            ob.putLong(min.getID());
-            ob.putDouble(min.getKey());
-            n += 16;
-            block = min.getRun();
-            lastBlock[block]--;
-            if (lastBlock[block] == 0)
-            {
-                int firstBlock = ((bpr * block) * BYTES_PER_BLOCK) 
-                    + ((bpr * currRun) * BYTES_PER_BLOCK);
-                if (currBlock[block] < 
-                    (firstBlock + ((bpr - 1) * BYTES_PER_BLOCK)))
-                {
-                    currBlock[block] += BYTES_PER_BLOCK;
-                    rf.seek(currBlock[block]);
-                    bb.position(0);
-                    int currIn = rf.read(blockBuffer);
-                    if (currIn != -1)
-                    {
-                        lastBlock[block] = (currIn / 16);
-                        while (bb.position() < bb.limit()) 
-                        {
-                            Record curr = new Record(bb.getLong(), 
-                                bb.getDouble(), block);
-                                
-                            mergeHeap.insert(curr);
-                        }
-                    }
-                }
-                block = -1;
-            }
-            
-        }
-        
-        if (n > 0)
-        {
-            of.write(outBuffer);
-            //ob.clear();
-            n = 0;
-        }
-        
-        rf.close();
-        of.close();
     }
     
-//    private int contains(long ID, long[] lastID)
-//    {
-//        int i = 0;
-//        for (long last : lastID)
-//        {
-//            if (last == ID)
-//            {
-//                return i;
-//            }
-//            i++;
-//        }
-//        return -1;
-//    }
-    
     /**
      * Print the first record from each block of a given file
      * 
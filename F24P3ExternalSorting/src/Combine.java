@@ -0,0 +1,100 @@
+/**
+ * The built in combine functions. The sort is not stable, so FIRST and
+ * LAST keep the record with the smallest and largest ID for each key;
+ * that way every combiner gives the same answer however the records
+ * meet in the heap.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public enum Combine implements Combiner {
+    /**
+     * drop records with the same ID and key
+     */
+    DISTINCT {
+        @Override
+        public boolean sameGroup(Record first, Record second)
+        {
+            return first.compareTo(second) == 0;
+        }
+
+        @Override
+        public Record combine(Record first, Record second)
+        {
+            return first;
+        }
+    },
+    /**
+     * keep the record with the smallest ID for each key
+     */
+    FIRST {
+        @Override
+        public Record combine(Record first, Record second)
+        {
+            return first.getID() <= second.getID() ? first : second;
+        }
+    },
+    /**
+     * keep the record with the largest ID for each key
+     */
+    LAST {
+        @Override
+        public Record combine(Record first, Record second)
+        {
+            return first.getID() >= second.getID() ? first : second;
+        }
+    },
+    /**
+     * sum the IDs of each key
+     */
+    SUM {
+        @Override
+        public Record combine(Record first, Record second)
+        {
+            return new Record(first.getID() + second.getID(),
+                first.getKey());
+        }
+    },
+    /**
+     * count the records of each key, stored in the ID
+     */
+    COUNT {
+        @Override
+        public Record start(Record rec)
+        {
+            return new Record(1, rec.getKey());
+        }
+
+        @Override
+        public Record combine(Record first, Record second)
+        {
+            return new Record(first.getID() + second.getID(),
+                first.getKey());
+        }
+    };
+
+    @Override
+    public Record start(Record rec)
+    {
+        return rec;
+    }
+
+    @Override
+    public boolean sameGroup(Record first, Record second)
+    {
+        return Double.compare(first.getKey(), second.getKey()) == 0;
+    }
+
+    /**
+     * Find the combiner with the given name, ignoring case
+     *
+     * @param name
+     *          The name of the combiner
+     * @return
+     *          The combiner
+     */
+    public static Combine fromName(String name)
+    {
+        return valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class CombineTest extends TestCase {
+    private String file;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        file = "solutionTestData/combineInput.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(file).delete();
+    }
+
+    /**
+     * Write 16 blocks of records where record i has
+     * key i % 50 and ID i % 100
+     *
+     * @throws IOException
+     */
+    private void writeDuplicates() throws IOException {
+        DataOutputStream out = new DataOutputStream(
+            new FileOutputStream(file));
+        for (int i = 0; i < 16 * ByteProcessor.RECORDS_PER_BLOCK; i++) {
+            out.writeLong(i % 100);
+            out.writeDouble(i % 50);
+        }
+        out.close();
+    }
+
+    /**
+     * Read every record in the file
+     *
+     * @return the records
+     * @throws IOException
+     */
+    private List<Record> readAll() throws IOException {
+        List<Record> recs = new ArrayList<Record>();
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        while (in.available() > 0) {
+            recs.add(new Record(in.readLong(), in.readDouble()));
+        }
+        in.close();
+        return recs;
+    }
+
+    /**
+     * Sort the duplicate file with the given combiner
+     *
+     * @param name
+     *            the combiner name
+     * @return the sorted records
+     * @throws IOException
+     */
+    private List<Record> sortWith(String name) throws IOException {
+        writeDuplicates();
+        String[] args = { file, "-combine", name };
+        Externalsort.main(args);
+        return readAll();
+    }
+
+    /**
+     * Test dropping exact duplicates
+     *
+     * @throws IOException
+     */
+    public void testDistinct() throws IOException {
+        List<Record> recs = sortWith("distinct");
+        assertEquals(100, recs.size());
+        for (int i = 1; i < recs.size(); i++) {
+            assertTrue(recs.get(i - 1).compareTo(recs.get(i)) < 0);
+        }
+    }
+
+    /**
+     * Test keeping the smallest and largest ID for each key
+     *
+     * @throws IOException
+     */
+    public void testFirstAndLast() throws IOException {
+        List<Record> recs = sortWith("first");
+        assertEquals(50, recs.size());
+        for (int i = 0; i < recs.size(); i++) {
+            assertEquals(i, recs.get(i).getKey(), 0.0);
+            assertEquals(i, recs.get(i).getID());
+        }
+        recs = sortWith("last");
+        assertEquals(50, recs.size());
+        assertEquals(50, recs.get(0).getID());
+        assertEquals(99, recs.get(49).getID());
+    }
+
+    /**
+     * Test counting and summing each key
+     *
+     * @throws IOException
+     */
+    public void testCountAndSum() throws IOException {
+        List<Record> recs = sortWith("count");
+        assertEquals(50, recs.size());
+        long total = 0;
+        for (Record rec : recs) {
+            total += rec.getID();
+        }
+        assertEquals(16 * ByteProcessor.RECORDS_PER_BLOCK, total);
+
+        recs = sortWith("sum");
+        assertEquals(50, recs.size());
+        long sum = 0;
+        for (Record rec : recs) {
+            sum += rec.getID();
+        }
+        long expected = 0;
+        for (int i = 0; i < 16 * ByteProcessor.RECORDS_PER_BLOCK; i++) {
+            expected += i % 100;
+        }
+        assertEquals(expected, sum);
+    }
+
+    /**
+     * Test that the writer only folds records that meet in order
+     *
+     * @throws IOException
+     */
+    public void testRecordWriter() throws IOException {
+        java.io.RandomAccessFile raf =
+            new java.io.RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        RecordWriter writer = new RecordWriter(raf, Combine.DISTINCT);
+        writer.put(new Record(1, 1.0));
+        writer.put(new Record(1, 1.0));
+        writer.put(new Record(2, 1.0));
+        writer.put(new Record(1, 1.0));
+        writer.flush();
+        raf.close();
+        assertEquals(3, writer.getRecords());
+        assertEquals(3 * Record.BYTES, writer.getBytesWritten());
+    }
+}
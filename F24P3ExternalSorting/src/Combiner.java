@@ -0,0 +1,45 @@
+/**
+ * Folds records that share a key into one record while they are being
+ * sorted. Runs inside replacement selection and inside every merge, so
+ * duplicates are removed before they are written to a scratch file.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public interface Combiner {
+
+    /**
+     * Turn an input record into its starting value. Called once for
+     * each record read from the input file.
+     *
+     * @param rec
+     *          The input record
+     * @return
+     *          The starting value of rec
+     */
+    public Record start(Record rec);
+
+    /**
+     * Check if two records should be folded into one
+     *
+     * @param first
+     *          The record written first
+     * @param second
+     *          The record written after first
+     * @return
+     *          True if the two records belong to the same group
+     */
+    public boolean sameGroup(Record first, Record second);
+
+    /**
+     * Fold two records of the same group into one
+     *
+     * @param first
+     *          The record written first
+     * @param second
+     *          The record written after first
+     * @return
+     *          The combined record
+     */
+    public Record combine(Record first, Record second);
+}
@@ -0,0 +1,250 @@
+// -------------------------------------------------------------------------
+/**
+ * A min-heap where every node has d children. A wider node means a
+ * shallower tree, and the d siblings of a node sit next to each other in
+ * the array so they are compared using one or two cache lines. The array
+ * is shifted by d - 1 slots so every group of siblings starts at an
+ * index that is a multiple of d.
+ *
+ * Values move by filling a hole rather than by swapping, and removeMin
+ * and replaceMin use Floyd's bottom-up method: the hole left at the root
+ * is walked down to a leaf along the smallest children, then the new
+ * value is sifted up from there. New values usually belong near the
+ * bottom, so this saves the comparison against the new value on every
+ * level on the way down.
+ *
+ * @param <T>
+ *            data type in this heap
+ * @author kuzoto
+ * @version October 2024
+ */
+class DaryHeap<T extends Comparable<T>> implements PriorityHeap<T> {
+    private T[] heap; // Pointer to the heap array
+    private int arity; // Number of children of each node
+    private int base; // Array index of the root
+    private int capacity; // Maximum size of the heap
+    private int n; // Number of active things currently in heap
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new empty DaryHeap object.
+     *
+     * @param arity
+     *            the number of children of each node
+     * @param capacity
+     *            capacity
+     */
+    @SuppressWarnings("unchecked")
+    DaryHeap(int arity, int capacity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("arity must be at least 2");
+        }
+        this.arity = arity;
+        this.base = arity - 1;
+        this.capacity = capacity;
+        heap = (T[])new Comparable<?>[capacity + base];
+        n = 0;
+    }
+
+
+    /**
+     * Return position of the first child of pos
+     *
+     * @param pos
+     *            position
+     * @return position of the first child
+     */
+    public int firstChild(int pos) {
+        return arity * pos + 1;
+    }
+
+
+    /**
+     * Return position of the parent of pos
+     *
+     * @param pos
+     *            position
+     * @return position of parent
+     */
+    public int parent(int pos) {
+        return (pos - 1) / arity;
+    }
+
+
+    /**
+     * Forcefully changes the heap size. May need a buildHeap() afterwards
+     *
+     * @param newSize
+     *            new size
+     */
+    public void setHeapSize(int newSize) {
+        assert newSize <= capacity : "Heap size is beyond max";
+        n = newSize;
+    }
+
+
+    /**
+     * Return current size of the heap
+     *
+     * @return current heapSize
+     */
+    public int heapSize() {
+        return n;
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Insert val into heap
+     *
+     * @param val
+     *            value
+     */
+    public void insert(T val) {
+        assert n < capacity : "Heap is full; cannot insert";
+        n++;
+        siftUp(n - 1, val);
+    }
+
+
+    // ----------------------------------------------------------
+    /**
+     * Organize contents of array to satisfy the heap structure
+     */
+    public void buildHeap() {
+        for (int i = parent(n - 1); i >= 0; i--) {
+            siftDown(i, heap[base + i]);
+        }
+    }
+
+
+    /**
+     * Remove and return minimum value
+     *
+     * @return minimum value
+     */
+    public T removeMin() {
+        assert n > 0 : "Heap is empty; cannot remove";
+        T min = heap[base];
+        n--;
+        if (n > 0) {
+            T last = heap[base + n];
+            heap[base + n] = min; // Keep the minimum just past the end
+            bottomUp(last);
+        }
+        return min;
+    }
+
+
+    /**
+     * Replace the minimum value with val and restore the heap property
+     *
+     * @param val
+     *            the new value
+     * @return the old minimum value
+     */
+    public T replaceMin(T val) {
+        assert n > 0 : "Heap is empty; cannot replace";
+        T min = heap[base];
+        bottomUp(val);
+        return min;
+    }
+
+
+    /**
+     * Get the min object in the heap
+     *
+     * @return the min object in the heap
+     */
+    public T getMin() {
+        return heap[base];
+    }
+
+
+    /**
+     * Place val in the hole at pos, moving it down past smaller children
+     *
+     * @param pos
+     *            position of the hole
+     * @param val
+     *            the value to place
+     */
+    private void siftDown(int pos, T val) {
+        int child = firstChild(pos);
+        while (child < n) {
+            int min = minChild(child);
+            if (heap[base + min].compareTo(val) >= 0) {
+                break; // stop early
+            }
+            heap[base + pos] = heap[base + min];
+            pos = min;
+            child = firstChild(pos);
+        }
+        heap[base + pos] = val;
+    }
+
+
+    /**
+     * Place val in the hole at pos, moving it up past larger parents
+     *
+     * @param pos
+     *            position of the hole
+     * @param val
+     *            the value to place
+     */
+    private void siftUp(int pos, T val) {
+        while (pos > 0) {
+            int parent = parent(pos);
+            if (heap[base + parent].compareTo(val) <= 0) {
+                break; // stop early
+            }
+            heap[base + pos] = heap[base + parent];
+            pos = parent;
+        }
+        heap[base + pos] = val;
+    }
+
+
+    /**
+     * Fill the hole at the root with val using Floyd's method
+     *
+     * @param val
+     *            the value to place
+     */
+    private void bottomUp(T val) {
+        int pos = 0;
+        int child = firstChild(0);
+        // A value that already fits at the root needs no walk at all
+        if (child >= n || heap[base + minChild(child)].compareTo(val) >= 0) {
+            heap[base] = val;
+            return;
+        }
+        // Walk the hole down to a leaf along the smallest children
+        while (child < n) {
+            int min = minChild(child);
+            heap[base + pos] = heap[base + min];
+            pos = min;
+            child = firstChild(pos);
+        }
+        siftUp(pos, val);
+    }
+
+
+    /**
+     * Find the smallest of the siblings starting at first
+     *
+     * @param first
+     *            position of the first sibling
+     * @return position of the smallest sibling
+     */
+    private int minChild(int first) {
+        int last = Math.min(first + arity, n);
+        int min = first;
+        for (int i = first + 1; i < last; i++) {
+            if (heap[base + i].compareTo(heap[base + min]) < 0) {
+                min = i;
+            }
+        }
+        return min;
+    }
+}
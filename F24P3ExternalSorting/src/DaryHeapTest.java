@@ -0,0 +1,91 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DaryHeapTest extends TestCase {
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        //nothing to set up.
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File("solutionTestData/daryInput.bin").delete();
+    }
+
+    /**
+     * Test that removeMin returns values in order for several arities
+     */
+    public void testRemoveMin() {
+        for (int arity = 2; arity <= 8; arity *= 2) {
+            Random rng = new Random(arity);
+            DaryHeap<Record> heap = new DaryHeap<Record>(arity, 1000);
+            Record[] expected = new Record[1000];
+            for (int i = 0; i < 1000; i++) {
+                expected[i] = new Record(i, rng.nextInt(300));
+                heap.insert(expected[i]);
+            }
+            Arrays.sort(expected);
+            for (int i = 0; i < 1000; i++) {
+                assertSame(expected[i], heap.removeMin());
+            }
+            assertEquals(0, heap.heapSize());
+        }
+    }
+
+    /**
+     * Test replaceMin against MinHeap, including hiding the way
+     * replacement selection does
+     */
+    public void testReplaceMin() {
+        Random rng = new Random(7);
+        DaryHeap<Record> dary = new DaryHeap<Record>(4, 64);
+        MinHeap<Record> binary = new MinHeap<Record>(new Record[64], 0, 64);
+        for (int i = 0; i < 64; i++) {
+            Record rec = new Record(i, rng.nextDouble());
+            dary.insert(rec);
+            binary.insert(rec);
+        }
+        for (int i = 0; i < 5000; i++) {
+            if (dary.heapSize() == 0) {
+                dary.setHeapSize(64);
+                dary.buildHeap();
+                binary.setHeapSize(64);
+                binary.buildHeap();
+            }
+            Record min = dary.getMin();
+            assertSame(binary.getMin(), min);
+            Record rec = new Record(i, min.getKey() + rng.nextDouble() - 0.3);
+            assertSame(min, dary.replaceMin(rec));
+            assertSame(min, binary.replaceMin(rec));
+            if (rec.compareTo(min) < 0) {
+                dary.removeMin();
+                binary.removeMin();
+            }
+            assertEquals(binary.heapSize(), dary.heapSize());
+        }
+    }
+
+    /**
+     * Test that the sorter gives the same result with a d-ary heap
+     *
+     * @throws Exception
+     */
+    public void testSortWithArity() throws Exception {
+        ByteFile file = new ByteFile("solutionTestData/daryInput.bin", 20);
+        file.writeRandomRecords(new Random(20));
+        String[] args = { "solutionTestData/daryInput.bin", "-arity", "4" };
+        Externalsort.main(args);
+        assertTrue(file.isSorted());
+    }
+}
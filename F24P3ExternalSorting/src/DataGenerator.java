@@ -0,0 +1,501 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes large files of records whose keys follow a chosen shape, to
+ * test the sort on the inputs that matter for it: already sorted,
+ * reversed, nearly sorted, skewed, full of duplicates, or full of NaN,
+ * infinite, negative and zero keys.
+ *
+ * The file is cut into chunks of CHUNK_BYTES that are filled and
+ * written by several threads at once, each with one large positional
+ * write. Every chunk has its own random generator, seeded from the
+ * seed and the chunk number, so the same seed gives the same file
+ * whatever the number of threads.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DataGenerator {
+    /**
+     * the bytes each thread fills and writes at a time
+     */
+    public final static int CHUNK_BYTES = 4 << 20;
+
+    /**
+     * How the keys are laid out
+     */
+    public enum Shape {
+        /**
+         * independent keys in [0, 1), like ByteFile
+         */
+        UNIFORM,
+        /**
+         * increasing keys
+         */
+        SORTED,
+        /**
+         * decreasing keys
+         */
+        REVERSE,
+        /**
+         * increasing keys with some percent of them replaced at random
+         */
+        NEARLY_SORTED,
+        /**
+         * a few keys very often and most keys rarely, by Zipf's law
+         */
+        ZIPF,
+        /**
+         * a small number of distinct keys, each equally likely
+         */
+        DUPLICATES,
+        /**
+         * NaN, infinities, signed zeros, extremes and negative keys
+         * mixed with ordinary ones
+         */
+        SPECIAL;
+
+        /**
+         * Find the shape with the given name, ignoring case and
+         * allowing - for _
+         *
+         * @param name
+         *          The name of the shape
+         * @return
+         *          The shape
+         */
+        public static Shape fromName(String name)
+        {
+            return valueOf(name.toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * the keys SPECIAL mixes in
+     */
+    private final static double[] SPECIAL_KEYS = { Double.NaN,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, -0.0,
+        Double.MAX_VALUE, -Double.MAX_VALUE, Double.MIN_VALUE,
+        -Double.MIN_VALUE, Double.MIN_NORMAL };
+
+    private String filename;
+    private long records;
+    private Shape shape;
+    private long seed;
+    private int threads;
+    private double percent;
+    private double exponent;
+    private int distinct;
+    private double zipfLow;
+    private double zipfHigh;
+    private double zipfSquash;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new DataGenerator object with seed 0, 1 percent of a
+     * nearly sorted input out of place, a Zipf exponent of 1 and 1000
+     * distinct keys for the skewed and duplicate shapes.
+     *
+     * @param filename
+     *            the file to write
+     * @param records
+     *            the number of records
+     * @param shape
+     *            how the keys are laid out
+     */
+    public DataGenerator(String filename, long records, Shape shape) {
+        this.filename = filename;
+        this.records = records;
+        this.shape = shape;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.percent = 1;
+        this.exponent = 1;
+        this.distinct = 1000;
+    }
+
+    /**
+     * Set the seed the whole file follows from
+     *
+     * @param value
+     *          The seed
+     */
+    public void setSeed(long value)
+    {
+        this.seed = value;
+    }
+
+    /**
+     * Set the number of chunks written at once
+     *
+     * @param count
+     *          The number of threads
+     */
+    public void setThreads(int count)
+    {
+        this.threads = count;
+    }
+
+    /**
+     * Set how much of a nearly sorted input is out of place
+     *
+     * @param outOfPlace
+     *          The percent of keys replaced by random ones
+     */
+    public void setPercent(double outOfPlace)
+    {
+        this.percent = outOfPlace;
+    }
+
+    /**
+     * Set the Zipf exponent; larger is more skewed
+     *
+     * @param s
+     *          The exponent, above 0
+     */
+    public void setExponent(double s)
+    {
+        this.exponent = s;
+    }
+
+    /**
+     * Set the number of distinct keys the Zipf and duplicate shapes
+     * draw from
+     *
+     * @param keys
+     *          The number of distinct keys, at least 1
+     */
+    public void setDistinct(int keys)
+    {
+        if (keys < 1)
+        {
+            throw new IllegalArgumentException("need at least one "
+                + "distinct key, not " + keys);
+        }
+        this.distinct = keys;
+    }
+
+    /**
+     * Write the file
+     *
+     * @throws IOException
+     */
+    public void write() throws IOException
+    {
+        if (shape == Shape.ZIPF)
+        {
+            zipfLow = hIntegral(1.5) - 1;
+            zipfHigh = hIntegral(distinct + 0.5);
+            zipfSquash = 2 - hInverse(hIntegral(2.5) - h(2));
+        }
+        long chunkRecords = CHUNK_BYTES / Record.BYTES;
+        long chunks = (records + chunkRecords - 1) / chunkRecords;
+        File file = new File(filename);
+        file.delete();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(records * Record.BYTES);
+        FileChannel out = raf.getChannel();
+        ExecutorService pool = Executors.newFixedThreadPool(
+            (int)Math.max(1, Math.min(threads, chunks)));
+        try
+        {
+            List<Future<Void>> written = new ArrayList<Future<Void>>();
+            for (long c = 0; c < chunks; c++)
+            {
+                long first = c * chunkRecords;
+                long last = Math.min(records, first + chunkRecords);
+                written.add(pool.submit(() -> {
+                    writeChunk(out, first, last);
+                    return null;
+                }));
+            }
+            for (Future<Void> chunk : written)
+            {
+                await(chunk);
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+            raf.close();
+        }
+    }
+
+    /**
+     * Fill one chunk and write it in place
+     *
+     * @param out
+     *          The file
+     * @param first
+     *          The index of the first record of the chunk
+     * @param last
+     *          One past the index of its last record
+     * @throws IOException
+     */
+    private void writeChunk(FileChannel out, long first, long last)
+        throws IOException
+    {
+        //The chunk number picks the stream, so threads do not matter
+        SplittableRandom rng = new SplittableRandom(
+            seed * 0x9E3779B97F4A7C15L + first / (CHUNK_BYTES / Record.BYTES));
+        ByteBuffer bb = ByteBuffer.allocate((int)(last - first)
+            * Record.BYTES);
+        for (long i = first; i < last; i++)
+        {
+            bb.putLong(rng.nextLong());
+            bb.putDouble(key(i, rng));
+        }
+        bb.flip();
+        long position = first * Record.BYTES;
+        while (bb.hasRemaining())
+        {
+            position += out.write(bb, position);
+        }
+    }
+
+    /**
+     * Make the key of record i
+     *
+     * @param i
+     *          The index of the record
+     * @param rng
+     *          The chunk's random generator
+     * @return
+     *          The key
+     */
+    private double key(long i, SplittableRandom rng)
+    {
+        switch (shape)
+        {
+            case SORTED:
+                return i;
+            case REVERSE:
+                return records - 1 - i;
+            case NEARLY_SORTED:
+                return rng.nextDouble() * 100 < percent
+                    ? Math.floor(rng.nextDouble() * records) : i;
+            case ZIPF:
+                return scatter(zipfRank(rng));
+            case DUPLICATES:
+                return scatter(rng.nextInt(distinct));
+            case SPECIAL:
+                if (rng.nextInt(4) == 0)
+                {
+                    return SPECIAL_KEYS[rng.nextInt(SPECIAL_KEYS.length)];
+                }
+                return rng.nextDouble() * 2 - 1;
+            default:
+                return rng.nextDouble();
+        }
+    }
+
+    /**
+     * Draw a rank from 1 to distinct by Zipf's law, using rejection
+     * inversion (Hormann and Derflinger), which takes constant time and
+     * no table however many keys there are
+     *
+     * @param rng
+     *          The chunk's random generator
+     * @return
+     *          The rank
+     */
+    private long zipfRank(SplittableRandom rng)
+    {
+        while (true)
+        {
+            double u = zipfHigh + rng.nextDouble() * (zipfLow - zipfHigh);
+            double x = hInverse(u);
+            long k = Math.max(1, Math.min(distinct, (long)(x + 0.5)));
+            if (k - x <= zipfSquash || u >= hIntegral(k + 0.5) - h(k))
+            {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * The Zipf weight of x, x^-s
+     *
+     * @param x
+     *          The rank
+     * @return
+     *          The weight
+     */
+    private double h(double x)
+    {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    /**
+     * The integral of h, ((x^(1 - s)) - 1) / (1 - s), which is log x
+     * when s is 1
+     *
+     * @param x
+     *          The upper bound
+     * @return
+     *          The integral from 1 to x
+     */
+    private double hIntegral(double x)
+    {
+        double logX = Math.log(x);
+        double t = (1 - exponent) * logX;
+        double ratio = Math.abs(t) > 1e-8 ? Math.expm1(t) / t
+            : 1 + t / 2 * (1 + t / 3 * (1 + t / 4));
+        return ratio * logX;
+    }
+
+    /**
+     * The inverse of hIntegral
+     *
+     * @param x
+     *          The integral
+     * @return
+     *          The upper bound it comes from
+     */
+    private double hInverse(double x)
+    {
+        double t = Math.max(-1, x * (1 - exponent));
+        double ratio = Math.abs(t) > 1e-8 ? Math.log1p(t) / t
+            : 1 - t * (0.5 - t * (1.0 / 3 - t / 4));
+        return Math.exp(ratio * x);
+    }
+
+    /**
+     * Spread small numbers over [0, 1), so the most common keys are not
+     * all at the front of the sorted output
+     *
+     * @param n
+     *          The number
+     * @return
+     *          A key that only n maps to
+     */
+    private static double scatter(long n)
+    {
+        long z = n * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Wait for a chunk and pass on its failure
+     *
+     * @param chunk
+     *          The pending chunk
+     * @throws IOException
+     */
+    private static void await(Future<Void> chunk) throws IOException
+    {
+        try
+        {
+            chunk.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted writing records", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Turn a size such as 512M or 4G into bytes
+     *
+     * @param size
+     *          The size, with an optional K, M or G
+     * @return
+     *          The number of bytes
+     */
+    public static long parseSize(String size)
+    {
+        String digits = size.toUpperCase();
+        int shift = 0;
+        if (digits.endsWith("K"))
+        {
+            shift = 10;
+        }
+        else if (digits.endsWith("M"))
+        {
+            shift = 20;
+        }
+        else if (digits.endsWith("G"))
+        {
+            shift = 30;
+        }
+        if (shift > 0)
+        {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        return Long.parseLong(digits) << shift;
+    }
+
+    /**
+     * @param args
+     *     Command line parameters: the file to write, its size such as
+     *     4G, and the shape (uniform, sorted, reverse, nearly-sorted,
+     *     zipf, duplicates or special), with -seed n, -threads n,
+     *     -percent p for the share of a nearly sorted file out of
+     *     place, -exponent s for Zipf and -distinct n for the number of
+     *     keys of the Zipf and duplicate shapes. An unknown option, or
+     *     one missing its value, throws an IllegalArgumentException.
+     */
+    public static void main(String[] args) {
+        DataGenerator generator = new DataGenerator(args[0],
+            parseSize(args[1]) / Record.BYTES, Shape.fromName(args[2]));
+        for (int i = 3; i < args.length; i += 2)
+        {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (args[i].equals("-seed") && value != null)
+            {
+                generator.setSeed(Long.parseLong(value));
+            }
+            else if (args[i].equals("-threads") && value != null)
+            {
+                generator.setThreads(Integer.parseInt(value));
+            }
+            else if (args[i].equals("-percent") && value != null)
+            {
+                generator.setPercent(Double.parseDouble(value));
+            }
+            else if (args[i].equals("-exponent") && value != null)
+            {
+                generator.setExponent(Double.parseDouble(value));
+            }
+            else if (args[i].equals("-distinct") && value != null)
+            {
+                generator.setDistinct(Integer.parseInt(value));
+            }
+            else
+            {
+                throw new IllegalArgumentException("unknown option "
+                    + args[i] + ", or it is missing its value");
+            }
+        }
+        try
+        {
+            generator.write();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
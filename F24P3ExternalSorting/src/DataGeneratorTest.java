@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DataGeneratorTest extends TestCase {
+    private String file;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        file = "solutionTestData/generated.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(file).delete();
+    }
+
+    /**
+     * Write a file and read it back
+     *
+     * @param records
+     *            the number of records
+     * @param shape
+     *            the key shape
+     * @return the file contents
+     * @throws IOException
+     */
+    private ByteBuffer generate(long records, DataGenerator.Shape shape)
+        throws IOException {
+        DataGenerator generator = new DataGenerator(file, records, shape);
+        generator.setSeed(7);
+        generator.write();
+        return ByteBuffer.wrap(Files.readAllBytes(new File(file).toPath()));
+    }
+
+    /**
+     * Count how often each key appears
+     *
+     * @param bb
+     *            the records
+     * @return the count of each key
+     */
+    private Map<Double, Integer> counts(ByteBuffer bb) {
+        Map<Double, Integer> counts = new HashMap<Double, Integer>();
+        for (int at = 8; at < bb.limit(); at += Record.BYTES) {
+            counts.merge(bb.getDouble(at), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * The same seed gives the same file with any number of threads
+     *
+     * @throws IOException
+     */
+    public void testDeterministic() throws IOException {
+        long records = 2 * DataGenerator.CHUNK_BYTES / Record.BYTES + 1000;
+        DataGenerator one = new DataGenerator(file, records,
+            DataGenerator.Shape.UNIFORM);
+        one.setSeed(3);
+        one.setThreads(1);
+        one.write();
+        byte[] first = Files.readAllBytes(new File(file).toPath());
+        assertEquals(records * Record.BYTES, first.length);
+        DataGenerator three = new DataGenerator(file, records,
+            DataGenerator.Shape.fromName("uniform"));
+        three.setSeed(3);
+        three.setThreads(3);
+        three.write();
+        assertTrue(Arrays.equals(first, Files.readAllBytes(
+            new File(file).toPath())));
+        three.setSeed(4);
+        three.write();
+        assertFalse(Arrays.equals(first, Files.readAllBytes(
+            new File(file).toPath())));
+    }
+
+    /**
+     * Sorted, reversed and nearly sorted files are ordered as asked
+     *
+     * @throws IOException
+     */
+    public void testOrderedShapes() throws IOException {
+        generate(10000, DataGenerator.Shape.SORTED);
+        assertTrue(new ByteProcessor(file, null).isSorted());
+
+        ByteBuffer bb = generate(10000, DataGenerator.Shape.REVERSE);
+        for (int i = 1; i < 10000; i++) {
+            assertTrue(bb.getDouble(i * Record.BYTES + 8) < bb.getDouble(
+                (i - 1) * Record.BYTES + 8));
+        }
+
+        bb = generate(100000, DataGenerator.Shape.fromName(
+            "nearly-sorted"));
+        int descents = 0;
+        for (int i = 1; i < 100000; i++) {
+            if (bb.getDouble(i * Record.BYTES + 8) < bb.getDouble(
+                (i - 1) * Record.BYTES + 8)) {
+                descents++;
+            }
+        }
+        //About 1 percent of the keys are out of place
+        assertTrue(descents > 200 && descents < 2000);
+    }
+
+    /**
+     * Skewed and duplicate shapes repeat their keys as asked
+     *
+     * @throws IOException
+     */
+    public void testRepeatedKeys() throws IOException {
+        Map<Double, Integer> dups = counts(generate(50000,
+            DataGenerator.Shape.DUPLICATES));
+        assertEquals(1000, dups.size());
+
+        Map<Double, Integer> zipf = counts(generate(50000,
+            DataGenerator.Shape.ZIPF));
+        int top = 0;
+        for (int count : zipf.values()) {
+            top = Math.max(top, count);
+        }
+        //The top key of 1000 takes about 13 percent under Zipf's law
+        assertTrue(top > 5000 && top < 8000);
+    }
+
+    /**
+     * Special keys come out and still sort
+     *
+     * @throws IOException
+     */
+    public void testSpecialKeys() throws IOException {
+        Map<Double, Integer> keys = counts(generate(20000,
+            DataGenerator.Shape.SPECIAL));
+        assertTrue(keys.containsKey(Double.NaN));
+        assertTrue(keys.containsKey(-0.0));
+        assertTrue(keys.containsKey(Double.NEGATIVE_INFINITY));
+        new Sorter(file, Externalsort.RUN_FILE).sort();
+        assertTrue(new ByteProcessor(file, null).isSorted());
+    }
+
+    /**
+     * An unknown option, an option without its value or too few
+     * distinct keys is an error instead of being ignored
+     */
+    public void testBadOptions() {
+        String[][] bad = { { file, "4K", "uniform", "-sed", "3" },
+            { file, "4K", "uniform", "-seed" },
+            { file, "4K", "duplicates", "-distinct", "0" } };
+        for (String[] args : bad) {
+            Exception thrown = null;
+            try {
+                DataGenerator.main(args);
+            }
+            catch (IllegalArgumentException e) {
+                thrown = e;
+            }
+            assertNotNull(thrown);
+            assertFalse(new File(file).exists());
+        }
+        DataGenerator.main(new String[] { file, "4K", "duplicates",
+            "-seed", "3", "-distinct", "1" });
+        assertEquals(4096, new File(file).length());
+    }
+}
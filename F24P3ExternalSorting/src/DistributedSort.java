@@ -0,0 +1,283 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Coordinates a sample sort over several worker processes. A sample
+ * of keys picks the range splitters, every worker scatters its slice
+ * of the input by key range, every worker sorts the range it owns, and
+ * the sorted ranges are concatenated in order.
+ *
+ * The workers are separate JVMs started on this machine and they
+ * shuffle through files in a shared work directory, so the same steps
+ * run across machines when that directory is on shared storage.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DistributedSort {
+    /**
+     * the number of keys sampled for each worker
+     */
+    public final static int SAMPLES_PER_WORKER = 64;
+
+    private String input;
+    private int workers;
+    private File workDir;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new DistributedSort object.
+     *
+     * @param input
+     *            the file to sort in place
+     * @param workers
+     *            the number of worker processes
+     */
+    public DistributedSort(String input, int workers) {
+        this.input = input;
+        this.workers = workers;
+    }
+
+    /**
+     * Sort the input file
+     *
+     * @throws IOException
+     */
+    public void sort() throws IOException
+    {
+        File in = new File(input).getAbsoluteFile();
+        workDir = Files.createTempDirectory(in.getParentFile().toPath(),
+            "distsort").toFile();
+        try
+        {
+            double[] splitters = chooseSplitters(input, workers,
+                new Random(in.length()));
+            //Scatter every slice by key range
+            List<List<String>> commands = new ArrayList<List<String>>();
+            for (int w = 0; w < workers; w++)
+            {
+                List<String> command = workerCommand("scatter");
+                command.add(in.getPath());
+                command.add(Integer.toString(w));
+                command.add(Integer.toString(workers));
+                for (double splitter : splitters)
+                {
+                    command.add(Double.toString(splitter));
+                }
+                commands.add(command);
+            }
+            runAll(commands);
+            //Sort every key range
+            commands.clear();
+            for (int w = 0; w < workers; w++)
+            {
+                List<String> command = workerCommand("sort");
+                command.add(Integer.toString(w));
+                command.add(Integer.toString(workers));
+                commands.add(command);
+            }
+            runAll(commands);
+            concatenate(in);
+        }
+        finally
+        {
+            for (File file : workDir.listFiles())
+            {
+                file.delete();
+            }
+            workDir.delete();
+        }
+    }
+
+    /**
+     * Pick workers - 1 range boundaries from a random sample of keys
+     *
+     * @param file
+     *          The file to sample
+     * @param workers
+     *          The number of key ranges
+     * @param rng
+     *          The random generator picking the sample
+     * @return
+     *          The sorted splitters
+     * @throws IOException
+     */
+    public static double[] chooseSplitters(String file, int workers,
+        Random rng) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long records = raf.length() / Record.BYTES;
+        int samples = records == 0 ? 0
+            : (int)Math.min(records, (long)workers * SAMPLES_PER_WORKER);
+        double[] keys = new double[samples];
+        for (int i = 0; i < samples; i++)
+        {
+            long rec = (long)(rng.nextDouble() * records);
+            raf.seek(rec * Record.BYTES + Long.BYTES);
+            keys[i] = raf.readDouble();
+        }
+        raf.close();
+        Arrays.sort(keys);
+        double[] splitters = new double[workers - 1];
+        for (int i = 0; i < splitters.length; i++)
+        {
+            splitters[i] = samples == 0 ? 0
+                : keys[(int)((long)samples * (i + 1) / workers)];
+        }
+        return splitters;
+    }
+
+    /**
+     * Build the command that starts a worker JVM with this classpath
+     *
+     * @param mode
+     *          The worker mode
+     * @return
+     *          The command, ready for more arguments
+     */
+    private List<String> workerCommand(String mode)
+    {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("SortWorker");
+        command.add(mode);
+        command.add(workDir.getPath());
+        return command;
+    }
+
+    /**
+     * Start one worker process per command and wait for all of them.
+     * If any worker cannot start or fails, the others are stopped and
+     * waited for before the failure is passed on, so none of them is
+     * left running while the work directory is removed.
+     *
+     * @param commands
+     *          The worker commands
+     * @throws IOException
+     *          If a worker could not start or failed
+     */
+    private void runAll(List<List<String>> commands) throws IOException
+    {
+        List<Process> processes = new ArrayList<Process>();
+        boolean finished = false;
+        try
+        {
+            for (List<String> command : commands)
+            {
+                ProcessBuilder pb = new ProcessBuilder(command);
+                pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+                pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+                processes.add(pb.start());
+            }
+            for (int w = 0; w < processes.size(); w++)
+            {
+                int exit = processes.get(w).waitFor();
+                if (exit != 0)
+                {
+                    throw new IOException("worker " + w + " exited with "
+                        + exit);
+                }
+            }
+            finished = true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for workers", e);
+        }
+        finally
+        {
+            if (!finished)
+            {
+                stop(processes);
+            }
+        }
+    }
+
+    /**
+     * Destroy worker processes and wait until every one has exited,
+     * keeping any interrupt for the caller
+     *
+     * @param processes
+     *          The workers
+     */
+    private static void stop(List<Process> processes)
+    {
+        for (Process process : processes)
+        {
+            process.destroy();
+        }
+        boolean interrupted = Thread.interrupted();
+        for (Process process : processes)
+        {
+            while (process.isAlive())
+            {
+                try
+                {
+                    process.waitFor();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                    process.destroyForcibly();
+                }
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write every worker's sorted partition to the output in range order
+     *
+     * @param out
+     *          The output file
+     * @throws IOException
+     */
+    private void concatenate(File out) throws IOException
+    {
+        RandomAccessFile of = new RandomAccessFile(out, "rw");
+        of.setLength(0);
+        byte[] buffer = new byte[ByteProcessor.BYTES_PER_BLOCK];
+        for (int w = 0; w < workers; w++)
+        {
+            RandomAccessFile pf = new RandomAccessFile(
+                SortWorker.partitionFile(workDir, w), "r");
+            int bytesRead;
+            while ((bytesRead = pf.read(buffer)) != -1)
+            {
+                of.write(buffer, 0, bytesRead);
+            }
+            pf.close();
+        }
+        of.close();
+    }
+
+    /**
+     * @param args
+     *     Command line parameters: the file to sort and optionally
+     *     the number of workers
+     */
+    public static void main(String[] args) {
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        try
+        {
+            new DistributedSort(args[0], workers).sort();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DistributedSortTest extends TestCase {
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        //nothing to set up.
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File("solutionTestData/distInput.bin").delete();
+    }
+
+    /**
+     * Test that equal keys share a range and ranges follow the splitters
+     */
+    public void testRangeOf() {
+        double[] splitters = { 0.25, 0.5, 0.5, 0.75 };
+        assertEquals(0, SortWorker.rangeOf(splitters, 0.1));
+        assertEquals(1, SortWorker.rangeOf(splitters, 0.25));
+        assertEquals(3, SortWorker.rangeOf(splitters, 0.5));
+        assertEquals(4, SortWorker.rangeOf(splitters, 0.9));
+    }
+
+    /**
+     * Test an end to end sort with three worker processes
+     *
+     * @throws IOException
+     */
+    public void testSortWithWorkers() throws IOException {
+        ByteFile file = new ByteFile("solutionTestData/distInput.bin", 30);
+        file.writeRandomRecords(new Random(30));
+        new DistributedSort("solutionTestData/distInput.bin", 3).sort();
+        assertTrue(file.isSorted());
+        assertEquals(30 * ByteFile.BYTES_PER_BLOCK,
+            new File("solutionTestData/distInput.bin").length());
+    }
+}
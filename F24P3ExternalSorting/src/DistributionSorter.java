@@ -0,0 +1,561 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorts a file in place by distributing instead of merging. One pass
+ * scatters the records into bucket files by key range, then each
+ * bucket is read whole, sorted in memory and written straight to its
+ * place in the output, several buckets at a time. When the keys spread
+ * evenly that is two sequential passes over the data, where a merge
+ * sort needs one pass per merge level on top of run generation.
+ *
+ * The bucket boundaries are spread evenly over a known key range, such
+ * as [0, 1) for keys from Random.nextDouble, or taken from a sample of
+ * the keys. A bucket too big for its share of memory is split again by
+ * a sample of its own keys, and one that cannot be split, such as a
+ * bucket of equal keys, is sorted by a Sorter instead. An input that
+ * fits in one bucket is sorted in memory without being scattered.
+ *
+ * The buckets are only removed once every one of them is sorted. If a
+ * bucket sort fails the input is already partly overwritten, so the
+ * buckets are left behind, as Sorter leaves its run file, and hold
+ * every record.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DistributionSorter {
+    /**
+     * the most buckets one scatter writes to
+     */
+    public final static int MAX_BUCKETS = 1024;
+    /**
+     * the most times a bucket is split again before it goes to a Sorter
+     */
+    public final static int MAX_DEPTH = 3;
+    /**
+     * the bytes read from the input at a time while scattering
+     */
+    public final static int SCATTER_READ_BYTES =
+        ByteFile.COPY_BLOCKS * ByteProcessor.BYTES_PER_BLOCK;
+    /**
+     * the default memory for the in-memory bucket sorts
+     */
+    public final static long DEFAULT_MEMORY = 256L << 20;
+
+    private String input;
+    private String runFile;
+    private long memory;
+    private int threads;
+    private boolean knownRange;
+    private double low;
+    private double high;
+    private int buckets;
+    private AtomicInteger resplits;
+    private AtomicInteger fallbacks;
+    private FileChannel out;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new DistributionSorter object.
+     *
+     * @param input
+     *            the file to sort in place
+     * @param runFile
+     *            the scratch file name the bucket files are named after
+     */
+    public DistributionSorter(String input, String runFile) {
+        this.input = input;
+        this.runFile = runFile;
+        this.memory = DEFAULT_MEMORY;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.resplits = new AtomicInteger();
+        this.fallbacks = new AtomicInteger();
+    }
+
+    /**
+     * Spread the bucket boundaries evenly over a known key range instead
+     * of sampling the keys. Keys outside the range are still sorted,
+     * they just land in the first or last bucket.
+     *
+     * @param from
+     *          The smallest key expected
+     * @param to
+     *          The key every key is expected to be below
+     */
+    public void setKeyRange(double from, double to)
+    {
+        if (!(from < to))
+        {
+            throw new IllegalArgumentException("empty key range " + from
+                + " to " + to);
+        }
+        this.knownRange = true;
+        this.low = from;
+        this.high = to;
+    }
+
+    /**
+     * Set the memory all the bucket sorts running at once share. A
+     * bucket sort holds about three times the bytes of its bucket.
+     *
+     * @param bytes
+     *          The memory budget
+     */
+    public void setMemory(long bytes)
+    {
+        this.memory = bytes;
+    }
+
+    /**
+     * Set the number of buckets sorted at once
+     *
+     * @param count
+     *          The number of threads
+     */
+    public void setThreads(int count)
+    {
+        this.threads = count;
+    }
+
+    /**
+     * Sort the input file
+     *
+     * @throws IOException
+     */
+    public void sort() throws IOException
+    {
+        resplits.set(0);
+        fallbacks.set(0);
+        long bytes = new File(input).length();
+        long limit = bucketLimit();
+        if (bytes <= limit)
+        {
+            buckets = 1;
+            out = FileChannel.open(new File(input).toPath(),
+                StandardOpenOption.WRITE);
+            try
+            {
+                sortInMemory(input, (int)bytes, 0);
+            }
+            finally
+            {
+                out.close();
+            }
+            return;
+        }
+        buckets = (int)Math.min(MAX_BUCKETS,
+            Math.max(threads, 2 * ((bytes + limit - 1) / limit)));
+        double[] splitters = knownRange ? evenSplitters(buckets)
+            : DistributedSort.chooseSplitters(input, buckets,
+                new Random(bytes));
+        String prefix = runFile + ".bucket";
+        long[] sizes = scatter(input, prefix, splitters);
+
+        //Every record is in a bucket now, so the input can be written
+        out = FileChannel.open(new File(input).toPath(),
+            StandardOpenOption.WRITE);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        boolean done = false;
+        try
+        {
+            List<Future<Void>> sorted = new ArrayList<Future<Void>>();
+            long offset = 0;
+            for (int b = 0; b < sizes.length; b++)
+            {
+                String bucket = prefix + "." + b;
+                long at = offset;
+                sorted.add(pool.submit(() -> {
+                    sortBucket(bucket, at, 0);
+                    return null;
+                }));
+                offset += sizes[b];
+            }
+            for (Future<Void> bucket : sorted)
+            {
+                await(bucket);
+            }
+            done = true;
+        }
+        catch (IOException e)
+        {
+            throw new IOException(input + " was partly overwritten, its "
+                + "records are kept in " + prefix + ".0 to " + prefix + "."
+                + (sizes.length - 1), e);
+        }
+        finally
+        {
+            pool.shutdownNow();
+            out.close();
+            for (int b = 0; done && b < sizes.length; b++)
+            {
+                new File(prefix + "." + b).delete();
+            }
+        }
+    }
+
+    /**
+     * Get the most bytes one bucket may hold and still be sorted in
+     * memory beside the buckets the other threads are sorting
+     *
+     * @return
+     *          The bucket size limit, at least one block
+     */
+    private long bucketLimit()
+    {
+        long share = memory / (3L * Math.max(1, threads));
+        share -= share % Record.BYTES;
+        return Math.max(ByteProcessor.BYTES_PER_BLOCK,
+            Math.min(share, Integer.MAX_VALUE / 2 - Record.BYTES));
+    }
+
+    /**
+     * Spread count - 1 boundaries evenly over the known key range
+     *
+     * @param count
+     *          The number of buckets
+     * @return
+     *          The boundaries
+     */
+    private double[] evenSplitters(int count)
+    {
+        double[] splitters = new double[count - 1];
+        for (int i = 0; i < splitters.length; i++)
+        {
+            splitters[i] = low + (high - low) * (i + 1) / count;
+        }
+        return splitters;
+    }
+
+    /**
+     * Read a file once and write every record to the bucket file of its
+     * key range
+     *
+     * @param file
+     *          The file to scatter
+     * @param prefix
+     *          The bucket files are prefix.0, prefix.1 and so on
+     * @param splitters
+     *          The sorted bucket boundaries
+     * @return
+     *          The bytes written to each bucket
+     * @throws IOException
+     */
+    private long[] scatter(String file, String prefix, double[] splitters)
+        throws IOException
+    {
+        int count = splitters.length + 1;
+        long[] sizes = new long[count];
+        //Each bucket gets its share of memory to batch its writes in
+        int buffer = (int)Math.max(ByteProcessor.BYTES_PER_BLOCK,
+            Math.min(SCATTER_READ_BYTES, memory / (2L * count)));
+        BufferedOutputStream[] to = new BufferedOutputStream[count];
+        boolean done = false;
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                for (int b = 0; b < count; b++)
+                {
+                    to[b] = new BufferedOutputStream(new FileOutputStream(
+                        prefix + "." + b), buffer);
+                }
+                byte[] chunk = new byte[SCATTER_READ_BYTES];
+                ByteBuffer bb = ByteBuffer.wrap(chunk);
+                long left = raf.length() - raf.length() % Record.BYTES;
+                while (left > 0)
+                {
+                    int n = (int)Math.min(left, chunk.length);
+                    raf.readFully(chunk, 0, n);
+                    for (int pos = 0; pos < n; pos += Record.BYTES)
+                    {
+                        int b = SortWorker.rangeOf(splitters,
+                            bb.getDouble(pos + Long.BYTES));
+                        to[b].write(chunk, pos, Record.BYTES);
+                        sizes[b] += Record.BYTES;
+                    }
+                    left -= n;
+                }
+            }
+            finally
+            {
+                raf.close();
+                for (BufferedOutputStream bucket : to)
+                {
+                    if (bucket != null)
+                    {
+                        bucket.close();
+                    }
+                }
+            }
+            done = true;
+        }
+        finally
+        {
+            //The file is still whole, so the buckets opened so far go
+            for (int b = 0; !done && b < count; b++)
+            {
+                if (to[b] != null)
+                {
+                    new File(prefix + "." + b).delete();
+                }
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Sort one bucket into the output at the given offset, splitting it
+     * again first if it does not fit in memory
+     *
+     * @param bucket
+     *          The bucket file, deleted once it is sorted
+     * @param offset
+     *          The byte offset of the bucket in the output
+     * @param depth
+     *          The number of times the bucket's records were split
+     *          before this one
+     * @throws IOException
+     */
+    private void sortBucket(String bucket, long offset, int depth)
+        throws IOException
+    {
+        long bytes = new File(bucket).length();
+        if (bytes <= bucketLimit())
+        {
+            sortInMemory(bucket, (int)bytes, offset);
+        }
+        else if (depth >= MAX_DEPTH || !resplit(bucket, offset, depth))
+        {
+            //Too many equal keys to split, so merge sort it
+            fallbacks.incrementAndGet();
+            String runs = bucket + ".run";
+            new Sorter(bucket, runs).sort();
+            new File(runs).delete();
+            copy(bucket, offset);
+        }
+    }
+
+    /**
+     * Read a bucket whole, sort it and write it to the output
+     *
+     * @param bucket
+     *          The bucket file
+     * @param bytes
+     *          Its length
+     * @param offset
+     *          The byte offset of the bucket in the output
+     * @throws IOException
+     */
+    private void sortInMemory(String bucket, int bytes, long offset)
+        throws IOException
+    {
+        if (bytes == 0)
+        {
+            return;
+        }
+        byte[] data = new byte[bytes];
+        RandomAccessFile raf = new RandomAccessFile(bucket, "r");
+        try
+        {
+            raf.readFully(data);
+        }
+        finally
+        {
+            raf.close();
+        }
+        int n = bytes / Record.BYTES;
+        long[] ids = new long[n];
+        long[] keys = new long[n];
+        BlockScan.decode(data, bytes, ids, keys);
+        BlockScan.sortBlock(keys, ids, n);
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        for (int i = 0; i < n; i++)
+        {
+            bb.putLong(ids[i]);
+            bb.putDouble(BlockScan.key(keys[i]));
+        }
+        bb.flip();
+        write(bb, offset);
+    }
+
+    /**
+     * Split an oversized bucket by a sample of its keys and sort the
+     * pieces
+     *
+     * @param bucket
+     *          The bucket file
+     * @param offset
+     *          The byte offset of the bucket in the output
+     * @param depth
+     *          The number of splits so far
+     * @return
+     *          False if the sample holds only one key, so splitting
+     *          would not make the bucket any smaller
+     * @throws IOException
+     */
+    private boolean resplit(String bucket, long offset, int depth)
+        throws IOException
+    {
+        long bytes = new File(bucket).length();
+        long limit = bucketLimit();
+        int count = (int)Math.min(MAX_BUCKETS,
+            2 * ((bytes + limit - 1) / limit));
+        double[] splitters = DistributedSort.chooseSplitters(bucket, count,
+            new Random(bytes));
+        if (Double.compare(splitters[0],
+            splitters[splitters.length - 1]) == 0)
+        {
+            return false;
+        }
+        resplits.incrementAndGet();
+        long[] sizes = scatter(bucket, bucket, splitters);
+        for (int b = 0; b < sizes.length; b++)
+        {
+            //The records are still in bucket until the sort is done
+            sortBucket(bucket + "." + b, offset, depth + 1);
+            new File(bucket + "." + b).delete();
+            offset += sizes[b];
+        }
+        return true;
+    }
+
+    /**
+     * Copy a sorted bucket file to the output
+     *
+     * @param bucket
+     *          The bucket file
+     * @param offset
+     *          The byte offset of the bucket in the output
+     * @throws IOException
+     */
+    private void copy(String bucket, long offset) throws IOException
+    {
+        FileChannel in = FileChannel.open(new File(bucket).toPath(),
+            StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer bb = ByteBuffer.allocate(SCATTER_READ_BYTES);
+            while (in.read(bb) > 0)
+            {
+                bb.flip();
+                offset += write(bb, offset);
+                bb.clear();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Write a whole buffer to the output at an offset. Positional
+     * writes let the threads fill their parts of the output at once.
+     *
+     * @param bb
+     *          The bytes to write
+     * @param offset
+     *          Where they go
+     * @return
+     *          The number of bytes written
+     * @throws IOException
+     */
+    private int write(ByteBuffer bb, long offset) throws IOException
+    {
+        int length = bb.remaining();
+        while (bb.hasRemaining())
+        {
+            offset += out.write(bb, offset);
+        }
+        return length;
+    }
+
+    /**
+     * Wait for a bucket sort and pass on its failure
+     *
+     * @param bucket
+     *          The pending bucket sort
+     * @throws IOException
+     */
+    private static void await(Future<Void> bucket) throws IOException
+    {
+        try
+        {
+            bucket.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted sorting buckets", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Describe how the last sort went
+     *
+     * @return
+     *          The bucket counts
+     */
+    public String report()
+    {
+        return buckets + " buckets, " + resplits.get() + " split again, "
+            + fallbacks.get() + " merge sorted";
+    }
+
+    /**
+     * Get the number of buckets the first scatter used
+     *
+     * @return
+     *          The number of buckets
+     */
+    public int getBuckets()
+    {
+        return buckets;
+    }
+
+    /**
+     * Get the number of buckets that were split again
+     *
+     * @return
+     *          The number of splits
+     */
+    public int getResplits()
+    {
+        return resplits.get();
+    }
+
+    /**
+     * Get the number of buckets that had to be merge sorted
+     *
+     * @return
+     *          The number of fallbacks
+     */
+    public int getFallbacks()
+    {
+        return fallbacks.get();
+    }
+}
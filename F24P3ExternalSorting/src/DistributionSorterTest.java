@@ -0,0 +1,221 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class DistributionSorterTest extends TestCase {
+    private String input;
+    private String expected;
+    private String runFile;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/distInput.bin";
+        expected = "solutionTestData/distExpected.bin";
+        runFile = "solutionTestData/distRun.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(input).delete();
+        new File(expected).delete();
+        new File(runFile).delete();
+        for (File left : new File(runFile).getParentFile().listFiles()) {
+            if (left.getName().startsWith("distRun.bin.bucket")) {
+                left.delete();
+            }
+        }
+    }
+
+    /**
+     * Write records with keys taken from a power of uniform values, so
+     * a higher power crowds the keys toward 0
+     *
+     * @param records
+     *            the number of records
+     * @param power
+     *            the power
+     * @param distinct
+     *            the number of distinct keys, or 0 for no limit
+     * @throws IOException
+     */
+    private void writeKeys(int records, double power, int distinct)
+        throws IOException {
+        Random rng = new Random(records);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(input)));
+        for (int i = 0; i < records; i++) {
+            double key = Math.pow(rng.nextDouble(), power);
+            if (distinct > 0) {
+                key = Math.floor(key * distinct) / distinct;
+            }
+            out.writeLong(rng.nextLong());
+            out.writeDouble(key);
+        }
+        out.close();
+        Files.copy(new File(input).toPath(), new File(expected).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        new Sorter(expected, runFile).sort();
+    }
+
+    /**
+     * Decode a file and put its records in (key, ID) order
+     *
+     * @param file
+     *            the file
+     * @return the sortable keys followed by the IDs
+     * @throws IOException
+     */
+    private long[] ordered(String file) throws IOException {
+        byte[] data = Files.readAllBytes(new File(file).toPath());
+        int n = data.length / Record.BYTES;
+        long[] ids = new long[n];
+        long[] keys = new long[n];
+        BlockScan.decode(data, data.length, ids, keys);
+        BlockScan.sortBlock(keys, ids, n);
+        long[] both = Arrays.copyOf(keys, 2 * n);
+        System.arraycopy(ids, 0, both, n, n);
+        return both;
+    }
+
+    /**
+     * Check the input is sorted by key and holds the same records the
+     * merge sort kept. Equal keys may be in any order, since a bucket
+     * of one key is already sorted as far as Sorter is concerned.
+     *
+     * @throws IOException
+     */
+    private void assertSortedLikeSorter() throws IOException {
+        assertTrue(new ByteProcessor(input, null).isSorted());
+        assertTrue(Arrays.equals(ordered(expected), ordered(input)));
+        assertFalse(new File(runFile + ".bucket.0").exists());
+    }
+
+    /**
+     * Evenly spread keys in a known range need no second split
+     *
+     * @throws IOException
+     */
+    public void testKnownRange() throws IOException {
+        writeKeys(100000, 1, 0);
+        DistributionSorter sorter = new DistributionSorter(input, runFile);
+        sorter.setKeyRange(0, 1);
+        sorter.setThreads(4);
+        sorter.setMemory(3L * 4 * 64 * ByteProcessor.BYTES_PER_BLOCK);
+        sorter.sort();
+        assertSortedLikeSorter();
+        assertTrue(sorter.getBuckets() >= 4);
+        assertEquals(0, sorter.getResplits());
+        assertEquals(0, sorter.getFallbacks());
+    }
+
+    /**
+     * Keys crowded into a corner of the range overflow their buckets,
+     * which are split again by a sample
+     *
+     * @throws IOException
+     */
+    public void testSkewedKeysSplitAgain() throws IOException {
+        writeKeys(100000, 8, 0);
+        DistributionSorter sorter = new DistributionSorter(input, runFile);
+        sorter.setKeyRange(0, 1);
+        sorter.setThreads(2);
+        sorter.setMemory(3L * 2 * 32 * ByteProcessor.BYTES_PER_BLOCK);
+        sorter.sort();
+        assertSortedLikeSorter();
+        assertTrue(sorter.getResplits() > 0);
+    }
+
+    /**
+     * Sampled boundaries follow the keys, and buckets of one key fall
+     * back to a merge sort
+     *
+     * @throws IOException
+     */
+    public void testSampledWithDuplicates() throws IOException {
+        writeKeys(100000, 3, 5);
+        DistributionSorter sorter = new DistributionSorter(input, runFile);
+        sorter.setThreads(3);
+        sorter.setMemory(3L * 3 * 16 * ByteProcessor.BYTES_PER_BLOCK);
+        sorter.sort();
+        assertSortedLikeSorter();
+        assertTrue(sorter.getFallbacks() > 0);
+    }
+
+    /**
+     * A bucket sort that fails leaves every bucket behind, since the
+     * input is already partly overwritten
+     *
+     * @throws IOException
+     */
+    public void testFailedBucketKeepsRecords() throws IOException {
+        writeKeys(100000, 8, 0);
+        //The first bucket is split again, and its first piece cannot be
+        //written because a directory is in the way
+        File blocked = new File(runFile + ".bucket.0.0");
+        blocked.mkdir();
+        DistributionSorter sorter = new DistributionSorter(input, runFile);
+        sorter.setKeyRange(0, 1);
+        sorter.setThreads(1);
+        sorter.setMemory(3L * 32 * ByteProcessor.BYTES_PER_BLOCK);
+        Exception thrown = null;
+        try {
+            sorter.sort();
+        }
+        catch (IOException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+        assertTrue(thrown.getMessage().contains("kept in"));
+        long kept = 0;
+        for (int b = 0; b < sorter.getBuckets(); b++) {
+            kept += new File(runFile + ".bucket." + b).length();
+        }
+        assertEquals(new File(input).length(), kept);
+    }
+
+    /**
+     * A scatter that fails removes the buckets it started, since the
+     * input is still whole
+     *
+     * @throws IOException
+     */
+    public void testFailedScatterRemovesBuckets() throws IOException {
+        writeKeys(100000, 1, 0);
+        byte[] before = Files.readAllBytes(new File(input).toPath());
+        //The second bucket cannot be written because a directory is in
+        //the way
+        File blocked = new File(runFile + ".bucket.1");
+        blocked.mkdir();
+        DistributionSorter sorter = new DistributionSorter(input, runFile);
+        sorter.setKeyRange(0, 1);
+        sorter.setThreads(1);
+        sorter.setMemory(3L * 32 * ByteProcessor.BYTES_PER_BLOCK);
+        Exception thrown = null;
+        try {
+            sorter.sort();
+        }
+        catch (IOException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+        assertFalse(new File(runFile + ".bucket.0").exists());
+        assertTrue(blocked.isDirectory());
+        assertTrue(Arrays.equals(before, Files.readAllBytes(
+            new File(input).toPath())));
+    }
+}
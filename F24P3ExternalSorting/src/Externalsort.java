@@ -23,6 +23,9 @@
 // letter of this restriction.
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The class containing the main method.
@@ -32,45 +35,309 @@ import java.io.IOException;
  */
 public class Externalsort {
     
+    /**
+     * the file replacement selection writes its runs to
+     */
+    public final static String RUN_FILE = "solutionTestData/runFile.bin";
+
     /**
      * @param args
-     *     Command line parameters
+     *     Command line parameters: the file to sort, optionally
+     *     followed by -stats to print the merge plan report and
+     *     -combine (distinct|first|last|sum|count) to fold records
+     *     with equal keys, -arity d to use a d-ary heap for
+     *     replacement selection, -checkpoint to make the sort
+     *     resumable, -partitions n or -splitters a,b,... to write
+     *     key range partitions next to the file instead and
+     *     -cache dir [-cacheMB n] to reuse earlier sorted outputs and
+     *     -runMemoryMB n to keep up to n MB of runs in memory,
+     *     -lowFootprint to free scratch space as the merge reads it,
+     *     -scratch a,b,... to stripe the runs over those directories.
+     *     -distribute sorts by scattering into key range buckets
+     *     instead, with -keyRange lo,hi when the key bounds are known.
+     *     -plan samples the file and picks the cheapest way to sort
+     *     it, and -strategy name forces one of the planned ways; there
+     *     -runMemoryMB n is the memory budget, -scratch plans for and
+     *     stripes over the drives given and -stats prints the plan.
+     *     With -output out, the first file and any more files,
+     *     directories or globs after it are sorted together into out.
+     *     An unknown option, more than one file without -output, or an
+     *     option that -output, -plan or -distribute cannot honour is an
+     *     IllegalArgumentException
      */
     public static void main(String[] args) {
-        //Create the heap for the external sort
-        Record[] arrayForHeap = new Record[4096];
-        MinHeap<Record> heap = new MinHeap<Record>(arrayForHeap, 0, 4096);
-        //Create the processor for the input file
-        ByteProcessor processor = new ByteProcessor(args[0], heap);
+        boolean stats = false;
+        Combiner combiner = null;
+        int arity = 0;
+        boolean checkpoint = false;
+        int partitions = 0;
+        double[] splitters = null;
+        String cacheDir = null;
+        long cacheMB = 1024;
+        long runMemoryMB = 0;
+        boolean lowFootprint = false;
+        boolean distribute = false;
+        ScratchDirs scratch = null;
+        double[] keyRange = null;
+        boolean plan = false;
+        StrategyPlanner.Strategy strategy = null;
+        String output = null;
+        List<String> inputs = new ArrayList<String>();
+        List<String> given = new ArrayList<String>();
+        inputs.add(args[0]);
+        for (int i = 1; i < args.length; i++)
+        {
+            if (args[i].startsWith("-"))
+            {
+                given.add(args[i]);
+            }
+            if (args[i].equals("-stats"))
+            {
+                stats = true;
+            }
+            else if (args[i].equals("-checkpoint"))
+            {
+                checkpoint = true;
+            }
+            else if (args[i].equals("-lowFootprint"))
+            {
+                lowFootprint = true;
+            }
+            else if (args[i].equals("-scratch") && i + 1 < args.length)
+            {
+                scratch = ScratchDirs.parse(args[++i]);
+            }
+            else if (args[i].equals("-distribute"))
+            {
+                distribute = true;
+            }
+            else if (args[i].equals("-keyRange") && i + 1 < args.length)
+            {
+                String[] bounds = args[++i].split(",", -1);
+                if (bounds.length != 2)
+                {
+                    throw new IllegalArgumentException("-keyRange needs "
+                        + "two keys, lo,hi, not " + args[i]);
+                }
+                keyRange = new double[] { Double.parseDouble(bounds[0]),
+                    Double.parseDouble(bounds[1]) };
+                distribute = true;
+            }
+            else if (args[i].equals("-plan"))
+            {
+                plan = true;
+            }
+            else if (args[i].equals("-strategy") && i + 1 < args.length)
+            {
+                strategy = StrategyPlanner.Strategy.fromName(args[++i]);
+                plan = true;
+            }
+            else if (args[i].equals("-combine") && i + 1 < args.length)
+            {
+                combiner = Combine.fromName(args[++i]);
+            }
+            else if (args[i].equals("-partitions") && i + 1 < args.length)
+            {
+                partitions = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-splitters") && i + 1 < args.length)
+            {
+                String[] bounds = args[++i].split(",");
+                splitters = new double[bounds.length];
+                for (int b = 0; b < bounds.length; b++)
+                {
+                    splitters[b] = Double.parseDouble(bounds[b]);
+                }
+                partitions = bounds.length + 1;
+            }
+            else if (args[i].equals("-arity") && i + 1 < args.length)
+            {
+                arity = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-cache") && i + 1 < args.length)
+            {
+                cacheDir = args[++i];
+            }
+            else if (args[i].equals("-cacheMB") && i + 1 < args.length)
+            {
+                cacheMB = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-runMemoryMB") && i + 1 < args.length)
+            {
+                runMemoryMB = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-output") && i + 1 < args.length)
+            {
+                output = args[++i];
+            }
+            else if (args[i].startsWith("-"))
+            {
+                throw new IllegalArgumentException("unknown option "
+                    + args[i] + ", or it is missing its value");
+            }
+            else
+            {
+                inputs.add(args[i]);
+            }
+        }
+        if (output == null && inputs.size() > 1)
+        {
+            throw new IllegalArgumentException("more than one file to sort "
+                + inputs + " needs -output");
+        }
+        if (output != null)
+        {
+            checkOptions("-output", given, "-combine", "-stats");
+            sortShards(inputs, output, combiner, stats);
+            return;
+        }
+        if (plan)
+        {
+            checkOptions("-plan", given, "-strategy", "-stats",
+                "-scratch", "-runMemoryMB");
+            sortPlanned(args[0], strategy, scratch, runMemoryMB << 20,
+                stats);
+            return;
+        }
+        if (distribute)
+        {
+            checkOptions("-distribute", given, "-keyRange", "-stats");
+            sortDistributed(args[0], keyRange, stats);
+            return;
+        }
+        Sorter sorter = new Sorter(args[0], RUN_FILE);
+        sorter.setArity(arity);
+        sorter.setCombiner(combiner);
+        sorter.setCheckpoint(checkpoint);
+        sorter.setPartitions(partitions, splitters);
+        sorter.setRunMemory(runMemoryMB << 20);
+        sorter.setLowFootprint(lowFootprint);
+        sorter.setScratchDirs(scratch);
+        if (cacheDir != null)
+        {
+            sorter.setCache(new SortCache(cacheDir, cacheMB << 20));
+        }
         try 
         {
-            //outFile object
-            ByteFile outFile = new ByteFile("solutionTestData/outFile.bin",
-                processor.getBlocks());
-            //runFile object
-            ByteFile runFile = new ByteFile("solutionTestData/runFile.bin", 
-                processor.getBlocks());
-            //If the input file is sorted, we are done
-            if (!processor.isSorted())
-            {
-                //Incrementer for the number of blocks per run 
-                int i = 0;
-                //Create the runFile using replacement selection on inputFile
-                processor.readRecords();
-                //Continue while the blocks per run is less than num blocks
-                while ((1 << i) < processor.getBlocks())
+            if (sorter.sort() && stats)
+            {
+                System.out.println(sorter.isCacheHit()
+                    ? "Sorted output taken from the cache"
+                    : sorter.getPlanner().report());
+                if ((runMemoryMB > 0 || lowFootprint || scratch != null)
+                    && !sorter.isCacheHit())
                 {
-                    //Merge runs
-                    processor.multiMerge((1 << i));
-                    i += 3;
-                    //Copy merged data to runFile
-                    outFile.updateRunFile("solutionTestData/runFile.bin");
+                    System.out.println("Run bytes spilled: "
+                        + sorter.getSpilledBytes()
+                        + "\nPeak scratch bytes: "
+                        + sorter.getPeakScratchBytes());
                 }
-                //Copy sorted data to inputFile
-                runFile.updateRunFile(args[0]);
             }
             //Print the first record from each sorted block
-            processor.print(args[0]);
+            sorter.print();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (scratch != null)
+            {
+                scratch.close();
+            }
+        }
+    }
+
+    /**
+     * Check that a sorting mode honours every option given with it
+     *
+     * @param mode
+     *          The option that picks the mode
+     * @param given
+     *          Every option on the command line
+     * @param allowed
+     *          The other options the mode honours
+     * @throws IllegalArgumentException
+     *          If an option would be ignored
+     */
+    private static void checkOptions(String mode, List<String> given,
+        String... allowed)
+    {
+        List<String> ignored = new ArrayList<String>(given);
+        ignored.remove(mode);
+        ignored.removeAll(Arrays.asList(allowed));
+        if (!ignored.isEmpty())
+        {
+            throw new IllegalArgumentException(mode + " cannot be used "
+                + "with " + ignored);
+        }
+    }
+
+    /**
+     * Sort shard files together into one output file
+     *
+     * @param specs
+     *          The files, directories and globs naming the shards
+     * @param output
+     *          The file to write
+     * @param combiner
+     *          The combiner, or null
+     * @param stats
+     *          True to print the merge plan report
+     */
+    private static void sortShards(List<String> specs, String output,
+        Combiner combiner, boolean stats)
+    {
+        try
+        {
+            List<String> shards = new ArrayList<String>();
+            for (String spec : specs)
+            {
+                shards.addAll(ShardSorter.expand(spec));
+            }
+            ShardSorter sorter = new ShardSorter(shards, output, RUN_FILE);
+            sorter.setCombiner(combiner);
+            sorter.sort();
+            if (stats)
+            {
+                System.out.println(shards.size() + " shards");
+                System.out.println(sorter.getPlanner().report());
+            }
+            new ByteProcessor(output, null).print(output);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sort a file by scattering it into key range buckets
+     *
+     * @param file
+     *          The file to sort
+     * @param keyRange
+     *          The known lowest and highest keys, or null to sample
+     * @param stats
+     *          True to print the bucket counts
+     */
+    private static void sortDistributed(String file, double[] keyRange,
+        boolean stats)
+    {
+        DistributionSorter sorter = new DistributionSorter(file, RUN_FILE);
+        if (keyRange != null)
+        {
+            sorter.setKeyRange(keyRange[0], keyRange[1]);
+        }
+        try
+        {
+            sorter.sort();
+            if (stats)
+            {
+                System.out.println(sorter.report());
+            }
+            new ByteProcessor(file, null).print(file);
         }
         catch (IOException e)
         {
@@ -78,4 +345,54 @@ public class Externalsort {
         }
     }
 
+    /**
+     * Sort a file the way the strategy planner finds cheapest
+     *
+     * @param file
+     *          The file to sort
+     * @param strategy
+     *          The strategy to force, or null to take the cheapest
+     * @param scratch
+     *          The scratch directories, or null to use the run file
+     * @param memory
+     *          The memory budget in bytes, or 0 for the default
+     * @param stats
+     *          True to print the plan and how long the sort took
+     */
+    private static void sortPlanned(String file,
+        StrategyPlanner.Strategy strategy, ScratchDirs scratch,
+        long memory, boolean stats)
+    {
+        StrategyPlanner planner = new StrategyPlanner(file, RUN_FILE);
+        planner.setOverride(strategy);
+        planner.setScratchDirs(scratch);
+        if (memory > 0)
+        {
+            planner.setMemory(memory);
+        }
+        try
+        {
+            planner.plan();
+            long start = System.nanoTime();
+            planner.execute();
+            if (stats)
+            {
+                System.out.println(planner.report());
+                System.out.println(String.format("sorted in %.1f s",
+                    (System.nanoTime() - start) / 1e9));
+            }
+            new ByteProcessor(file, null).print(file);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (scratch != null)
+            {
+                scratch.close();
+            }
+        }
+    }
 }
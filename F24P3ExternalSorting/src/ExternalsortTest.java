@@ -27,4 +27,37 @@ public class ExternalsortTest extends TestCase {
         //Externalsort.main(args);
     }
 
+    /**
+     * Test that a mistyped option, a stray file or an option the
+     * chosen mode cannot honour is an error instead of being ignored
+     */
+    public void testBadArguments() {
+        String[][] bad = { { "solutionTestData/testInput.bin", "-stat" },
+            { "solutionTestData/testInput.bin", "-runMemory", "64" },
+            { "solutionTestData/testInput.bin", "-combine" },
+            { "solutionTestData/testInput.bin",
+                "solutionTestData/sampleInput16.bin" },
+            //Options the chosen mode would silently drop
+            { "solutionTestData/testInput.bin", "-distribute",
+                "-checkpoint" },
+            { "solutionTestData/testInput.bin", "-plan", "-combine", "sum" },
+            { "solutionTestData/testInput.bin", "-strategy", "in-memory",
+                "-lowFootprint" },
+            { "solutionTestData/testInput.bin", "-output",
+                "solutionTestData/never.bin", "-partitions", "3" },
+            { "solutionTestData/testInput.bin", "-distribute", "-plan" },
+            { "solutionTestData/testInput.bin", "-keyRange", "0" },
+            { "solutionTestData/testInput.bin", "-keyRange", "0,1,2" } };
+        for (String[] args : bad) {
+            Exception thrown = null;
+            try {
+                Externalsort.main(args);
+            }
+            catch (IllegalArgumentException e) {
+                thrown = e;
+            }
+            assertNotNull(thrown);
+        }
+    }
+
 }
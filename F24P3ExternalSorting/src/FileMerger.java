@@ -0,0 +1,131 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges files that are each already sorted into one sorted file,
+ * without any run generation. Every input file is one run of the
+ * merge plan, so when there are more files than the fan-in the
+ * smallest are merged first into a scratch file next to the output.
+ * The inputs are only checked for order as the merge reads them.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class FileMerger {
+    private int fanIn;
+    private Combiner combiner;
+    private MergePlanner planner;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new FileMerger object.
+     *
+     * @param fanIn
+     *            the maximum number of files merged at once
+     * @param combiner
+     *            the combiner to fold equal records with, or null
+     */
+    public FileMerger(int fanIn, Combiner combiner) {
+        this.fanIn = fanIn;
+        this.combiner = combiner;
+    }
+
+    /**
+     * Merge sorted files into output
+     *
+     * @param inputs
+     *          The sorted files to merge
+     * @param output
+     *          The file to write, which must not be one of the inputs
+     * @return
+     *          The number of records written
+     * @throws IOException
+     *          If a file cannot be read or written, or if an input
+     *          turns out not to be sorted
+     */
+    public long merge(List<String> inputs, String output) throws IOException
+    {
+        File out = new File(output);
+        List<Run> runs = new ArrayList<Run>();
+        for (String input : inputs)
+        {
+            File file = new File(input);
+            if (file.getCanonicalFile().equals(out.getCanonicalFile()))
+            {
+                throw new IllegalArgumentException(
+                    "the output is also an input: " + input);
+            }
+            if (file.length() % Record.BYTES != 0)
+            {
+                throw new IOException(input + " is not a whole number of "
+                    + "records");
+            }
+            runs.add(new Run(input, 0, file.length() / Record.BYTES));
+        }
+
+        planner = new MergePlanner(fanIn, combiner);
+        planner.setVerify(true);
+        planner.plan(runs);
+        File parent = out.getAbsoluteFile().getParentFile();
+        File scratch = File.createTempFile("merge", ".bin", parent);
+        try
+        {
+            planner.execute(scratch.getPath(), output);
+        }
+        finally
+        {
+            scratch.delete();
+        }
+        return planner.getRecordsWritten();
+    }
+
+    /**
+     * Get the planner used by the last merge
+     *
+     * @return
+     *          The planner
+     */
+    public MergePlanner getPlanner()
+    {
+        return planner;
+    }
+
+    /**
+     * @param args
+     *     Command line parameters: the output file, then the sorted
+     *     files to merge into it, with -fanIn k to merge at most k
+     *     files at once and -combine name to fold equal records
+     */
+    public static void main(String[] args) {
+        int fanIn = MergePlanner.DEFAULT_FAN_IN;
+        Combiner combiner = null;
+        List<String> files = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++)
+        {
+            if (args[i].equals("-fanIn") && i + 1 < args.length)
+            {
+                fanIn = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-combine") && i + 1 < args.length)
+            {
+                combiner = Combine.fromName(args[++i]);
+            }
+            else
+            {
+                files.add(args[i]);
+            }
+        }
+        FileMerger merger = new FileMerger(fanIn, combiner);
+        try
+        {
+            merger.merge(files, args[0]);
+            System.out.println(merger.getPlanner().report());
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class FileMergerTest extends TestCase {
+    private String output;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        output = "solutionTestData/mergedOutput.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        for (int f = 0; f < 5; f++) {
+            new File("solutionTestData/sortedPart" + f + ".bin").delete();
+        }
+        new File("solutionTestData/unsortedPart.bin").delete();
+        new File(output).delete();
+    }
+
+    /**
+     * Write a file of records with keys start, start + step, ...
+     *
+     * @param name
+     *            the file
+     * @param records
+     *            the number of records
+     * @param start
+     *            the first key
+     * @param step
+     *            the difference between keys
+     * @throws IOException
+     */
+    private void writeKeys(String name, int records, double start,
+        double step) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+            new FileOutputStream(name));
+        for (int i = 0; i < records; i++) {
+            out.writeLong(i);
+            out.writeDouble(start + i * step);
+        }
+        out.close();
+    }
+
+    /**
+     * More sorted files than the fan-in are merged in several passes
+     *
+     * @throws IOException
+     */
+    public void testCascadedMerge() throws IOException {
+        List<String> inputs = new ArrayList<String>();
+        long total = 0;
+        for (int f = 0; f < 5; f++) {
+            String name = "solutionTestData/sortedPart" + f + ".bin";
+            int records = (f + 1) * ByteProcessor.RECORDS_PER_BLOCK + f;
+            writeKeys(name, records, -f, 0.5 + f);
+            inputs.add(name);
+            total += records;
+        }
+        FileMerger merger = new FileMerger(2, null);
+        assertEquals(total, merger.merge(inputs, output));
+        assertEquals(total * Record.BYTES, new File(output).length());
+        assertEquals(4, merger.getPlanner().getMerges());
+        assertTrue(new ByteProcessor(output, null).isSorted());
+    }
+
+    /**
+     * No inputs, or only empty ones, leave an empty output in place of
+     * whatever was there
+     *
+     * @throws IOException
+     */
+    public void testEmptyInputs() throws IOException {
+        writeKeys(output, 1000, 0, 1);
+        List<String> inputs = new ArrayList<String>();
+        assertEquals(0, new FileMerger(2, null).merge(inputs, output));
+        assertEquals(0, new File(output).length());
+
+        writeKeys(output, 1000, 0, 1);
+        for (int f = 0; f < 3; f++) {
+            String name = "solutionTestData/sortedPart" + f + ".bin";
+            writeKeys(name, 0, 0, 1);
+            inputs.add(name);
+        }
+        assertEquals(0, new FileMerger(2, null).merge(inputs, output));
+        assertEquals(0, new File(output).length());
+    }
+
+    /**
+     * An input that is not sorted stops the merge
+     *
+     * @throws IOException
+     */
+    public void testUnsortedInput() throws IOException {
+        List<String> inputs = new ArrayList<String>();
+        inputs.add("solutionTestData/sortedPart0.bin");
+        inputs.add("solutionTestData/unsortedPart.bin");
+        writeKeys(inputs.get(0), 1000, 0, 1);
+        writeKeys(inputs.get(1), 1000, 1000, -1);
+        Exception thrown = null;
+        try {
+            new FileMerger(8, null).merge(inputs, output);
+        }
+        catch (IOException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+        assertTrue(thrown.getMessage().contains("unsortedPart.bin"));
+        assertTrue(thrown.getMessage().contains("at record 1"));
+
+        //The output cannot overwrite an input
+        inputs.set(1, output);
+        Exception same = null;
+        try {
+            new FileMerger(8, null).merge(inputs, output);
+        }
+        catch (IllegalArgumentException e) {
+            same = e;
+        }
+        assertNotNull(same);
+    }
+
+    /**
+     * Runs that barely overlap are copied in bulk, and the result is
+     * the same as merging them one record at a time
+     *
+     * @throws IOException
+     */
+    public void testClusteredRuns() throws IOException {
+        List<String> inputs = new ArrayList<String>();
+        int records = 3 * ByteProcessor.RECORDS_PER_BLOCK + 7;
+        for (int f = 0; f < 3; f++) {
+            String name = "solutionTestData/sortedPart" + f + ".bin";
+            writeKeys(name, records, f * (records - 10), 1);
+            inputs.add(name);
+        }
+        new FileMerger(8, null).merge(inputs, output);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(output)));
+        double prevKey = -1;
+        long prevID = -1;
+        for (int r = 0; r < 3 * records; r++) {
+            long id = in.readLong();
+            double key = in.readDouble();
+            assertTrue(key > prevKey || (key == prevKey && id > prevID));
+            prevKey = key;
+            prevID = id;
+        }
+        assertEquals(0, in.available());
+        in.close();
+
+        //A descent inside a stretch that is copied in bulk is caught
+        DataOutputStream out = new DataOutputStream(
+            new FileOutputStream(inputs.get(2), true));
+        out.writeLong(0);
+        out.writeDouble(0);
+        out.close();
+        Exception thrown = null;
+        try {
+            new FileMerger(8, null).merge(inputs, output);
+        }
+        catch (IOException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+        assertTrue(thrown.getMessage().endsWith("sortedPart2.bin is not "
+            + "sorted at record " + records));
+    }
+
+    /**
+     * Inputs only need their keys sorted, so equal keys whose IDs go
+     * down are not rejected
+     *
+     * @throws IOException
+     */
+    public void testTiedKeys() throws IOException {
+        List<String> inputs = new ArrayList<String>();
+        inputs.add("solutionTestData/sortedPart0.bin");
+        inputs.add("solutionTestData/sortedPart1.bin");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(
+            inputs.get(0)));
+        out.writeLong(5);
+        out.writeDouble(1.0);
+        out.writeLong(3);
+        out.writeDouble(1.0);
+        out.writeLong(1);
+        out.writeDouble(2.0);
+        out.close();
+        assertTrue(new ByteProcessor(inputs.get(0), null).isSorted());
+
+        //Blocks of tied keys, so whole stretches are copied and checked
+        int records = 3 * ByteProcessor.RECORDS_PER_BLOCK;
+        out = new DataOutputStream(new FileOutputStream(inputs.get(1)));
+        for (int i = 0; i < records; i++) {
+            out.writeLong(records - i);
+            out.writeDouble(i / 100);
+        }
+        out.close();
+        FileMerger merger = new FileMerger(8, null);
+        assertEquals(records + 3, merger.merge(inputs, output));
+        assertTrue(new ByteProcessor(output, null).isSorted());
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.Random;
+
+/**
+ * Times MinHeap against DaryHeap on the work the sorter gives them:
+ * replacement selection on a 4096 record heap, and merging with one
+ * record per run in an 8 record heap.
+ * Run with: java HeapBenchmark [operations]
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class HeapBenchmark {
+
+    /**
+     * @param args
+     *     Command line parameters: optionally the number of replace
+     *     operations to time for each heap
+     */
+    public static void main(String[] args) {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 4000000;
+        int[] capacities = { ByteProcessor.HEAP_RECORDS,
+            MergePlanner.DEFAULT_FAN_IN };
+        int[] arities = { 2, 4, 8 };
+        for (int capacity : capacities)
+        {
+            //Warm up every heap before the timed round
+            for (int round = 0; round < 2; round++)
+            {
+                long base = time(newMinHeap(capacity), capacity, ops);
+                if (round == 1)
+                {
+                    System.out.println("capacity " + capacity
+                        + ": MinHeap " + base / 1000000 + " ms");
+                }
+                for (int arity : arities)
+                {
+                    long nanos = time(new DaryHeap<Record>(arity, capacity),
+                        capacity, ops);
+                    if (round == 1)
+                    {
+                        System.out.printf("capacity %d: %d-ary DaryHeap "
+                            + "%d ms (%.2fx)%n", capacity, arity,
+                            nanos / 1000000, (double)base / nanos);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a MinHeap the way Externalsort does
+     *
+     * @param capacity
+     *          The heap capacity
+     * @return
+     *          The empty heap
+     */
+    private static PriorityHeap<Record> newMinHeap(int capacity)
+    {
+        return new MinHeap<Record>(new Record[capacity], 0, capacity);
+    }
+
+    /**
+     * Fill the heap, then run the replacement selection pattern on it.
+     * Keys drift upward so most replacements stay in the current run,
+     * and the rest are hidden like in ByteProcessor.
+     *
+     * @param heap
+     *          The heap to time
+     * @param capacity
+     *          The heap capacity
+     * @param ops
+     *          The number of replace operations
+     * @return
+     *          The elapsed nanoseconds
+     */
+    private static long time(PriorityHeap<Record> heap, int capacity,
+        int ops)
+    {
+        Random rng = new Random(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            heap.insert(new Record(i, rng.nextDouble()));
+        }
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < ops; i++)
+        {
+            if (heap.heapSize() == 0)
+            {
+                heap.setHeapSize(capacity);
+                heap.buildHeap();
+            }
+            Record min = heap.getMin();
+            checksum += min.getID();
+            Record rec = new Record(i, min.getKey() + rng.nextDouble());
+            if (rng.nextInt(8) == 0)
+            {
+                rec = new Record(i, min.getKey() - 1);
+            }
+            heap.replaceMin(rec);
+            if (rec.compareTo(min) < 0)
+            {
+                heap.removeMin();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42)
+        {
+            System.out.println();
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits how many sequential streams may use each disk at once. Sorts
+ * that share a disk take turns instead of interleaving their reads and
+ * writes and making the disk seek between them.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class IoScheduler {
+    private int streamsPerDisk;
+    private Map<String, Semaphore> disks;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new IoScheduler object.
+     *
+     * @param streamsPerDisk
+     *            the number of streams allowed on each disk at once
+     */
+    public IoScheduler(int streamsPerDisk) {
+        this.streamsPerDisk = streamsPerDisk;
+        this.disks = new HashMap<String, Semaphore>();
+    }
+
+    /**
+     * Wait until a stream is allowed on the disk of every given file
+     *
+     * @param files
+     *          The files that will be streamed
+     * @return
+     *          The permit to release once the streams are done
+     * @throws IOException
+     */
+    public Permit acquire(String... files) throws IOException
+    {
+        //Take the disks in name order so two jobs can never deadlock
+        TreeSet<String> names = new TreeSet<String>();
+        for (String file : files)
+        {
+            names.add(diskOf(file));
+        }
+        Permit permit = new Permit();
+        try
+        {
+            for (String name : names)
+            {
+                Semaphore disk = forDisk(name);
+                disk.acquire();
+                permit.held.put(name, disk);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            permit.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for disk");
+        }
+        return permit;
+    }
+
+    /**
+     * Get the semaphore for a disk, creating it on first use
+     *
+     * @param name
+     *          The disk name
+     * @return
+     *          The semaphore
+     */
+    private synchronized Semaphore forDisk(String name)
+    {
+        Semaphore disk = disks.get(name);
+        if (disk == null)
+        {
+            disk = new Semaphore(streamsPerDisk, true);
+            disks.put(name, disk);
+        }
+        return disk;
+    }
+
+    /**
+     * Name the disk a file lives on
+     *
+     * @param file
+     *          The file
+     * @return
+     *          The name of its file store, or its directory if the
+     *          store cannot be found
+     */
+    public static String diskOf(String file)
+    {
+        Path dir = Paths.get(file).toAbsolutePath().getParent();
+        try
+        {
+            return Files.getFileStore(dir).name();
+        }
+        catch (IOException e)
+        {
+            return dir.toString();
+        }
+    }
+
+    /**
+     * The streams a caller currently holds
+     */
+    public static class Permit {
+        /**
+         * a permit that holds nothing, for sorts without a scheduler
+         */
+        public static final Permit NONE = new Permit();
+
+        private Map<String, Semaphore> held =
+            new HashMap<String, Semaphore>();
+
+        /**
+         * Give every held stream back
+         */
+        public void release()
+        {
+            for (Semaphore disk : held.values())
+            {
+                disk.release();
+            }
+            held.clear();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates a large random file, sorts it and checks the result, to
+ * show that sorting needs the same memory however big the file is.
+ * Run with a fixed heap, for example:
+ * java -Xmx64m LargeFileCheck 50 /scratch/big.bin
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class LargeFileCheck {
+
+    /**
+     * @param args
+     *     Command line parameters: the size in gigabytes (may be a
+     *     fraction) and optionally the file to generate
+     */
+    public static void main(String[] args) {
+        double gigabytes = Double.parseDouble(args[0]);
+        String file = args.length > 1 ? args[1]
+            : "solutionTestData/largeInput.bin";
+        long blocks = (long)(gigabytes * (1L << 30)
+            / ByteFile.BYTES_PER_BLOCK);
+        ByteFile data = new ByteFile(file, blocks);
+        try
+        {
+            long start = System.nanoTime();
+            data.writeRandomRecords(new Random(blocks));
+            long generated = System.nanoTime();
+            Sorter sorter = new Sorter(file, file + ".run");
+            sorter.sort();
+            long sorted = System.nanoTime();
+            boolean ok = data.isSorted() && new File(file).length()
+                == blocks * ByteFile.BYTES_PER_BLOCK;
+            new File(file + ".run").delete();
+            Runtime rt = Runtime.getRuntime();
+            System.out.printf("%d blocks (%.2f GB): generate %.1f s, "
+                + "sort %.1f s, sorted %s, max heap %d MB%n", blocks,
+                blocks * (double)ByteFile.BYTES_PER_BLOCK / (1L << 30),
+                (generated - start) / 1e9, (sorted - generated) / 1e9, ok,
+                rt.maxMemory() >> 20);
+            System.out.println(sorter.getPlanner().report());
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
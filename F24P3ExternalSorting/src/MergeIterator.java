@@ -0,0 +1,232 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges sorted runs one record at a time, as the caller asks for
+ * them. This is the final merge of a sort without its output file:
+ * the records go straight to the consumer instead of being written
+ * out and read back. Like RunMerger, the heap holds the head of each
+ * run and each run is read through a one block buffer. The files are
+ * closed when the last record is taken or when close is called.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class MergeIterator implements Iterator<Record>, Closeable {
+    private Combiner combiner;
+    private List<Run> runs;
+    private Map<String, RandomAccessFile> open;
+    private RandomAccessFile[] files;
+    private long[] pos;
+    private long[] left;
+    private ByteBuffer[] in;
+    private MinHeap<Record> heap;
+    private Record ahead;
+    private long bytesRead;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new MergeIterator object.
+     *
+     * @param runs
+     *            the sorted runs to merge
+     * @param combiner
+     *            the combiner to fold equal records with, or null
+     * @throws IOException
+     */
+    public MergeIterator(List<Run> runs, Combiner combiner)
+        throws IOException {
+        this.combiner = combiner;
+        this.runs = runs;
+        int k = runs.size();
+        open = new HashMap<String, RandomAccessFile>();
+        files = new RandomAccessFile[k];
+        pos = new long[k];
+        left = new long[k];
+        in = new ByteBuffer[k];
+        heap = new MinHeap<Record>(new Record[Math.max(k, 1)], 0, k);
+        try
+        {
+            for (int i = 0; i < k; i++)
+            {
+                Run run = runs.get(i);
+                if (run.getStore() == null
+                    && !open.containsKey(run.getFile()))
+                {
+                    open.put(run.getFile(),
+                        new RandomAccessFile(run.getFile(), "r"));
+                }
+                files[i] = open.get(run.getFile());
+                pos[i] = run.getOffset();
+                left[i] = run.getRecords();
+                in[i] = ByteBuffer.allocate(ByteProcessor.BYTES_PER_BLOCK);
+                in[i].limit(0);
+                if (refill(i))
+                {
+                    heap.insert(new Record(in[i].getLong(),
+                        in[i].getDouble(), i));
+                }
+            }
+            ahead = pull();
+        }
+        catch (IOException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check if there are more records
+     *
+     * @return
+     *          True if next will return a record
+     */
+    @Override
+    public boolean hasNext()
+    {
+        return ahead != null;
+    }
+
+    /**
+     * Take the next record of the merged output
+     *
+     * @return
+     *          The record
+     * @throws UncheckedIOException
+     *          If a run cannot be read
+     */
+    @Override
+    public Record next()
+    {
+        if (ahead == null)
+        {
+            throw new NoSuchElementException();
+        }
+        try
+        {
+            Record rec = ahead;
+            ahead = pull();
+            //Fold the records of the same group that follow
+            while (combiner != null && ahead != null
+                && combiner.sameGroup(rec, ahead))
+            {
+                rec = combiner.combine(rec, ahead);
+                ahead = pull();
+            }
+            if (ahead == null)
+            {
+                close();
+            }
+            return rec;
+        }
+        catch (IOException e)
+        {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Take the smallest head and replace it with the next record of
+     * the same run
+     *
+     * @return
+     *          The record, or null once every run is used up
+     * @throws IOException
+     */
+    private Record pull() throws IOException
+    {
+        if (heap.heapSize() == 0)
+        {
+            return null;
+        }
+        Record min = heap.getMin();
+        int i = min.getRun();
+        if (in[i].hasRemaining() || refill(i))
+        {
+            heap.replaceMin(new Record(in[i].getLong(), in[i].getDouble(),
+                i));
+        }
+        else
+        {
+            heap.removeMin();
+        }
+        return min;
+    }
+
+    /**
+     * Read the next block of run i into its input buffer
+     *
+     * @param i
+     *          The run to refill
+     * @return
+     *          True if any records were read
+     * @throws IOException
+     */
+    private boolean refill(int i) throws IOException
+    {
+        if (left[i] == 0)
+        {
+            return false;
+        }
+        int n = (int)Math.min(left[i], ByteProcessor.RECORDS_PER_BLOCK);
+        runs.get(i).read(files[i], pos[i], in[i].array(),
+            n * Record.BYTES);
+        in[i].position(0);
+        in[i].limit(n * Record.BYTES);
+        pos[i] += n * Record.BYTES;
+        left[i] -= n;
+        bytesRead += n * Record.BYTES;
+        return true;
+    }
+
+    /**
+     * Close the run files, ending the merge
+     *
+     * @throws UncheckedIOException
+     *          If a file cannot be closed
+     */
+    @Override
+    public void close()
+    {
+        ahead = null;
+        heap.setHeapSize(0);
+        IOException failed = null;
+        for (RandomAccessFile raf : open.values())
+        {
+            try
+            {
+                raf.close();
+            }
+            catch (IOException e)
+            {
+                failed = e;
+            }
+        }
+        open.clear();
+        if (failed != null)
+        {
+            throw new UncheckedIOException(failed);
+        }
+    }
+
+    /**
+     * Get the number of bytes read so far
+     *
+     * @return
+     *          The number of bytes read
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+}
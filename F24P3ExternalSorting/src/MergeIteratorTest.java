@@ -0,0 +1,129 @@
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class MergeIteratorTest extends TestCase {
+    private String input;
+    private String runFile;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/lazyInput.bin";
+        runFile = "solutionTestData/lazyRun.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(input).delete();
+        new File(runFile).delete();
+    }
+
+    /**
+     * Make a sorter that needs a few merges
+     *
+     * @return the sorter
+     */
+    private Sorter sorter() {
+        Sorter sorter = new Sorter(input, runFile);
+        sorter.setHeapRecords(ByteProcessor.RECORDS_PER_BLOCK);
+        sorter.setFanIn(3);
+        return sorter;
+    }
+
+    /**
+     * The lazy merge returns every record in order and never touches
+     * the input
+     *
+     * @throws IOException
+     */
+    public void testLazyMerge() throws IOException {
+        new ByteFile(input, 30).writeRandomRecords(new Random(40));
+        byte[] before = Files.readAllBytes(new File(input).toPath());
+        long ids = 0;
+        for (int i = 0; i < before.length; i += Record.BYTES) {
+            ids += ByteBuffer.wrap(before, i, 8).getLong();
+        }
+
+        MergeIterator it = sorter().sortLazily();
+        Record prev = null;
+        long count = 0;
+        long sum = 0;
+        while (it.hasNext()) {
+            Record rec = it.next();
+            assertTrue(prev == null || prev.compareTo(rec) <= 0);
+            prev = rec;
+            count++;
+            sum += rec.getID();
+        }
+        assertEquals(30 * ByteProcessor.RECORDS_PER_BLOCK, count);
+        assertEquals(ids, sum);
+        assertTrue(Arrays.equals(before,
+            Files.readAllBytes(new File(input).toPath())));
+    }
+
+    /**
+     * The stream folds records like the eager sort, and an already
+     * sorted input is read as it is
+     *
+     * @throws IOException
+     */
+    public void testStream() throws IOException {
+        new ByteFile(input, 30).writeRandomRecords(new Random(40));
+        Sorter lazy = sorter();
+        lazy.setCombiner(Combine.COUNT);
+        long groups;
+        try (Stream<Record> records = lazy.stream()) {
+            groups = records.count();
+        }
+        Sorter eager = sorter();
+        eager.setCombiner(Combine.COUNT);
+        eager.sort();
+        assertEquals(new File(input).length() / Record.BYTES, groups);
+
+        //The input is sorted now, so no runs are made at all
+        Sorter sorted = sorter();
+        try (Stream<Record> records = sorted.stream()) {
+            assertEquals(groups, records.limit(groups + 1).count());
+        }
+        assertNull(sorted.getPlanner());
+    }
+
+    /**
+     * An input sorted by key but not by ID within equal keys is still
+     * merged, since the stream claims natural Record order
+     *
+     * @throws IOException
+     */
+    public void testTiedKeysStream() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(
+            input));
+        long[] ids = { 5, 3, 1 };
+        double[] keys = { 1.0, 1.0, 2.0 };
+        for (int i = 0; i < ids.length; i++) {
+            out.writeLong(ids[i]);
+            out.writeDouble(keys[i]);
+        }
+        out.close();
+        assertTrue(new ByteProcessor(input, null).isSorted());
+        assertFalse(new ByteProcessor(input, null).isSortedById());
+        try (Stream<Record> records = sorter().stream()) {
+            Object[] sorted = records.sorted().map(Record::getID).toArray();
+            assertTrue(Arrays.equals(new Object[] { 3L, 5L, 1L }, sorted));
+        }
+    }
+}
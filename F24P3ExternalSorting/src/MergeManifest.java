@@ -0,0 +1,390 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * A small file that records how far a sort has gone, so a sort that
+ * dies during the merge can pick up where it stopped. It is written
+ * after run generation and again after every merge, and it holds the
+ * run boundaries, the runs made by finished merges and a CRC32 of each
+ * so a damaged run file is never trusted.
+ *
+ * It also records the length and modification time of the input and
+ * the combiner, so a manifest left by a sort of an older file at the
+ * same path, or by a sort with other settings, is never resumed.
+ *
+ * The manifest is written to a temporary file that is synced and then
+ * renamed over the old one, after the run file itself is synced, so it
+ * never describes data that is not on disk.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class MergeManifest {
+    private File file;
+    private String input;
+    private String runFile;
+    private String settings;
+    private long inputLength;
+    private long inputModified;
+    private int fanIn;
+    private long runBytes;
+    private long runChecksum;
+    private List<Run> runs;
+    private List<Run> nodes;
+    private List<Long> nodeChecksums;
+    private boolean finalStarted;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new MergeManifest object for a finished run generation.
+     *
+     * @param input
+     *            the file being sorted
+     * @param runFile
+     *            the run file
+     * @param settings
+     *            the combiner the runs were made with
+     * @param fanIn
+     *            the fan-in of the merge plan
+     * @param runBytes
+     *            the number of bytes written by run generation
+     * @param runChecksum
+     *            the CRC32 of those bytes
+     * @param runs
+     *            the runs found in the run file
+     */
+    public MergeManifest(String input, String runFile, String settings,
+        int fanIn, long runBytes, long runChecksum, List<Run> runs) {
+        this.file = manifestFile(runFile);
+        this.input = input;
+        this.runFile = runFile;
+        this.settings = settings;
+        this.inputLength = new File(input).length();
+        this.inputModified = new File(input).lastModified();
+        this.fanIn = fanIn;
+        this.runBytes = runBytes;
+        this.runChecksum = runChecksum;
+        this.runs = new ArrayList<Run>(runs);
+        this.nodes = new ArrayList<Run>();
+        this.nodeChecksums = new ArrayList<Long>();
+    }
+
+    /**
+     * Get the manifest file that belongs to a run file
+     *
+     * @param runFile
+     *          The run file
+     * @return
+     *          The manifest file
+     */
+    public static File manifestFile(String runFile)
+    {
+        return new File(runFile + ".manifest");
+    }
+
+    /**
+     * Load the manifest left by an earlier sort of input. Once the final
+     * merge has started the input was changed by the sort itself, so
+     * only the settings and the run file checksums can be checked.
+     *
+     * @param input
+     *          The file being sorted
+     * @param runFile
+     *          The run file
+     * @param settings
+     *          The combiner the sort uses
+     * @return
+     *          The manifest, or null if there is none for this input
+     *          as it is now
+     * @throws IOException
+     */
+    public static MergeManifest load(String input, String runFile,
+        String settings) throws IOException
+    {
+        File file = manifestFile(runFile);
+        if (!file.exists())
+        {
+            return null;
+        }
+        Properties props = new Properties();
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            props.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        if (!input.equals(props.getProperty("input"))
+            || !runFile.equals(props.getProperty("runFile"))
+            || !settings.equals(props.getProperty("settings")))
+        {
+            return null;
+        }
+        boolean finalStarted = Boolean.parseBoolean(
+            props.getProperty("finalStarted"));
+        File source = new File(input);
+        //An input that changed before the final merge is another file
+        if (!finalStarted && (source.length() != Long.parseLong(
+            props.getProperty("inputLength")) || source.lastModified()
+                != Long.parseLong(props.getProperty("inputModified"))))
+        {
+            return null;
+        }
+        List<Run> runs = new ArrayList<Run>();
+        long offset = 0;
+        for (String records : props.getProperty("runs").split(","))
+        {
+            if (!records.isEmpty())
+            {
+                runs.add(new Run(runFile, offset, Long.parseLong(records)));
+                offset += Long.parseLong(records) * Record.BYTES;
+            }
+        }
+        MergeManifest manifest = new MergeManifest(input, runFile,
+            settings, Integer.parseInt(props.getProperty("fanIn")),
+            Long.parseLong(props.getProperty("runBytes")),
+            Long.parseLong(props.getProperty("runChecksum")), runs);
+        int done = Integer.parseInt(props.getProperty("merges"));
+        for (int i = 0; i < done; i++)
+        {
+            String[] node = props.getProperty("merge." + i).split(":");
+            manifest.nodes.add(new Run(runFile, Long.parseLong(node[0]),
+                Long.parseLong(node[1])));
+            manifest.nodeChecksums.add(Long.parseLong(node[2]));
+        }
+        manifest.inputLength = Long.parseLong(props.getProperty(
+            "inputLength"));
+        manifest.inputModified = Long.parseLong(props.getProperty(
+            "inputModified"));
+        manifest.finalStarted = finalStarted;
+        return manifest;
+    }
+
+    /**
+     * Sync the run file, then replace the manifest file with this one
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException
+    {
+        RandomAccessFile rf = new RandomAccessFile(runFile, "rw");
+        try
+        {
+            rf.getFD().sync();
+        }
+        finally
+        {
+            rf.close();
+        }
+        Properties props = new Properties();
+        props.setProperty("input", input);
+        props.setProperty("runFile", runFile);
+        props.setProperty("settings", settings);
+        props.setProperty("inputLength", Long.toString(inputLength));
+        props.setProperty("inputModified", Long.toString(inputModified));
+        props.setProperty("fanIn", Integer.toString(fanIn));
+        props.setProperty("runBytes", Long.toString(runBytes));
+        props.setProperty("runChecksum", Long.toString(runChecksum));
+        StringBuilder sb = new StringBuilder();
+        for (Run run : runs)
+        {
+            sb.append(run.getRecords()).append(',');
+        }
+        props.setProperty("runs", sb.toString());
+        props.setProperty("merges", Integer.toString(nodes.size()));
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            props.setProperty("merge." + i, nodes.get(i).getOffset() + ":"
+                + nodes.get(i).getRecords() + ":" + nodeChecksums.get(i));
+        }
+        props.setProperty("finalStarted", Boolean.toString(finalStarted));
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            props.store(out, "external sort checkpoint");
+            out.getFD().sync();
+        }
+        finally
+        {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Check that the run file still holds what the manifest describes
+     *
+     * @return
+     *          True if every checksum matches
+     * @throws IOException
+     */
+    public boolean verify() throws IOException
+    {
+        if (new File(runFile).length() < getScratchEnd())
+        {
+            return false;
+        }
+        if (checksum(runFile, 0, runBytes) != runChecksum)
+        {
+            return false;
+        }
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            Run node = nodes.get(i);
+            if (checksum(runFile, node.getOffset(), node.getBytes())
+                != nodeChecksums.get(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the CRC32 of part of a file
+     *
+     * @param name
+     *          The file
+     * @param offset
+     *          The first byte
+     * @param bytes
+     *          The number of bytes
+     * @return
+     *          The checksum
+     * @throws IOException
+     */
+    public static long checksum(String name, long offset, long bytes)
+        throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[ByteProcessor.BYTES_PER_BLOCK];
+        RandomAccessFile raf = new RandomAccessFile(name, "r");
+        try
+        {
+            raf.seek(offset);
+            while (bytes > 0)
+            {
+                int n = (int)Math.min(bytes, buffer.length);
+                raf.readFully(buffer, 0, n);
+                crc.update(buffer, 0, n);
+                bytes -= n;
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Record a finished merge and save the manifest
+     *
+     * @param node
+     *          The run the merge wrote
+     * @param checksum
+     *          The CRC32 of that run
+     * @throws IOException
+     */
+    public void addNode(Run node, long checksum) throws IOException
+    {
+        nodes.add(node);
+        nodeChecksums.add(checksum);
+        save();
+    }
+
+    /**
+     * Record that the final merge has started overwriting the input,
+     * after which the sort can no longer start over from the input
+     *
+     * @throws IOException
+     */
+    public void startFinal() throws IOException
+    {
+        finalStarted = true;
+        save();
+    }
+
+    /**
+     * Remove the manifest once the sort is done
+     */
+    public void delete()
+    {
+        file.delete();
+    }
+
+    /**
+     * Get the runs found after run generation
+     *
+     * @return
+     *          The runs
+     */
+    public List<Run> getRuns()
+    {
+        return runs;
+    }
+
+    /**
+     * Get the runs written by finished merges, in plan order
+     *
+     * @return
+     *          The merged runs
+     */
+    public List<Run> getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Get the fan-in the merge plan was built with
+     *
+     * @return
+     *          The fan-in
+     */
+    public int getFanIn()
+    {
+        return fanIn;
+    }
+
+    /**
+     * Check if the final merge had started writing to the input
+     *
+     * @return
+     *          True if the input may already be overwritten
+     */
+    public boolean isFinalStarted()
+    {
+        return finalStarted;
+    }
+
+    /**
+     * Get the end of the last run written before the checkpoint
+     *
+     * @return
+     *          The byte offset
+     */
+    public long getScratchEnd()
+    {
+        long end = runBytes;
+        for (Run node : nodes)
+        {
+            end = Math.max(end, node.getOffset() + node.getBytes());
+        }
+        return end;
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class MergeManifestTest extends TestCase {
+    private String input;
+    private String runFile;
+    private ByteFile file;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/checkpointInput.bin";
+        runFile = "solutionTestData/checkpointRun.bin";
+        file = new ByteFile(input, 40);
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(input).delete();
+        new File(runFile).delete();
+        MergeManifest.manifestFile(runFile).delete();
+    }
+
+    /**
+     * Add up every ID in the input
+     *
+     * @return the sum of the IDs
+     * @throws IOException
+     */
+    private long sumOfIDs() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        long sum = 0;
+        while (raf.getFilePointer() < raf.length()) {
+            sum += raf.readLong();
+            raf.readDouble();
+        }
+        raf.close();
+        return sum;
+    }
+
+    /**
+     * Generate runs and save a manifest the way Sorter does, then
+     * pretend the sort died while the final merge overwrote the input
+     *
+     * @throws IOException
+     */
+    private void crashDuringFinalMerge() throws IOException {
+        ByteProcessor processor = new ByteProcessor(input,
+            new MinHeap<Record>(new Record[ByteProcessor.HEAP_RECORDS], 0,
+                ByteProcessor.HEAP_RECORDS), runFile,
+            ByteProcessor.HEAP_RECORDS);
+        processor.readRecords();
+        List<Run> runs = MergePlanner.findRuns(runFile);
+        MergeManifest manifest = new MergeManifest(input, runFile,
+            "plain", 2, processor.getRunBytes(), processor.getRunChecksum(),
+            runs);
+        manifest.save();
+        manifest.startFinal();
+        RandomAccessFile raf = new RandomAccessFile(input, "rw");
+        raf.setLength(raf.length() / 2);
+        raf.close();
+    }
+
+    /**
+     * Test resuming a sort whose final merge was cut off
+     *
+     * @throws IOException
+     */
+    public void testResume() throws IOException {
+        file.writeRandomRecords(new Random(40));
+        long sum = sumOfIDs();
+        crashDuringFinalMerge();
+
+        MergeManifest manifest = MergeManifest.load(input, runFile,
+            "plain");
+        assertNotNull(manifest);
+        assertTrue(manifest.isFinalStarted());
+        assertTrue(manifest.verify());
+
+        Sorter sorter = new Sorter(input, runFile);
+        sorter.setCheckpoint(true);
+        assertTrue(sorter.sort());
+        assertTrue(file.isSorted());
+        assertEquals(sum, sumOfIDs());
+        assertNull(MergeManifest.load(input, runFile, "plain"));
+    }
+
+    /**
+     * Test that a damaged run file is never merged into the output
+     *
+     * @throws IOException
+     */
+    public void testDamagedRunFile() throws IOException {
+        file.writeRandomRecords(new Random(41));
+        crashDuringFinalMerge();
+        RandomAccessFile rf = new RandomAccessFile(runFile, "rw");
+        rf.seek(100);
+        rf.writeLong(12345);
+        rf.close();
+
+        Sorter sorter = new Sorter(input, runFile);
+        sorter.setCheckpoint(true);
+        try {
+            sorter.sort();
+            fail("damaged run file was trusted");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("damaged"));
+        }
+        MergeManifest.manifestFile(runFile).delete();
+    }
+
+    /**
+     * Test that intermediate merges are recorded and the manifest is
+     * removed once the sort is done
+     *
+     * @throws IOException
+     */
+    public void testCheckpointedSort() throws IOException {
+        file.writeRandomRecords(new Random(42));
+        long sum = sumOfIDs();
+        Sorter sorter = new Sorter(input, runFile);
+        sorter.setFanIn(2);
+        sorter.setCheckpoint(true);
+        assertTrue(sorter.sort());
+        assertTrue(sorter.getPlanner().getMerges() > 1);
+        assertTrue(file.isSorted());
+        assertEquals(sum, sumOfIDs());
+        assertFalse(MergeManifest.manifestFile(runFile).exists());
+    }
+
+    /**
+     * Test that a manifest is not resumed once the input is replaced at
+     * the same path or the combiner changes
+     *
+     * @throws IOException
+     */
+    public void testStaleManifest() throws IOException {
+        file.writeRandomRecords(new Random(43));
+        ByteProcessor processor = new ByteProcessor(input,
+            new MinHeap<Record>(new Record[ByteProcessor.HEAP_RECORDS], 0,
+                ByteProcessor.HEAP_RECORDS), runFile,
+            ByteProcessor.HEAP_RECORDS);
+        processor.readRecords();
+        new MergeManifest(input, runFile, "plain", 2,
+            processor.getRunBytes(), processor.getRunChecksum(),
+            MergePlanner.findRuns(runFile)).save();
+        assertNotNull(MergeManifest.load(input, runFile, "plain"));
+        assertNull(MergeManifest.load(input, runFile, "SUM"));
+
+        File replaced = new File(input);
+        long modified = replaced.lastModified();
+        file.writeRandomRecords(new Random(44));
+        replaced.setLastModified(modified + 2000);
+        assertNull(MergeManifest.load(input, runFile, "plain"));
+
+        long sum = sumOfIDs();
+        Sorter sorter = new Sorter(input, runFile);
+        sorter.setCheckpoint(true);
+        assertTrue(sorter.sort());
+        assertTrue(file.isSorted());
+        assertEquals(sum, sumOfIDs());
+    }
+}
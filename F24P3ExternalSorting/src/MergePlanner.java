@@ -0,0 +1,540 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Plans and executes the merge of a set of unequal runs.
+ * Like building a Huffman tree, the smallest runs are always merged
+ * first, so large runs are re-read as few times as possible. Empty
+ * dummy runs are added so that every merge, and the final merge in
+ * particular, uses the full fan-in. When a Combiner is given the
+ * merged runs may shrink, so the prediction is an upper bound.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class MergePlanner {
+    /**
+     * the default number of runs merged at once
+     */
+    public final static int DEFAULT_FAN_IN = 8;
+
+    private int fanIn;
+    private Combiner combiner;
+    private boolean verify;
+    private RunStore store;
+    private List<Run> runs;
+    private List<int[]> steps;
+    private long[] sizes;
+    private int dummies;
+    private long predictedBytes;
+    private long actualBytes;
+    private long recordsWritten;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new MergePlanner object.
+     *
+     * @param fanIn
+     *            the maximum number of runs merged at once
+     */
+    public MergePlanner(int fanIn) {
+        this(fanIn, null);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new MergePlanner object that combines equal records
+     * in every merge.
+     *
+     * @param fanIn
+     *            the maximum number of runs merged at once
+     * @param combiner
+     *            the combiner to fold equal records with, or null
+     */
+    public MergePlanner(int fanIn, Combiner combiner) {
+        if (fanIn < 2)
+        {
+            throw new IllegalArgumentException("fan-in must be at least 2");
+        }
+        this.fanIn = fanIn;
+        this.combiner = combiner;
+        this.runs = new ArrayList<Run>();
+        this.steps = new ArrayList<int[]>();
+        this.sizes = new long[0];
+    }
+
+    /**
+     * Check the order of every run while merging it
+     *
+     * @param check
+     *          True to fail on a run that is not sorted
+     */
+    public void setVerify(boolean check)
+    {
+        this.verify = check;
+    }
+
+    /**
+     * Write the intermediate runs to a RunStore instead of appending
+     * them to the scratch file
+     *
+     * @param runStore
+     *          The store, or null to use the scratch file
+     */
+    public void setStore(RunStore runStore)
+    {
+        this.store = runStore;
+    }
+
+    /**
+     * Find the sorted runs stored in a file by scanning it for
+     * places where the record order goes down
+     *
+     * @param file
+     *          The file to scan
+     * @return
+     *          The runs in file order
+     * @throws IOException
+     */
+    public static List<Run> findRuns(String file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            return findRuns(file, raf, null);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Find the sorted runs held by a RunStore
+     *
+     * @param store
+     *          The store to scan
+     * @return
+     *          The runs in store order
+     * @throws IOException
+     */
+    public static List<Run> findRuns(RunStore store) throws IOException
+    {
+        return findRuns(null, null, store);
+    }
+
+    /**
+     * Scan a file or a store for the places where the record order
+     * goes down
+     *
+     * @param file
+     *          The file to scan, or null
+     * @param raf
+     *          The open file, or null
+     * @param store
+     *          The store to scan instead of a file, or null
+     * @return
+     *          The runs in order
+     * @throws IOException
+     */
+    private static List<Run> findRuns(String file, RandomAccessFile raf,
+        RunStore store) throws IOException
+    {
+        List<Run> found = new ArrayList<Run>();
+        byte[] basicBuffer = new byte[ByteProcessor.BYTES_PER_BLOCK];
+        long[] ids = new long[ByteProcessor.RECORDS_PER_BLOCK];
+        long[] keys = new long[ByteProcessor.RECORDS_PER_BLOCK];
+        Run whole = store == null ? new Run(file, 0, 0)
+            : new Run(store, 0, 0);
+
+        long start = 0;
+        long rec = 0;
+        long prevKey = 0;
+        long prevID = 0;
+        int currBytes;
+        while ((currBytes = read(raf, store, rec * Record.BYTES,
+            basicBuffer)) > 0)
+        {
+            int n = BlockScan.decode(basicBuffer, currBytes, ids, keys);
+            //A smaller record than the last one of the block before
+            //starts a new run
+            if (n > 0 && rec > start && (keys[0] < prevKey
+                || (keys[0] == prevKey && ids[0] < prevID)))
+            {
+                found.add(whole.slice(start, rec - start));
+                start = rec;
+            }
+            //Then every descent inside the block starts a new run
+            int desc = BlockScan.firstDescent(keys, ids, 0, n);
+            while (desc < n)
+            {
+                found.add(whole.slice(start, rec + desc - start));
+                start = rec + desc;
+                desc = BlockScan.firstDescent(keys, ids, desc, n);
+            }
+            if (n > 0)
+            {
+                prevKey = keys[n - 1];
+                prevID = ids[n - 1];
+            }
+            rec += n;
+        }
+        if (rec > start)
+        {
+            found.add(whole.slice(start, rec - start));
+        }
+        return found;
+    }
+
+    /**
+     * Read the next block of a file or a store
+     *
+     * @param raf
+     *          The file, read from its current position, or null
+     * @param store
+     *          The store, or null
+     * @param position
+     *          The byte offset to read the store from
+     * @param buffer
+     *          The buffer to fill
+     * @return
+     *          The number of bytes read, or -1 at the end
+     * @throws IOException
+     */
+    private static int read(RandomAccessFile raf, RunStore store,
+        long position, byte[] buffer) throws IOException
+    {
+        if (store == null)
+        {
+            return raf.read(buffer);
+        }
+        int n = (int)Math.min(buffer.length, store.size() - position);
+        if (n <= 0)
+        {
+            return -1;
+        }
+        store.read(position, buffer, 0, n);
+        return n;
+    }
+
+    /**
+     * Build the merge tree for the given runs
+     *
+     * @param toMerge
+     *          The runs to merge
+     */
+    public void plan(List<Run> toMerge)
+    {
+        runs = new ArrayList<Run>(toMerge);
+        steps = new ArrayList<int[]>();
+        predictedBytes = 0;
+        int n = runs.size();
+        //Pad with empty runs so every merge is a full fanIn way merge
+        dummies = n <= 1 ? 0 : (fanIn - 1 - ((n - 1) % (fanIn - 1)))
+            % (fanIn - 1);
+        sizes = new long[n + n];
+
+        //Order nodes by size, then by id so the plan is deterministic
+        PriorityQueue<long[]> queue = new PriorityQueue<long[]>(
+            (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                : Long.compare(a[1], b[1]));
+        for (int i = 0; i < n; i++)
+        {
+            sizes[i] = runs.get(i).getRecords();
+            queue.add(new long[] { sizes[i], i });
+        }
+        for (int i = 0; i < dummies; i++)
+        {
+            queue.add(new long[] { 0, -1 });
+        }
+
+        //A single run still has to be copied to the output
+        while (queue.size() > 1 || (n == 1 && steps.isEmpty()))
+        {
+            List<Integer> inputs = new ArrayList<Integer>();
+            long total = 0;
+            for (int i = 0; i < fanIn && !queue.isEmpty(); i++)
+            {
+                long[] node = queue.poll();
+                if (node[1] >= 0)
+                {
+                    inputs.add((int)node[1]);
+                    total += node[0];
+                }
+            }
+            int[] step = new int[inputs.size()];
+            for (int i = 0; i < step.length; i++)
+            {
+                step[i] = inputs.get(i);
+            }
+            int id = n + steps.size();
+            steps.add(step);
+            sizes[id] = total;
+            //Every input is read once and the output is written once
+            predictedBytes += 2 * total * Record.BYTES;
+            if (n > 1)
+            {
+                queue.add(new long[] { total, id });
+            }
+        }
+    }
+
+    /**
+     * Execute the planned merges. Intermediate runs are appended to
+     * the scratch file and the final merge is written to dest.
+     *
+     * @param scratch
+     *          The file intermediate runs are appended to
+     * @param dest
+     *          The file the sorted output is written to
+     * @throws IOException
+     */
+    public void execute(String scratch, String dest) throws IOException
+    {
+        execute(scratch, dest, null);
+    }
+
+    /**
+     * Execute the planned merges, skipping the merges the manifest
+     * records as done and recording each merge as it completes
+     *
+     * @param scratch
+     *          The file intermediate runs are appended to
+     * @param dest
+     *          The file the sorted output is written to
+     * @param manifest
+     *          The checkpoint manifest, or null for no checkpoints
+     * @throws IOException
+     */
+    public void execute(String scratch, String dest,
+        MergeManifest manifest) throws IOException
+    {
+        RunMerger merger = new RunMerger(combiner);
+        merger.setVerify(verify);
+        recordsWritten = 0;
+        List<Run> root = mergeToRoot(scratch, manifest, merger);
+        if (root != null && manifest != null)
+        {
+            manifest.startFinal();
+        }
+        //The root of the tree goes straight to dest, and with no runs
+        //dest is still left empty rather than holding an older output
+        RandomAccessFile of = new RandomAccessFile(dest, "rw");
+        try
+        {
+            of.setLength(0);
+            if (root != null)
+            {
+                recordsWritten = merger.merge(root, of);
+            }
+        }
+        finally
+        {
+            of.close();
+        }
+        actualBytes = merger.getBytesRead() + merger.getBytesWritten();
+    }
+
+    /**
+     * Execute the planned merges, but split the final merge by key
+     * range into several output files that are written in parallel
+     *
+     * @param scratch
+     *          The file intermediate runs are appended to
+     * @param output
+     *          The partitioned output to write the final merge to
+     * @param manifest
+     *          The checkpoint manifest, or null for no checkpoints
+     * @throws IOException
+     */
+    public void execute(String scratch, PartitionedOutput output,
+        MergeManifest manifest) throws IOException
+    {
+        RunMerger merger = new RunMerger(combiner);
+        merger.setVerify(verify);
+        List<Run> root = mergeToRoot(scratch, manifest, merger);
+        //Empty input still gets every partition and the manifest
+        long finalBytes = output.write(root == null ? new ArrayList<Run>()
+            : root, combiner);
+        recordsWritten = 0;
+        for (int p = 0; p < output.getPartitions(); p++)
+        {
+            recordsWritten += output.getRecords(p);
+        }
+        actualBytes = merger.getBytesRead() + merger.getBytesWritten()
+            + finalBytes;
+    }
+
+    /**
+     * Execute every planned merge except the final one, which is left
+     * to the consumer of the returned iterator. The sorted output is
+     * never written to a file.
+     *
+     * @param scratch
+     *          The file intermediate runs are appended to
+     * @return
+     *          The records of the final merge, in order
+     * @throws IOException
+     */
+    public MergeIterator iterate(String scratch) throws IOException
+    {
+        RunMerger merger = new RunMerger(combiner);
+        merger.setVerify(verify);
+        recordsWritten = 0;
+        List<Run> root = mergeToRoot(scratch, null, merger);
+        actualBytes = merger.getBytesRead() + merger.getBytesWritten();
+        return new MergeIterator(root == null ? new ArrayList<Run>() : root,
+            combiner);
+    }
+
+    /**
+     * Execute every planned merge except the final one
+     *
+     * @param scratch
+     *          The file intermediate runs are appended to
+     * @param manifest
+     *          The checkpoint manifest, or null for no checkpoints
+     * @param merger
+     *          The merger to use
+     * @return
+     *          The runs the final merge combines, or null if there
+     *          is nothing to merge
+     * @throws IOException
+     */
+    private List<Run> mergeToRoot(String scratch, MergeManifest manifest,
+        RunMerger merger) throws IOException
+    {
+        int n = runs.size();
+        Run[] nodes = new Run[n + steps.size()];
+        for (int i = 0; i < n; i++)
+        {
+            nodes[i] = runs.get(i);
+        }
+        int first = 0;
+        RandomAccessFile sf = new RandomAccessFile(scratch, "rw");
+        try
+        {
+            if (manifest != null)
+            {
+                //Reuse the merges that finished before a restart
+                List<Run> done = manifest.getNodes();
+                for (int s = 0; s < done.size(); s++)
+                {
+                    nodes[n + s] = done.get(s);
+                }
+                first = done.size();
+                //Drop whatever a merge that never finished wrote
+                sf.setLength(manifest.getScratchEnd());
+            }
+            for (int s = first; s < steps.size(); s++)
+            {
+                List<Run> inputs = new ArrayList<Run>();
+                for (int id : steps.get(s))
+                {
+                    inputs.add(nodes[id]);
+                }
+                if (s == steps.size() - 1)
+                {
+                    return inputs;
+                }
+                if (store != null)
+                {
+                    //Consumed input segments make room for the output
+                    long start = store.size();
+                    long written = merger.merge(inputs, store::append);
+                    nodes[n + s] = new Run(store, start, written);
+                }
+                else
+                {
+                    long start = sf.length();
+                    sf.seek(start);
+                    long written = merger.merge(inputs, sf);
+                    nodes[n + s] = new Run(scratch, start, written);
+                }
+                if (manifest != null)
+                {
+                    manifest.addNode(nodes[n + s],
+                        merger.getLastChecksum());
+                }
+            }
+        }
+        finally
+        {
+            sf.close();
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of merges in the plan
+     *
+     * @return
+     *          The number of merges
+     */
+    public int getMerges()
+    {
+        return steps.size();
+    }
+
+    /**
+     * Get the number of empty runs added to fill the merges
+     *
+     * @return
+     *          The number of dummy runs
+     */
+    public int getDummies()
+    {
+        return dummies;
+    }
+
+    /**
+     * Get the number of bytes the plan is expected to read and write
+     *
+     * @return
+     *          The predicted bytes moved
+     */
+    public long getPredictedBytes()
+    {
+        return predictedBytes;
+    }
+
+    /**
+     * Get the number of bytes read and written by the last execute
+     *
+     * @return
+     *          The actual bytes moved
+     */
+    public long getActualBytes()
+    {
+        return actualBytes;
+    }
+
+    /**
+     * Get the number of records the last execute wrote to its output,
+     * after combining. The final merge of iterate writes nothing.
+     *
+     * @return
+     *          The records written
+     */
+    public long getRecordsWritten()
+    {
+        return recordsWritten;
+    }
+
+    /**
+     * Describe the plan and how it went
+     *
+     * @return
+     *          The report
+     */
+    public String report()
+    {
+        return "Merge plan: " + runs.size() + " runs, fan-in " + fanIn
+            + ", " + dummies + " dummy runs, " + steps.size() + " merges"
+            + "\nPredicted bytes moved: " + predictedBytes
+            + "\nActual bytes moved: " + actualBytes;
+    }
+}
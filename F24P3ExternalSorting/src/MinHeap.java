@@ -11,7 +11,7 @@
  * @author CS Staff
  * @version Fall 2024
  */
-class MinHeap<T extends Comparable<T>> {
+class MinHeap<T extends Comparable<T>> implements PriorityHeap<T> {
     private T[] heap; // Pointer to the heap array
     private int capacity; // Maximum size of the heap
     private int n; // Number of active things currently in heap
@@ -231,6 +231,22 @@ class MinHeap<T extends Comparable<T>> {
     }
 
 
+    /**
+     * Replace the minimum value with newVal and sift it down
+     * 
+     * @param newVal
+     *            the new value
+     * @return the old minimum value
+     */
+    public T replaceMin(T newVal) {
+        assert n > 0 : "Heap is empty; cannot replace";
+        T min = heap[0];
+        heap[0] = newVal;
+        siftDown(0);
+        return min;
+    }
+
+
     /**
      * The value at pos has been changed, restore the heap property
      * 
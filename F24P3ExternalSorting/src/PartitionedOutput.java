@@ -0,0 +1,287 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the final merge into several files split by key range instead
+ * of one file. Partition p holds the keys from splitter p - 1 up to,
+ * but not including, splitter p, so equal keys are never split.
+ *
+ * Every input run is sorted, so a binary search finds where each
+ * splitter falls inside each run. Each partition is then merged from
+ * its own slices of the runs, on its own thread, and a manifest lists
+ * the bounds and record count of every partition.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class PartitionedOutput {
+    private String prefix;
+    private double[] splitters;
+    private int threads;
+    private long[] records;
+    private double[] firstKeys;
+    private double[] lastKeys;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new PartitionedOutput object.
+     *
+     * @param prefix
+     *            the start of every partition file name
+     * @param splitters
+     *            the sorted key range boundaries
+     */
+    public PartitionedOutput(String prefix, double[] splitters) {
+        for (int i = 1; i < splitters.length; i++)
+        {
+            if (Double.compare(splitters[i - 1], splitters[i]) > 0)
+            {
+                throw new IllegalArgumentException("splitters must be "
+                    + "sorted");
+            }
+        }
+        this.prefix = prefix;
+        this.splitters = splitters.clone();
+        this.threads = Math.min(splitters.length + 1,
+            Runtime.getRuntime().availableProcessors());
+        this.records = new long[splitters.length + 1];
+        this.firstKeys = new double[splitters.length + 1];
+        this.lastKeys = new double[splitters.length + 1];
+    }
+
+    /**
+     * Get the number of partitions
+     *
+     * @return
+     *          The number of partitions
+     */
+    public int getPartitions()
+    {
+        return splitters.length + 1;
+    }
+
+    /**
+     * Get the file of a partition
+     *
+     * @param p
+     *          The partition
+     * @return
+     *          The file name
+     */
+    public String partitionFile(int p)
+    {
+        return prefix + p + ".bin";
+    }
+
+    /**
+     * Get the manifest file describing every partition
+     *
+     * @return
+     *          The file name
+     */
+    public String manifestFile()
+    {
+        return prefix + ".manifest";
+    }
+
+    /**
+     * Get the number of records written to a partition
+     *
+     * @param p
+     *          The partition
+     * @return
+     *          The number of records
+     */
+    public long getRecords(int p)
+    {
+        return records[p];
+    }
+
+    /**
+     * Merge the runs into the partition files and write the manifest
+     *
+     * @param runs
+     *          The sorted runs of the final merge
+     * @param combiner
+     *          The combiner to fold equal records with, or null
+     * @return
+     *          The number of bytes read and written
+     * @throws IOException
+     */
+    public long write(List<Run> runs, Combiner combiner) throws IOException
+    {
+        int parts = getPartitions();
+        //Find where each splitter falls inside each run
+        long[][] bounds = new long[runs.size()][parts + 1];
+        for (int r = 0; r < runs.size(); r++)
+        {
+            Run run = runs.get(r);
+            RandomAccessFile raf = run.getStore() != null ? null
+                : new RandomAccessFile(run.getFile(), "r");
+            try
+            {
+                for (int p = 1; p < parts; p++)
+                {
+                    bounds[r][p] = lowerBound(raf, run, splitters[p - 1]);
+                }
+            }
+            finally
+            {
+                if (raf != null)
+                {
+                    raf.close();
+                }
+            }
+            bounds[r][parts] = run.getRecords();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        for (int p = 0; p < parts; p++)
+        {
+            List<Run> slices = new ArrayList<Run>();
+            for (int r = 0; r < runs.size(); r++)
+            {
+                Run run = runs.get(r);
+                long count = bounds[r][p + 1] - bounds[r][p];
+                if (count > 0)
+                {
+                    slices.add(run.slice(bounds[r][p], count));
+                }
+            }
+            int part = p;
+            results.add(pool.submit(() -> writePartition(part, slices,
+                combiner)));
+        }
+        pool.shutdown();
+        long moved = 0;
+        try
+        {
+            for (Future<Long> result : results)
+            {
+                moved += result.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted writing partitions", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("partition failed", e.getCause());
+        }
+        writeManifest();
+        return moved;
+    }
+
+    /**
+     * Merge one partition's slices into its file
+     *
+     * @param p
+     *          The partition
+     * @param slices
+     *          The parts of every run in this key range
+     * @param combiner
+     *          The combiner, or null
+     * @return
+     *          The number of bytes read and written
+     * @throws IOException
+     */
+    private long writePartition(int p, List<Run> slices, Combiner combiner)
+        throws IOException
+    {
+        RunMerger merger = new RunMerger(combiner);
+        RandomAccessFile of = new RandomAccessFile(partitionFile(p), "rw");
+        try
+        {
+            of.setLength(0);
+            records[p] = merger.merge(slices, of);
+            if (records[p] > 0)
+            {
+                of.seek(Long.BYTES);
+                firstKeys[p] = of.readDouble();
+                of.seek(of.length() - Double.BYTES);
+                lastKeys[p] = of.readDouble();
+            }
+        }
+        finally
+        {
+            of.close();
+        }
+        return merger.getBytesRead() + merger.getBytesWritten();
+    }
+
+    /**
+     * Write one line per partition: the file, its key range, its
+     * record count and its smallest and largest keys
+     *
+     * @throws IOException
+     */
+    private void writeManifest() throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileOutputStream(
+            manifestFile()));
+        out.println("file\tlower\tupper\trecords\tfirstKey\tlastKey");
+        for (int p = 0; p < getPartitions(); p++)
+        {
+            double lower = p == 0 ? Double.NEGATIVE_INFINITY
+                : splitters[p - 1];
+            double upper = p == splitters.length ? Double.POSITIVE_INFINITY
+                : splitters[p];
+            out.println(partitionFile(p) + "\t" + lower + "\t" + upper
+                + "\t" + records[p] + "\t"
+                + (records[p] > 0 ? firstKeys[p] + "\t" + lastKeys[p]
+                    : "-\t-"));
+        }
+        out.close();
+    }
+
+    /**
+     * Find the first record of a sorted run whose key is at least key
+     *
+     * @param raf
+     *          The open file holding the run, or null if the run is in
+     *          a RunStore
+     * @param run
+     *          The run
+     * @param key
+     *          The key to look for
+     * @return
+     *          The index of that record within the run
+     * @throws IOException
+     */
+    public static long lowerBound(RandomAccessFile raf, Run run, double key)
+        throws IOException
+    {
+        long low = 0;
+        long high = run.getRecords();
+        byte[] rec = new byte[Record.BYTES];
+        while (low < high)
+        {
+            long mid = (low + high) >>> 1;
+            run.peek(raf, run.getOffset() + mid * Record.BYTES, rec,
+                Record.BYTES);
+            if (Double.compare(ByteBuffer.wrap(rec).getDouble(Long.BYTES),
+                key) < 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
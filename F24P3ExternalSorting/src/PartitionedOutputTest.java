@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class PartitionedOutputTest extends TestCase {
+    private String input;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/partitionInput.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(input).delete();
+        new File("solutionTestData/partRun.bin").delete();
+        for (int p = 0; p < 4; p++) {
+            new File(input + ".part" + p + ".bin").delete();
+        }
+        new File(input + ".part.manifest").delete();
+    }
+
+    /**
+     * Check that a partition is sorted and inside its key range
+     *
+     * @param file
+     *            the partition file
+     * @param lower
+     *            the smallest allowed key
+     * @param upper
+     *            the key every record must be below
+     * @return the number of records
+     * @throws IOException
+     */
+    private long checkPartition(String file, double lower, double upper)
+        throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long n = raf.length() / Record.BYTES;
+        double prev = lower;
+        for (long i = 0; i < n; i++) {
+            raf.readLong();
+            double key = raf.readDouble();
+            assertTrue(key >= prev);
+            assertTrue(key < upper);
+            prev = key;
+        }
+        raf.close();
+        return n;
+    }
+
+    /**
+     * Test partitioning with explicit splitters
+     *
+     * @throws IOException
+     */
+    public void testExplicitSplitters() throws IOException {
+        new ByteFile(input, 20).writeRandomRecords(new Random(3));
+        Sorter sorter = new Sorter(input, "solutionTestData/partRun.bin");
+        sorter.setPartitions(4, new double[] { 0.25, 0.5, 0.75 });
+        assertTrue(sorter.sort());
+        PartitionedOutput output = sorter.getOutput();
+        double[] bounds = { 0, 0.25, 0.5, 0.75, 1 };
+        long total = 0;
+        for (int p = 0; p < 4; p++) {
+            long n = checkPartition(output.partitionFile(p), bounds[p],
+                bounds[p + 1]);
+            assertEquals(n, output.getRecords(p));
+            assertTrue(n > 0);
+            total += n;
+        }
+        assertEquals(20 * ByteFile.RECORDS_PER_BLOCK, total);
+        List<String> lines = Files.readAllLines(
+            new File(output.manifestFile()).toPath());
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(1).startsWith(output.partitionFile(0)
+            + "\t-Infinity\t0.25\t" + output.getRecords(0)));
+    }
+
+    /**
+     * Test that an empty input still writes every partition, empty,
+     * and a manifest with zero counts
+     *
+     * @throws IOException
+     */
+    public void testEmptyInput() throws IOException {
+        new ByteFile(input, 2).writeRandomRecords(new Random(5));
+        Sorter sorter = new Sorter(input, "solutionTestData/partRun.bin");
+        sorter.setPartitions(4, new double[] { 0.25, 0.5, 0.75 });
+        assertTrue(sorter.sort());
+        RandomAccessFile raf = new RandomAccessFile(input, "rw");
+        raf.setLength(0);
+        raf.close();
+        assertTrue(sorter.sort());
+        PartitionedOutput output = sorter.getOutput();
+        List<String> lines = Files.readAllLines(
+            new File(output.manifestFile()).toPath());
+        assertEquals(5, lines.size());
+        for (int p = 0; p < 4; p++) {
+            assertEquals(0, new File(output.partitionFile(p)).length());
+            assertEquals(0, output.getRecords(p));
+            assertTrue(lines.get(p + 1).endsWith("\t0\t-\t-"));
+        }
+    }
+
+    /**
+     * Test partitioning with sampled splitters
+     *
+     * @throws IOException
+     */
+    public void testSampledSplitters() throws IOException {
+        new ByteFile(input, 12).writeRandomRecords(new Random(4));
+        String[] args = { input, "-partitions", "3" };
+        Externalsort.main(args);
+        long total = 0;
+        for (int p = 0; p < 3; p++) {
+            total += checkPartition(input + ".part" + p + ".bin",
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        assertEquals(12 * ByteFile.RECORDS_PER_BLOCK, total);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * The heap operations the sorter needs, so the replacement selection
+ * and merge code can run on either heap implementation
+ *
+ * @param <T>
+ *            data type in this heap
+ * @author kuzoto
+ * @version October 2024
+ */
+public interface PriorityHeap<T extends Comparable<T>> {
+
+    /**
+     * Insert val into heap
+     *
+     * @param val
+     *          The value to insert
+     */
+    public void insert(T val);
+
+    /**
+     * Remove and return minimum value. The removed value is stored
+     * just past the end of the heap, which is how replacement
+     * selection hides records for the next run.
+     *
+     * @return
+     *          The minimum value
+     */
+    public T removeMin();
+
+    /**
+     * Replace the minimum value with val and restore the heap property
+     *
+     * @param val
+     *          The new value
+     * @return
+     *          The old minimum value
+     */
+    public T replaceMin(T val);
+
+    /**
+     * Get the min object in the heap
+     *
+     * @return
+     *          The min object in the heap
+     */
+    public T getMin();
+
+    /**
+     * Return current size of the heap
+     *
+     * @return
+     *          The current heap size
+     */
+    public int heapSize();
+
+    /**
+     * Forcefully changes the heap size. May need a buildHeap() afterwards
+     *
+     * @param newSize
+     *          The new size
+     */
+    public void setHeapSize(int newSize);
+
+    /**
+     * Organize contents of array to satisfy the heap structure
+     */
+    public void buildHeap();
+}
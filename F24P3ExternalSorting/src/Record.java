@@ -86,13 +86,19 @@ public class Record
 
     // ----------------------------------------------------------
     /**
-     * Compare two records based on their keys
+     * Compare two records based on their keys. Equal keys are ordered
+     * by ID so identical records always end up next to each other.
      *
      * @return int
      */
     @Override
     public int compareTo(Record toBeCompared)
     {
-        return Double.compare(this.key, toBeCompared.key);
+        int cmp = Double.compare(this.key, toBeCompared.key);
+        if (cmp == 0)
+        {
+            cmp = Long.compare(this.recID, toBeCompared.recID);
+        }
+        return cmp;
     }
 }
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Writes records to a file one block at a time. When a Combiner is
+ * given, records of the same group that are written one after another
+ * are folded into one before they reach the file. Full blocks go
+ * either straight to a file or other sink, or into a BlockRing for a
+ * writer thread.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class RecordWriter {
+    private BlockRing.Sink out;
+    private BlockRing ring;
+    private BlockRing.Block block;
+    private Combiner combiner;
+    private byte[] outBuffer;
+    private ByteBuffer ob;
+    private Record pending;
+    private long records;
+    private long bytesWritten;
+    private CRC32 checksum;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RecordWriter object.
+     *
+     * @param out
+     *            the file to write to, at its current position
+     * @param combiner
+     *            the combiner to fold records with, or null
+     */
+    public RecordWriter(RandomAccessFile out, Combiner combiner) {
+        this(out::write, combiner);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RecordWriter object that writes its blocks to a
+     * sink, such as RunStore::append.
+     *
+     * @param out
+     *            where the blocks go
+     * @param combiner
+     *            the combiner to fold records with, or null
+     */
+    public RecordWriter(BlockRing.Sink out, Combiner combiner) {
+        this.out = out;
+        this.combiner = combiner;
+        this.outBuffer = new byte[ByteProcessor.BYTES_PER_BLOCK];
+        this.ob = ByteBuffer.wrap(outBuffer);
+        this.checksum = new CRC32();
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RecordWriter object that hands its full blocks to
+     * a writer stage instead of writing them itself.
+     *
+     * @param ring
+     *            the ring the writer stage drains
+     * @param combiner
+     *            the combiner to fold records with, or null
+     * @throws IOException
+     *            if cancelled while waiting for a free block
+     */
+    public RecordWriter(BlockRing ring, Combiner combiner)
+        throws IOException {
+        this.ring = ring;
+        this.combiner = combiner;
+        this.block = ring.takeFree();
+        this.outBuffer = block.getData();
+        this.ob = ByteBuffer.wrap(outBuffer);
+        this.checksum = new CRC32();
+    }
+
+    /**
+     * Add a record to the output
+     *
+     * @param rec
+     *          The record to write
+     * @throws IOException
+     */
+    public void put(Record rec) throws IOException
+    {
+        if (combiner == null)
+        {
+            write(rec);
+        }
+        else if (pending != null && combiner.sameGroup(pending, rec))
+        {
+            pending = combiner.combine(pending, rec);
+        }
+        else
+        {
+            if (pending != null)
+            {
+                write(pending);
+            }
+            pending = rec;
+        }
+    }
+
+    /**
+     * Add a stretch of encoded records to the output. Without a
+     * combiner the bytes are copied as they are.
+     *
+     * @param src
+     *          The buffer holding the records
+     * @param offset
+     *          The first byte of the first record
+     * @param length
+     *          The number of bytes, a multiple of Record.BYTES
+     * @throws IOException
+     */
+    public void putBytes(byte[] src, int offset, int length)
+        throws IOException
+    {
+        if (combiner != null)
+        {
+            ByteBuffer bb = ByteBuffer.wrap(src, offset, length);
+            while (bb.hasRemaining())
+            {
+                put(new Record(bb.getLong(), bb.getDouble()));
+            }
+            return;
+        }
+        while (length > 0)
+        {
+            if (!ob.hasRemaining())
+            {
+                writeBlock();
+            }
+            int n = Math.min(length, ob.remaining());
+            ob.put(src, offset, n);
+            offset += n;
+            length -= n;
+            records += n / Record.BYTES;
+        }
+    }
+
+    /**
+     * Write every record still held by this writer to the file
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException
+    {
+        if (pending != null)
+        {
+            write(pending);
+            pending = null;
+        }
+        if (ob.position() > 0)
+        {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Put a record in the outBuffer, writing the block when it is full
+     *
+     * @param rec
+     *          The record to write
+     * @throws IOException
+     */
+    private void write(Record rec) throws IOException
+    {
+        if (!ob.hasRemaining())
+        {
+            writeBlock();
+        }
+        ob.putLong(rec.getID());
+        ob.putDouble(rec.getKey());
+        records++;
+    }
+
+    /**
+     * Write the used part of the outBuffer to the file, or pass it on
+     * to the writer stage and take a free block in its place
+     *
+     * @throws IOException
+     */
+    private void writeBlock() throws IOException
+    {
+        int used = ob.position();
+        checksum.update(outBuffer, 0, used);
+        bytesWritten += used;
+        if (ring == null)
+        {
+            out.write(outBuffer, 0, used);
+            ob.clear();
+            return;
+        }
+        block.setLength(used);
+        ring.put(block);
+        block = ring.takeFree();
+        outBuffer = block.getData();
+        ob = ByteBuffer.wrap(outBuffer);
+    }
+
+    /**
+     * Get the number of records written, after combining
+     *
+     * @return
+     *          The number of records
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    /**
+     * Get the number of bytes flushed to the file
+     *
+     * @return
+     *          The number of bytes
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * Get the CRC32 of every byte flushed to the file
+     *
+     * @return
+     *          The checksum
+     */
+    public long getChecksum()
+    {
+        return checksum.getValue();
+    }
+}
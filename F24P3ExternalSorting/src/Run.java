@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Describes one sorted run of records stored somewhere inside a file,
+ * or inside a RunStore that may keep it in memory
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class Run {
+    private String file;
+    private long offset;
+    private long records;
+    private RunStore store;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new Run object.
+     *
+     * @param file
+     *            the file holding the run
+     * @param offset
+     *            the byte offset of the first record of the run
+     * @param records
+     *            the number of records in the run
+     */
+    public Run(String file, long offset, long records) {
+        this.file = file;
+        this.offset = offset;
+        this.records = records;
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new Run object for a run held by a RunStore.
+     *
+     * @param store
+     *            the store holding the run
+     * @param offset
+     *            the byte offset of the first record inside the store
+     * @param records
+     *            the number of records in the run
+     */
+    public Run(RunStore store, long offset, long records) {
+        this("run store", offset, records);
+        this.store = store;
+    }
+
+    /**
+     * Get part of this run
+     *
+     * @param first
+     *          The first record of the part
+     * @param count
+     *          The number of records in the part
+     * @return
+     *          The part, held wherever this run is
+     */
+    public Run slice(long first, long count)
+    {
+        Run part = new Run(file, offset + first * Record.BYTES, count);
+        part.store = store;
+        return part;
+    }
+
+    /**
+     * Read bytes of this run for a merge. Bytes of a run in a store
+     * are consumed, so each may only be read this way once.
+     *
+     * @param raf
+     *          The open file holding the run, or null if it is in a
+     *          store
+     * @param position
+     *          The byte offset to read from
+     * @param dst
+     *          The buffer to fill
+     * @param length
+     *          The number of bytes to read
+     * @throws IOException
+     */
+    public void read(RandomAccessFile raf, long position, byte[] dst,
+        int length) throws IOException
+    {
+        if (store != null)
+        {
+            store.consume(position, dst, 0, length);
+            return;
+        }
+        raf.seek(position);
+        raf.readFully(dst, 0, length);
+    }
+
+    /**
+     * Read bytes of this run without consuming them
+     *
+     * @param raf
+     *          The open file holding the run, or null if it is in a
+     *          store
+     * @param position
+     *          The byte offset to read from
+     * @param dst
+     *          The buffer to fill
+     * @param length
+     *          The number of bytes to read
+     * @throws IOException
+     */
+    public void peek(RandomAccessFile raf, long position, byte[] dst,
+        int length) throws IOException
+    {
+        if (store != null)
+        {
+            store.read(position, dst, 0, length);
+            return;
+        }
+        raf.seek(position);
+        raf.readFully(dst, 0, length);
+    }
+
+    /**
+     * Get the store holding the run
+     *
+     * @return
+     *          The store, or null if the run is in a file
+     */
+    public RunStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Get the file holding the run
+     *
+     * @return
+     *          The file name
+     */
+    public String getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Get the byte offset of the first record of the run
+     *
+     * @return
+     *          The byte offset
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Get the number of records in the run
+     *
+     * @return
+     *          The number of records
+     */
+    public long getRecords()
+    {
+        return records;
+    }
+
+    /**
+     * Get the number of bytes in the run
+     *
+     * @return
+     *          The number of bytes
+     */
+    public long getBytes()
+    {
+        return records * Record.BYTES;
+    }
+}
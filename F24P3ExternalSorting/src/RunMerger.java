@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges any number of sorted runs into one sorted output.
+ * The heap only ever holds the current head record of each run,
+ * and each run is read through its own one block buffer. An optional
+ * Combiner folds equal records as they leave the heap.
+ *
+ * When the runs barely overlap, one run wins many times in a row.
+ * After MIN_GALLOP wins the merge stops using the heap and copies
+ * every record of that run below the other heads in bulk, so merging
+ * clustered or nearly sorted runs is close to a plain copy.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class RunMerger {
+    /**
+     * the number of times in a row one run must win before the merge
+     * looks for a whole stretch of it to copy
+     */
+    public final static int MIN_GALLOP = 8;
+
+    private Combiner combiner;
+    private boolean verify;
+    private long bytesRead;
+    private long bytesWritten;
+    private long lastChecksum;
+    private List<Run> runs;
+    private RandomAccessFile[] files;
+    private long[] pos;
+    private long[] left;
+    private ByteBuffer[] in;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RunMerger object that keeps every record.
+     */
+    public RunMerger() {
+        this(null);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RunMerger object.
+     *
+     * @param combiner
+     *            the combiner to fold equal records with, or null
+     */
+    public RunMerger(Combiner combiner) {
+        this.combiner = combiner;
+    }
+
+    /**
+     * Check each run's order while it is merged, so inputs that only
+     * claim to be sorted are caught without a separate pass
+     *
+     * @param check
+     *          True to fail on a run that goes down
+     */
+    public void setVerify(boolean check)
+    {
+        this.verify = check;
+    }
+
+    /**
+     * Merge the given runs and write the result at the current
+     * position of out
+     *
+     * @param toMerge
+     *          The sorted runs to merge
+     * @param out
+     *          The file to write the merged records to
+     * @return
+     *          The number of records written, after combining
+     * @throws IOException
+     *          Also if verifying and a run is not sorted
+     */
+    public long merge(List<Run> toMerge, RandomAccessFile out)
+        throws IOException
+    {
+        return merge(toMerge, out::write);
+    }
+
+    /**
+     * Merge the given runs and hand the result to a sink
+     *
+     * @param toMerge
+     *          The sorted runs to merge
+     * @param out
+     *          Where the merged blocks go, such as RunStore::append
+     * @return
+     *          The number of records written, after combining
+     * @throws IOException
+     *          Also if verifying and a run is not sorted
+     */
+    public long merge(List<Run> toMerge, BlockRing.Sink out)
+        throws IOException
+    {
+        runs = toMerge;
+        int k = runs.size();
+        files = new RandomAccessFile[k];
+        Map<String, RandomAccessFile> open =
+            new HashMap<String, RandomAccessFile>();
+        pos = new long[k];
+        left = new long[k];
+        in = new ByteBuffer[k];
+        MinHeap<Record> heap = new MinHeap<Record>(new Record[k], 0, k);
+
+        RecordWriter writer = new RecordWriter(out, combiner);
+        try
+        {
+            //Open each run and put its first record in the heap
+            for (int i = 0; i < k; i++)
+            {
+                Run run = runs.get(i);
+                if (run.getStore() == null
+                    && !open.containsKey(run.getFile()))
+                {
+                    open.put(run.getFile(),
+                        new RandomAccessFile(run.getFile(), "r"));
+                }
+                files[i] = open.get(run.getFile());
+                pos[i] = run.getOffset();
+                left[i] = run.getRecords();
+                in[i] = ByteBuffer.allocate(ByteProcessor.BYTES_PER_BLOCK);
+                in[i].limit(0);
+                if (refill(i))
+                {
+                    heap.insert(new Record(in[i].getLong(),
+                        in[i].getDouble(), i));
+                }
+            }
+
+            //Continue until every run is exhausted
+            int last = -1;
+            int wins = 0;
+            while (heap.heapSize() > 0)
+            {
+                Record min = heap.getMin();
+                writer.put(min);
+                int i = min.getRun();
+                wins = (i == last) ? wins + 1 : 1;
+                last = i;
+                if (wins >= MIN_GALLOP)
+                {
+                    //Run i keeps winning, so copy everything it has
+                    //below the other heads without using the heap
+                    heap.removeMin();
+                    Record bound = heap.heapSize() > 0 ? heap.getMin()
+                        : null;
+                    Record next = bypass(i, min, bound, writer);
+                    if (next != null)
+                    {
+                        heap.insert(next);
+                    }
+                    wins = 0;
+                }
+                //Replace the min with the next record from the same run
+                else if (in[i].hasRemaining() || refill(i))
+                {
+                    heap.replaceMin(next(i, min));
+                }
+                else
+                {
+                    heap.removeMin();
+                }
+            }
+            //Write what is left in the writer
+            writer.flush();
+            bytesWritten += writer.getBytesWritten();
+            lastChecksum = writer.getChecksum();
+        }
+        finally
+        {
+            for (RandomAccessFile raf : open.values())
+            {
+                raf.close();
+            }
+        }
+        return writer.getRecords();
+    }
+
+    /**
+     * Copy the records of run i that are smaller than bound straight to
+     * the writer. A buffer whose last record is below bound is copied
+     * whole, otherwise the cut is found by galloping.
+     *
+     * @param i
+     *          The run to copy from
+     * @param prev
+     *          The last record taken from run i
+     * @param bound
+     *          The smallest head of the other runs, or null if there
+     *          are no other runs
+     * @param writer
+     *          The writer to copy to
+     * @return
+     *          The first record of run i that is not below bound, or
+     *          null if run i is used up
+     * @throws IOException
+     */
+    private Record bypass(int i, Record prev, Record bound,
+        RecordWriter writer) throws IOException
+    {
+        while (in[i].hasRemaining() || refill(i))
+        {
+            ByteBuffer b = in[i];
+            int first = b.position() / Record.BYTES;
+            int end = b.limit() / Record.BYTES;
+            int cut = bound == null ? end : gallop(b, first, end, bound);
+            if (cut > first)
+            {
+                if (verify)
+                {
+                    checkOrder(i, prev, first, cut);
+                    prev = read(b, cut - 1, i);
+                }
+                writer.putBytes(b.array(), b.position(),
+                    (cut - first) * Record.BYTES);
+                b.position(cut * Record.BYTES);
+            }
+            if (cut < end)
+            {
+                return next(i, prev);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the first record in b that is not below bound. The last
+     * record is checked first so a whole block is copied at once, then
+     * the step doubles until it passes bound and a binary search
+     * finishes the job.
+     *
+     * @param b
+     *          The input buffer
+     * @param first
+     *          The first record to look at
+     * @param end
+     *          One past the last record to look at
+     * @param bound
+     *          The record to stop at
+     * @return
+     *          The index of the first record not below bound
+     */
+    private static int gallop(ByteBuffer b, int first, int end, Record bound)
+    {
+        if (below(b, end - 1, bound))
+        {
+            return end;
+        }
+        int lo = first;
+        int step = 1;
+        //The record at end - 1 is known not to be below bound
+        int hi = end - 1;
+        while (lo + step < hi && below(b, lo + step, bound))
+        {
+            lo += step;
+            step <<= 1;
+        }
+        hi = Math.min(lo + step, hi);
+        if (!below(b, lo, bound))
+        {
+            return lo;
+        }
+        //Now the record at lo is below bound and the one at hi is not
+        while (hi - lo > 1)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (below(b, mid, bound))
+            {
+                lo = mid;
+            }
+            else
+            {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * Check if a record in a buffer is smaller than bound
+     *
+     * @param b
+     *          The buffer
+     * @param rec
+     *          The index of the record in the buffer
+     * @param bound
+     *          The record to compare with
+     * @return
+     *          True if the record is smaller
+     */
+    private static boolean below(ByteBuffer b, int rec, Record bound)
+    {
+        int cmp = Double.compare(b.getDouble(rec * Record.BYTES + 8),
+            bound.getKey());
+        if (cmp == 0)
+        {
+            cmp = Long.compare(b.getLong(rec * Record.BYTES),
+                bound.getID());
+        }
+        return cmp < 0;
+    }
+
+    /**
+     * Read a record from a buffer without moving its position
+     *
+     * @param b
+     *          The buffer
+     * @param rec
+     *          The index of the record in the buffer
+     * @param run
+     *          The run the record comes from
+     * @return
+     *          The record
+     */
+    private static Record read(ByteBuffer b, int rec, int run)
+    {
+        return new Record(b.getLong(rec * Record.BYTES),
+            b.getDouble(rec * Record.BYTES + 8), run);
+    }
+
+    /**
+     * Take the next record of run i, checking that its key is not
+     * smaller than the one before it when verifying. Runs are only
+     * required to be sorted by key, as ByteProcessor.isSorted checks,
+     * so equal keys may come in any ID order.
+     *
+     * @param i
+     *          The run, with at least one record in its buffer
+     * @param prev
+     *          The last record taken from run i
+     * @return
+     *          The next record
+     * @throws IOException
+     *          If verifying and the run goes down
+     */
+    private Record next(int i, Record prev) throws IOException
+    {
+        Record rec = new Record(in[i].getLong(), in[i].getDouble(), i);
+        if (verify && Double.compare(rec.getKey(), prev.getKey()) < 0)
+        {
+            throw notSorted(i, in[i].position() / Record.BYTES - 1);
+        }
+        return rec;
+    }
+
+    /**
+     * Check that the keys in a range of run i's buffer are sorted and
+     * start at or after the key of prev
+     *
+     * @param i
+     *          The run
+     * @param prev
+     *          The last record taken from run i
+     * @param first
+     *          The first record of the range
+     * @param end
+     *          One past the last record of the range
+     * @throws IOException
+     *          If the range goes down
+     */
+    private void checkOrder(int i, Record prev, int first, int end)
+        throws IOException
+    {
+        for (int r = first; r < end; r++)
+        {
+            Record rec = read(in[i], r, i);
+            if (Double.compare(rec.getKey(), prev.getKey()) < 0)
+            {
+                throw notSorted(i, r);
+            }
+            prev = rec;
+        }
+    }
+
+    /**
+     * Describe a record that is out of order
+     *
+     * @param i
+     *          The run
+     * @param rec
+     *          The index of the record in run i's buffer
+     * @return
+     *          The exception to throw
+     */
+    private IOException notSorted(int i, int rec)
+    {
+        Run run = runs.get(i);
+        long buffered = in[i].limit() / Record.BYTES;
+        long index = (pos[i] - run.getOffset()) / Record.BYTES - buffered
+            + rec;
+        return new IOException(run.getFile() + " is not sorted at record "
+            + index);
+    }
+
+    /**
+     * Read the next block of run i into its input buffer
+     *
+     * @param i
+     *          The run to refill
+     * @return
+     *          True if any records were read
+     * @throws IOException
+     */
+    private boolean refill(int i) throws IOException
+    {
+        if (left[i] == 0)
+        {
+            return false;
+        }
+        int n = (int)Math.min(left[i], ByteProcessor.RECORDS_PER_BLOCK);
+        runs.get(i).read(files[i], pos[i], in[i].array(),
+            n * Record.BYTES);
+        in[i].position(0);
+        in[i].limit(n * Record.BYTES);
+        pos[i] += n * Record.BYTES;
+        left[i] -= n;
+        bytesRead += n * Record.BYTES;
+        return true;
+    }
+
+    /**
+     * Get the number of bytes read by every merge so far
+     *
+     * @return
+     *          The number of bytes read
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    /**
+     * Get the number of bytes written by every merge so far
+     *
+     * @return
+     *          The number of bytes written
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * Get the CRC32 of the output of the last merge
+     *
+     * @return
+     *          The checksum
+     */
+    public long getLastChecksum()
+    {
+        return lastChecksum;
+    }
+}
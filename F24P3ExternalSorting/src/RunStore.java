@@ -0,0 +1,658 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Holds runs in memory outside the Java heap, and only writes them to
+ * disk when they do not fit. The runs are appended as one stream, as
+ * they would be to the run file, and kept in fixed size segments of
+ * direct memory. When the memory budget is used up, the oldest segment
+ * still in memory is spilled to a segment file of its own and its
+ * memory is reused, so a sort that fits never touches the disk between
+ * run generation and the merge, and a sort that does not fit only
+ * spills what it must.
+ *
+ * Every byte of a run is read by exactly one merge, so once all of a
+ * full segment has been consumed it is freed: its memory is reused or
+ * its segment file is deleted. The runs being merged and the run being
+ * written then share the space, and the store never holds much more
+ * than one copy of the data.
+ *
+ * With ScratchDirs the segment files are striped over several drives
+ * and the drives' I/O queues do the disk work in the background.
+ * Spills are written while the sort goes on, and a merge reading a
+ * segment from disk has the next segment loaded ahead of it, so the
+ * runs of one merge are read from every drive at once.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class RunStore implements Closeable {
+    /**
+     * the default number of bytes in one segment
+     */
+    public final static int SEGMENT_BYTES =
+        64 * ByteProcessor.BYTES_PER_BLOCK;
+    /**
+     * the segment size when most segments end up in files, large
+     * enough to keep the number of files down
+     */
+    public final static int FILE_SEGMENT_BYTES =
+        1024 * ByteProcessor.BYTES_PER_BLOCK;
+    /**
+     * the segment size when segments are striped over drives, small
+     * enough that loading one ahead for every run of a merge is cheap
+     */
+    public final static int STRIPE_BYTES =
+        128 * ByteProcessor.BYTES_PER_BLOCK;
+    /**
+     * the most spills each drive may have queued before appends wait
+     */
+    public final static int SPILLS_PER_DEVICE = 2;
+
+    private String spillFile;
+    private ScratchDirs dirs;
+    private long budget;
+    private int segmentBytes;
+    private List<ByteBuffer> memory;
+    private List<RandomAccessFile> files;
+    private int[] consumed;
+    private boolean[] spilling;
+    private boolean[] loading;
+    private int inFlight;
+    private IOException failure;
+    private Deque<ByteBuffer> free;
+    private int oldest;
+    private int resident;
+    private long size;
+    private long spilled;
+    private long onDisk;
+    private long peakBytes;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RunStore object.
+     *
+     * @param spillFile
+     *            the name segment files are numbered after
+     * @param budget
+     *            the most bytes of runs to hold in memory
+     */
+    public RunStore(String spillFile, long budget) {
+        this(spillFile, budget, SEGMENT_BYTES);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RunStore object with its own segment size.
+     *
+     * @param spillFile
+     *            the name segment files are numbered after
+     * @param budget
+     *            the most bytes of runs to hold in memory
+     * @param segmentBytes
+     *            the size of a segment, a multiple of the block size
+     */
+    public RunStore(String spillFile, long budget, int segmentBytes) {
+        this.spillFile = spillFile;
+        this.budget = budget;
+        this.segmentBytes = segmentBytes;
+        this.memory = new ArrayList<ByteBuffer>();
+        this.files = new ArrayList<RandomAccessFile>();
+        this.consumed = new int[16];
+        this.spilling = new boolean[16];
+        this.loading = new boolean[16];
+        this.free = new ArrayDeque<ByteBuffer>();
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new RunStore object whose segment files are striped
+     * over several directories.
+     *
+     * @param dirs
+     *            the directories and their I/O queues
+     * @param name
+     *            the name segment files are numbered after
+     * @param budget
+     *            the most bytes of runs to hold in memory
+     * @param segmentBytes
+     *            the size of a segment, which is the stripe size
+     */
+    public RunStore(ScratchDirs dirs, String name, long budget,
+        int segmentBytes) {
+        this(name, budget, segmentBytes);
+        this.dirs = dirs;
+    }
+
+    /**
+     * Add bytes to the end of the stored runs
+     *
+     * @param src
+     *          The buffer holding the bytes
+     * @param offset
+     *          The first byte to add
+     * @param length
+     *          The number of bytes to add
+     * @throws IOException
+     *          If a segment cannot be spilled
+     */
+    public synchronized void append(byte[] src, int offset, int length)
+        throws IOException
+    {
+        while (length > 0)
+        {
+            int at = (int)(size % segmentBytes);
+            if (at == 0)
+            {
+                newSegment();
+            }
+            ByteBuffer segment = memory.get(memory.size() - 1);
+            int n = Math.min(length, segmentBytes - at);
+            segment.position(at);
+            segment.put(src, offset, n);
+            offset += n;
+            length -= n;
+            size += n;
+        }
+        peakBytes = Math.max(peakBytes,
+            (long)resident * segmentBytes + onDisk);
+    }
+
+    /**
+     * Add a segment in memory, spilling the oldest segment first if
+     * the budget is used up. The segment being filled always stays.
+     *
+     * @throws IOException
+     */
+    private void newSegment() throws IOException
+    {
+        checkFailure();
+        while (oldest < memory.size() && !isResident(oldest))
+        {
+            oldest++;
+        }
+        if ((long)(resident + 1) * segmentBytes > budget && resident > 0)
+        {
+            spill(oldest);
+        }
+        resident++;
+        memory.add(free.isEmpty() ? ByteBuffer.allocateDirect(segmentBytes)
+            : free.pop());
+        files.add(null);
+        if (memory.size() > consumed.length)
+        {
+            consumed = Arrays.copyOf(consumed, 2 * consumed.length);
+            spilling = Arrays.copyOf(spilling, consumed.length);
+            loading = Arrays.copyOf(loading, consumed.length);
+        }
+    }
+
+    /**
+     * Check if a segment is held only in memory, so it counts against
+     * the budget and may be spilled
+     *
+     * @param i
+     *          The segment
+     * @return
+     *          True if it is in memory and not on disk or on its way
+     */
+    private boolean isResident(int i)
+    {
+        return memory.get(i) != null && files.get(i) == null
+            && !spilling[i];
+    }
+
+    /**
+     * Write a segment to its segment file. With ScratchDirs the write
+     * is queued on the segment's drive and the segment stays readable
+     * in memory until it is done.
+     *
+     * @param i
+     *          The segment
+     * @throws IOException
+     */
+    private void spill(int i) throws IOException
+    {
+        ByteBuffer victim = memory.get(i);
+        spilled += segmentBytes;
+        onDisk += segmentBytes;
+        resident--;
+        if (dirs == null)
+        {
+            files.set(i, write(segmentFile(i), victim));
+            memory.set(i, null);
+            free.push(victim);
+            return;
+        }
+        spilling[i] = true;
+        inFlight++;
+        String name = segmentFile(i);
+        dirs.submit(i, () -> {
+            spilled(i, name, victim);
+            return null;
+        });
+        try
+        {
+            while (inFlight > SPILLS_PER_DEVICE * dirs.devices())
+            {
+                wait();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted spilling runs");
+        }
+    }
+
+    /**
+     * Write a segment to a new file
+     *
+     * @param name
+     *          The file
+     * @param segment
+     *          The full segment
+     * @return
+     *          The open file
+     * @throws IOException
+     */
+    private static RandomAccessFile write(String name, ByteBuffer segment)
+        throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(name, "rw");
+        file.setLength(0);
+        ByteBuffer view = segment.duplicate();
+        view.clear();
+        while (view.hasRemaining())
+        {
+            file.getChannel().write(view, view.position());
+        }
+        return file;
+    }
+
+    /**
+     * Write a queued spill on the drive's I/O thread, then swap the
+     * segment over to its file
+     *
+     * @param i
+     *          The segment
+     * @param name
+     *          Its segment file
+     * @param victim
+     *          Its memory
+     */
+    private void spilled(int i, String name, ByteBuffer victim)
+    {
+        RandomAccessFile file = null;
+        IOException error = null;
+        try
+        {
+            file = write(name, victim);
+        }
+        catch (IOException e)
+        {
+            error = e;
+        }
+        synchronized (this)
+        {
+            spilling[i] = false;
+            inFlight--;
+            if (error == null && memory.get(i) != null)
+            {
+                files.set(i, file);
+                memory.set(i, null);
+                free.push(victim);
+            }
+            else
+            {
+                //Failed, or the merge used the segment up meanwhile
+                if (error != null && failure == null)
+                {
+                    failure = error;
+                }
+                discard(file, name);
+                onDisk -= segmentBytes;
+                if (memory.get(i) == null)
+                {
+                    free.push(victim);
+                }
+                else
+                {
+                    //Keep the data readable from memory
+                    resident++;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Close and remove a segment file
+     *
+     * @param file
+     *          The open file, or null
+     * @param name
+     *          Its name
+     */
+    private static void discard(RandomAccessFile file, String name)
+    {
+        try
+        {
+            if (file != null)
+            {
+                file.close();
+            }
+        }
+        catch (IOException e)
+        {
+            //It is being removed anyway
+        }
+        new File(name).delete();
+    }
+
+    /**
+     * Throw the failure of a background spill, if there was one
+     *
+     * @throws IOException
+     */
+    private void checkFailure() throws IOException
+    {
+        if (failure != null)
+        {
+            throw new IOException("spilling runs failed", failure);
+        }
+    }
+
+    /**
+     * Start loading a segment from its file on its drive's I/O queue,
+     * so it is in memory by the time a merge gets to it
+     *
+     * @param i
+     *          The segment
+     */
+    private void loadAhead(int i)
+    {
+        if (dirs == null || i >= files.size() || loading[i]
+            || files.get(i) == null || memory.get(i) != null)
+        {
+            return;
+        }
+        loading[i] = true;
+        RandomAccessFile file = files.get(i);
+        ByteBuffer buffer = free.isEmpty()
+            ? ByteBuffer.allocateDirect(segmentBytes) : free.pop();
+        dirs.submit(i, () -> {
+            loaded(i, file, buffer);
+            return null;
+        });
+    }
+
+    /**
+     * Read a segment on the drive's I/O thread and hand it to the
+     * merge. A failed read is dropped and the merge reads the file
+     * itself.
+     *
+     * @param i
+     *          The segment
+     * @param file
+     *          Its file
+     * @param buffer
+     *          The memory to read it into
+     */
+    private void loaded(int i, RandomAccessFile file, ByteBuffer buffer)
+    {
+        boolean done = true;
+        try
+        {
+            buffer.clear();
+            while (buffer.hasRemaining())
+            {
+                if (file.getChannel().read(buffer, buffer.position()) < 0)
+                {
+                    done = false;
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            done = false;
+        }
+        synchronized (this)
+        {
+            loading[i] = false;
+            if (done && files.get(i) == file && memory.get(i) == null)
+            {
+                memory.set(i, buffer);
+            }
+            else
+            {
+                free.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * Get the file segment i is spilled to
+     *
+     * @param i
+     *          The segment
+     * @return
+     *          The file name
+     */
+    private String segmentFile(int i)
+    {
+        if (dirs == null)
+        {
+            return spillFile + "." + i;
+        }
+        return dirs.file(i, new File(spillFile).getName() + "." + i);
+    }
+
+    /**
+     * Copy stored bytes out, from memory or from a segment file,
+     * without consuming them
+     *
+     * @param position
+     *          The first byte, counted from the start of the store
+     * @param dst
+     *          The buffer to copy to
+     * @param offset
+     *          The first byte of dst to fill
+     * @param length
+     *          The number of bytes to copy
+     * @throws IOException
+     */
+    public synchronized void read(long position, byte[] dst, int offset,
+        int length) throws IOException
+    {
+        copy(position, dst, offset, length, false);
+    }
+
+    /**
+     * Copy stored bytes out for a merge, freeing every segment whose
+     * bytes have now all been consumed
+     *
+     * @param position
+     *          The first byte, counted from the start of the store
+     * @param dst
+     *          The buffer to copy to
+     * @param offset
+     *          The first byte of dst to fill
+     * @param length
+     *          The number of bytes to copy
+     * @throws IOException
+     */
+    public synchronized void consume(long position, byte[] dst, int offset,
+        int length) throws IOException
+    {
+        copy(position, dst, offset, length, true);
+    }
+
+    /**
+     * Copy stored bytes out
+     *
+     * @param position
+     *          The first byte
+     * @param dst
+     *          The buffer to copy to
+     * @param offset
+     *          The first byte of dst to fill
+     * @param length
+     *          The number of bytes to copy
+     * @param release
+     *          True to count the bytes as consumed
+     * @throws IOException
+     */
+    private void copy(long position, byte[] dst, int offset, int length,
+        boolean release) throws IOException
+    {
+        if (position + length > size)
+        {
+            throw new IOException("read past the end of the run store");
+        }
+        while (length > 0)
+        {
+            int index = (int)(position / segmentBytes);
+            int at = (int)(position % segmentBytes);
+            int n = Math.min(length, segmentBytes - at);
+            ByteBuffer segment = memory.get(index);
+            RandomAccessFile file = files.get(index);
+            if (segment != null)
+            {
+                ByteBuffer view = segment.duplicate();
+                view.position(at);
+                view.get(dst, offset, n);
+            }
+            else if (file != null)
+            {
+                file.seek(at);
+                file.readFully(dst, offset, n);
+            }
+            else
+            {
+                throw new IOException("segment " + index
+                    + " was already consumed");
+            }
+            if (release)
+            {
+                loadAhead(index + 1);
+                consumed[index] += n;
+                if (consumed[index] == segmentBytes)
+                {
+                    free(index);
+                }
+            }
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Free a segment that has been read to the end
+     *
+     * @param index
+     *          The segment
+     * @throws IOException
+     */
+    private void free(int index) throws IOException
+    {
+        ByteBuffer segment = memory.get(index);
+        RandomAccessFile file = files.get(index);
+        if (segment != null)
+        {
+            memory.set(index, null);
+            //A spill in flight gives its memory back when it is done
+            if (!spilling[index])
+            {
+                if (file == null)
+                {
+                    resident--;
+                }
+                free.push(segment);
+            }
+        }
+        if (file != null)
+        {
+            files.set(index, null);
+            file.close();
+            new File(segmentFile(index)).delete();
+            onDisk -= segmentBytes;
+        }
+    }
+
+    /**
+     * Get the number of bytes stored
+     *
+     * @return
+     *          The size
+     */
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes written to segment files
+     *
+     * @return
+     *          The spilled bytes
+     */
+    public synchronized long getSpilledBytes()
+    {
+        return spilled;
+    }
+
+    /**
+     * Get the most bytes the store held at once, in memory and on disk
+     *
+     * @return
+     *          The peak footprint
+     */
+    public synchronized long getPeakBytes()
+    {
+        return peakBytes;
+    }
+
+    /**
+     * Let go of the memory and remove the segment files
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            while (inFlight > 0)
+            {
+                wait();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted closing runs");
+        }
+        for (int i = 0; i < files.size(); i++)
+        {
+            memory.set(i, null);
+            if (files.get(i) != null)
+            {
+                free(i);
+            }
+        }
+        free.clear();
+        resident = 0;
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class RunStoreTest extends TestCase {
+    private String spillFile;
+    private String input;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        spillFile = "solutionTestData/runStore.spill";
+        input = "solutionTestData/runStoreInput.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(spillFile).delete();
+        new File(input).delete();
+    }
+
+    /**
+     * Bytes read back are the bytes appended, whether they stayed in
+     * memory or were spilled
+     *
+     * @throws IOException
+     */
+    public void testSpillOldestFirst() throws IOException {
+        RunStore store = new RunStore(spillFile,
+            2L * RunStore.SEGMENT_BYTES);
+        byte[] data = new byte[5 * RunStore.SEGMENT_BYTES + 123];
+        new Random(41).nextBytes(data);
+        for (int at = 0; at < data.length; at += 1000) {
+            store.append(data, at, Math.min(1000, data.length - at));
+        }
+        assertEquals(data.length, store.size());
+        //Only the last two segments can still be in memory
+        assertEquals(4L * RunStore.SEGMENT_BYTES, store.getSpilledBytes());
+
+        byte[] back = new byte[data.length];
+        store.read(0, back, 0, 10);
+        store.read(10, back, 10, data.length - 10);
+        assertTrue(Arrays.equals(data, back));
+        assertTrue(new File(spillFile + ".0").exists());
+        store.close();
+        assertFalse(new File(spillFile + ".0").exists());
+    }
+
+    /**
+     * Segments are freed once they have been consumed, so the store
+     * can take new runs in the space of the ones already merged
+     *
+     * @throws IOException
+     */
+    public void testConsumeFreesSegments() throws IOException {
+        RunStore store = new RunStore(spillFile, 0);
+        byte[] data = new byte[3 * RunStore.SEGMENT_BYTES];
+        new Random(43).nextBytes(data);
+        store.append(data, 0, data.length);
+        assertTrue(new File(spillFile + ".1").exists());
+
+        byte[] back = new byte[data.length];
+        store.consume(0, back, 0, 2 * RunStore.SEGMENT_BYTES);
+        assertFalse(new File(spillFile + ".0").exists());
+        assertFalse(new File(spillFile + ".1").exists());
+        //A consumed segment cannot be read again
+        Exception gone = null;
+        try {
+            store.read(0, back, 0, 1);
+        }
+        catch (IOException e) {
+            gone = e;
+        }
+        assertNotNull(gone);
+
+        //New runs fit in the freed space
+        store.append(data, 0, 2 * RunStore.SEGMENT_BYTES);
+        assertEquals(3L * RunStore.SEGMENT_BYTES, store.getPeakBytes());
+        store.consume(2L * RunStore.SEGMENT_BYTES, back, 0, data.length);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(back,
+            RunStore.SEGMENT_BYTES, data.length), Arrays.copyOfRange(data,
+                0, 2 * RunStore.SEGMENT_BYTES)));
+        store.close();
+    }
+
+    /**
+     * A sort with its runs in memory gives the same output whether
+     * they fit or not
+     *
+     * @throws IOException
+     */
+    public void testSortWithRunMemory() throws IOException {
+        new ByteFile(input, 200).writeRandomRecords(new Random(41));
+        Sorter sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setRunMemory(64L << 20);
+        assertTrue(sorter.sort());
+        assertEquals(0, sorter.getSpilledBytes());
+        assertTrue(new ByteProcessor(input, null).isSorted());
+        byte[] fits = Files.readAllBytes(
+            new File(input).toPath());
+
+        new ByteFile(input, 200).writeRandomRecords(new Random(41));
+        sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setRunMemory(RunStore.SEGMENT_BYTES);
+        assertTrue(sorter.sort());
+        assertTrue(sorter.getSpilledBytes() > 0);
+        assertTrue(Arrays.equals(fits, Files.readAllBytes(
+            new File(input).toPath())));
+
+        //Several merge levels stay within about one copy of the data
+        new ByteFile(input, 200).writeRandomRecords(new Random(41));
+        sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setHeapRecords(ByteProcessor.RECORDS_PER_BLOCK);
+        sorter.setFanIn(2);
+        sorter.setLowFootprint(true);
+        assertTrue(sorter.sort());
+        assertTrue(sorter.getPlanner().getMerges() > 40);
+        assertTrue(sorter.getPeakScratchBytes() <= new File(input).length()
+            + 2 * RunStore.FILE_SEGMENT_BYTES);
+        assertTrue(Arrays.equals(fits, Files.readAllBytes(
+            new File(input).toPath())));
+    }
+}
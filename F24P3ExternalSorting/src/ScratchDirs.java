@@ -0,0 +1,154 @@
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The directories scratch files are spread over, usually one per
+ * local drive. Stripe i of a scratch stream goes to directory
+ * i % size(), so a long stream is written to and read from every
+ * drive in turn.
+ *
+ * Each drive has its own I/O queue, a single thread that does the
+ * background reads and writes for the directories on that drive. The
+ * drives then work at the same time, and each one still sees one
+ * sequential stream at a time instead of competing requests.
+ * Directories on the same drive share its queue.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class ScratchDirs implements Closeable {
+    private List<File> dirs;
+    private List<ExecutorService> queueOf;
+    private Map<String, ExecutorService> queues;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new ScratchDirs object, creating any directory that
+     * does not exist yet.
+     *
+     * @param names
+     *            the directories, at least one
+     */
+    public ScratchDirs(List<String> names) {
+        if (names.isEmpty())
+        {
+            throw new IllegalArgumentException("no scratch directories");
+        }
+        dirs = new ArrayList<File>();
+        queueOf = new ArrayList<ExecutorService>();
+        queues = new HashMap<String, ExecutorService>();
+        for (String name : names)
+        {
+            File dir = new File(name);
+            dir.mkdirs();
+            String disk = IoScheduler.diskOf(new File(dir, "x").getPath());
+            ExecutorService queue = queues.get(disk);
+            if (queue == null)
+            {
+                queue = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "scratch-io-" + disk);
+                    t.setDaemon(true);
+                    return t;
+                });
+                queues.put(disk, queue);
+            }
+            dirs.add(dir);
+            queueOf.add(queue);
+        }
+    }
+
+    /**
+     * Split a comma separated list of directories
+     *
+     * @param list
+     *          The directories, such as /mnt/a/tmp,/mnt/b/tmp
+     * @return
+     *          The scratch directories
+     */
+    public static ScratchDirs parse(String list)
+    {
+        List<String> names = new ArrayList<String>();
+        for (String name : list.split(","))
+        {
+            if (!name.isEmpty())
+            {
+                names.add(name);
+            }
+        }
+        return new ScratchDirs(names);
+    }
+
+    /**
+     * Get the file that holds stripe i of a scratch stream
+     *
+     * @param i
+     *          The stripe
+     * @param name
+     *          The file name within the directory
+     * @return
+     *          The path
+     */
+    public String file(int i, String name)
+    {
+        return new File(dirs.get(i % dirs.size()), name).getPath();
+    }
+
+    /**
+     * Queue I/O for stripe i on the drive that holds it
+     *
+     * @param <T>
+     *          The result type
+     * @param i
+     *          The stripe
+     * @param io
+     *          The reads or writes to do
+     * @return
+     *          The pending result
+     */
+    public <T> Future<T> submit(int i, Callable<T> io)
+    {
+        return queueOf.get(i % dirs.size()).submit(io);
+    }
+
+    /**
+     * Get the number of directories
+     *
+     * @return
+     *          The number of directories
+     */
+    public int size()
+    {
+        return dirs.size();
+    }
+
+    /**
+     * Get the number of drives, which is the number of I/O queues
+     *
+     * @return
+     *          The number of drives
+     */
+    public int devices()
+    {
+        return queues.size();
+    }
+
+    /**
+     * Stop the I/O queues once the work in them is done
+     */
+    @Override
+    public void close()
+    {
+        for (ExecutorService queue : queues.values())
+        {
+            queue.shutdown();
+        }
+    }
+}
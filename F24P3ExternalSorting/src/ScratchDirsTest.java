@@ -0,0 +1,128 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class ScratchDirsTest extends TestCase {
+    private String[] names;
+    private ScratchDirs dirs;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        names = new String[] { "solutionTestData/scratchA",
+            "solutionTestData/scratchB", "solutionTestData/scratchC" };
+        dirs = new ScratchDirs(Arrays.asList(names));
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        for (String name : names) {
+            File[] left = new File(name).listFiles();
+            if (left != null) {
+                for (File f : left) {
+                    f.delete();
+                }
+            }
+            new File(name).delete();
+        }
+        new File("solutionTestData/scratchInput.bin").delete();
+        new File("solutionTestData/scratchExpected.bin").delete();
+    }
+
+    /**
+     * Count the files left in the scratch directories
+     *
+     * @return the number of files
+     */
+    private int leftOver() {
+        int files = 0;
+        for (String name : names) {
+            files += new File(name).list().length;
+        }
+        return files;
+    }
+
+    /**
+     * Stripes go to the directories in turn, and directories on one
+     * drive share an I/O queue
+     */
+    public void testStripes() {
+        assertEquals(3, dirs.size());
+        assertEquals(1, dirs.devices());
+        assertEquals(new File(names[1], "s.4").getPath(), dirs.file(4, "s.4"));
+        assertEquals(new File(names[0], "s.6").getPath(), dirs.file(6, "s.6"));
+        dirs.close();
+        ScratchDirs parsed = ScratchDirs.parse(names[0] + ",," + names[2]);
+        assertEquals(2, parsed.size());
+        assertEquals(new File(names[2], "s.1").getPath(),
+            parsed.file(1, "s.1"));
+        parsed.close();
+    }
+
+    /**
+     * Spilled segments are spread over every directory, read back
+     * correctly while they are written and loaded ahead, and removed
+     * once consumed
+     *
+     * @throws IOException
+     */
+    public void testStripedStore() throws IOException {
+        RunStore store = new RunStore(dirs, "striped", 0,
+            RunStore.SEGMENT_BYTES);
+        byte[] data = new byte[7 * RunStore.SEGMENT_BYTES + 100];
+        new Random(47).nextBytes(data);
+        for (int at = 0; at < data.length; at += 5000) {
+            store.append(data, at, Math.min(5000, data.length - at));
+        }
+        byte[] back = new byte[data.length];
+        store.read(0, back, 0, data.length);
+        assertTrue(Arrays.equals(data, back));
+        assertTrue(store.getSpilledBytes() >= 6L * RunStore.SEGMENT_BYTES);
+
+        Arrays.fill(back, (byte)0);
+        for (int at = 0; at < data.length; at += 3000) {
+            int n = Math.min(3000, data.length - at);
+            store.consume(at, back, at, n);
+        }
+        assertTrue(Arrays.equals(data, back));
+        store.close();
+        assertEquals(0, leftOver());
+        dirs.close();
+    }
+
+    /**
+     * A sort with striped scratch space gives the same output and
+     * leaves nothing behind
+     *
+     * @throws IOException
+     */
+    public void testSortWithScratchDirs() throws IOException {
+        String input = "solutionTestData/scratchInput.bin";
+        new ByteFile(input, 150).writeRandomRecords(new Random(48));
+        String expected = "solutionTestData/scratchExpected.bin";
+        new ByteFile(expected, 150).writeRandomRecords(new Random(48));
+        new Sorter(expected, Externalsort.RUN_FILE).sort();
+
+        Sorter sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setHeapRecords(ByteProcessor.RECORDS_PER_BLOCK);
+        sorter.setFanIn(3);
+        sorter.setScratchDirs(dirs);
+        assertTrue(sorter.sort());
+        assertTrue(sorter.getSpilledBytes() > 0);
+        assertTrue(Arrays.equals(Files.readAllBytes(
+            new File(expected).toPath()), Files.readAllBytes(
+                new File(input).toPath())));
+        assertEquals(0, leftOver());
+        dirs.close();
+    }
+}
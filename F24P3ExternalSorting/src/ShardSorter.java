@@ -0,0 +1,282 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts many unsorted shard files as one dataset into one output file,
+ * so the shards never have to be joined first. Run generation reads
+ * several shards at once, each with its own share of the heap memory
+ * and its own run file, and the runs of every shard then go through
+ * one merge plan whose final merge writes the output.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class ShardSorter {
+    private List<String> shards;
+    private String output;
+    private String runFile;
+    private int threads;
+    private int heapRecords;
+    private int fanIn;
+    private Combiner combiner;
+    private MergePlanner planner;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new ShardSorter object.
+     *
+     * @param shards
+     *            the files to sort together
+     * @param output
+     *            the file to write the sorted records to
+     * @param runFile
+     *            the scratch file, which also names the shard run files
+     */
+    public ShardSorter(List<String> shards, String output, String runFile) {
+        this.shards = new ArrayList<String>(shards);
+        this.output = output;
+        this.runFile = runFile;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.heapRecords = ByteProcessor.HEAP_RECORDS;
+        this.fanIn = MergePlanner.DEFAULT_FAN_IN;
+    }
+
+    /**
+     * Turn a file, a directory or a glob such as data/part-*.bin into
+     * the list of files it names, sorted by name
+     *
+     * @param spec
+     *          The file, directory or glob
+     * @return
+     *          The files
+     * @throws IOException
+     */
+    public static List<String> expand(String spec) throws IOException
+    {
+        List<String> files = new ArrayList<String>();
+        File file = new File(spec);
+        Path dir;
+        String glob;
+        if (file.isDirectory())
+        {
+            dir = file.toPath();
+            glob = "*";
+        }
+        else if (spec.matches(".*[*?\\[{].*"))
+        {
+            Path parent = Paths.get(spec).getParent();
+            dir = parent == null ? Paths.get(".") : parent;
+            glob = Paths.get(spec).getFileName().toString();
+        }
+        else
+        {
+            files.add(spec);
+            return files;
+        }
+        DirectoryStream<Path> entries = Files.newDirectoryStream(dir, glob);
+        try
+        {
+            for (Path entry : entries)
+            {
+                if (Files.isRegularFile(entry))
+                {
+                    files.add(entry.toString());
+                }
+            }
+        }
+        finally
+        {
+            entries.close();
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Set the number of shards read at once
+     *
+     * @param count
+     *          The number of threads
+     */
+    public void setThreads(int count)
+    {
+        this.threads = count;
+    }
+
+    /**
+     * Set the number of records all replacement selection heaps hold
+     * together
+     *
+     * @param records
+     *          The total heap size in records
+     */
+    public void setHeapRecords(int records)
+    {
+        this.heapRecords = records;
+    }
+
+    /**
+     * Set the number of runs merged at once
+     *
+     * @param k
+     *          The merge fan-in
+     */
+    public void setFanIn(int k)
+    {
+        this.fanIn = k;
+    }
+
+    /**
+     * Set the combiner used to fold equal records
+     *
+     * @param fold
+     *          The combiner, or null to keep every record
+     */
+    public void setCombiner(Combiner fold)
+    {
+        this.combiner = fold;
+    }
+
+    /**
+     * Sort every shard into the output
+     *
+     * @throws IOException
+     */
+    public void sort() throws IOException
+    {
+        File out = new File(output).getCanonicalFile();
+        for (String shard : shards)
+        {
+            if (new File(shard).getCanonicalFile().equals(out))
+            {
+                throw new IllegalArgumentException(
+                    "the output is also a shard: " + shard);
+            }
+        }
+        int workers = Math.max(1, Math.min(threads, shards.size()));
+        int perShard = Math.max(ByteProcessor.RECORDS_PER_BLOCK,
+            heapRecords / workers);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<List<Run>>> found = new ArrayList<Future<List<Run>>>();
+        for (int i = 0; i < shards.size(); i++)
+        {
+            String shard = shards.get(i);
+            String shardRuns = shardRunFile(i);
+            found.add(pool.submit(() -> makeRuns(shard, shardRuns,
+                perShard)));
+        }
+        pool.shutdown();
+        try
+        {
+            List<Run> runs = new ArrayList<Run>();
+            for (Future<List<Run>> shardRuns : found)
+            {
+                runs.addAll(await(shardRuns));
+            }
+            //Intermediate merges go to the run file, the last to output
+            new File(runFile).delete();
+            planner = new MergePlanner(fanIn, combiner);
+            planner.plan(runs);
+            planner.execute(runFile, output);
+        }
+        finally
+        {
+            pool.shutdownNow();
+            for (int i = 0; i < shards.size(); i++)
+            {
+                new File(shardRunFile(i)).delete();
+            }
+        }
+    }
+
+    /**
+     * Run replacement selection on one shard
+     *
+     * @param shard
+     *          The shard
+     * @param shardRuns
+     *          The file to write its runs to
+     * @param records
+     *          The heap size in records
+     * @return
+     *          The runs
+     * @throws IOException
+     */
+    private List<Run> makeRuns(String shard, String shardRuns, int records)
+        throws IOException
+    {
+        ByteProcessor processor = new ByteProcessor(shard,
+            new MinHeap<Record>(new Record[records], 0, records), shardRuns,
+            records);
+        processor.setCombiner(combiner);
+        processor.readRecords();
+        return MergePlanner.findRuns(shardRuns);
+    }
+
+    /**
+     * Wait for the runs of one shard
+     *
+     * @param shardRuns
+     *          The pending runs
+     * @return
+     *          The runs
+     * @throws IOException
+     *          If the shard could not be read
+     */
+    private static List<Run> await(Future<List<Run>> shardRuns)
+        throws IOException
+    {
+        try
+        {
+            return shardRuns.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted reading shards", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Get the run file of shard i
+     *
+     * @param i
+     *          The shard
+     * @return
+     *          The file name
+     */
+    private String shardRunFile(int i)
+    {
+        return runFile + "." + i;
+    }
+
+    /**
+     * Get the planner used by the last sort
+     *
+     * @return
+     *          The planner
+     */
+    public MergePlanner getPlanner()
+    {
+        return planner;
+    }
+}
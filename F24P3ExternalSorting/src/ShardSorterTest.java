@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class ShardSorterTest extends TestCase {
+    private String dir;
+    private String output;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        dir = "solutionTestData/shards";
+        output = "solutionTestData/shardOutput.bin";
+        new File(dir).mkdirs();
+        //Start each test with no shards left by the others
+        for (File shard : new File(dir).listFiles()) {
+            shard.delete();
+        }
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        for (File shard : new File(dir).listFiles()) {
+            shard.delete();
+        }
+        new File(dir).delete();
+        new File(output).delete();
+        new File("solutionTestData/shardRun.bin").delete();
+    }
+
+    /**
+     * Add up every ID in a file
+     *
+     * @param file
+     *            the file
+     * @return the sum of the IDs
+     * @throws IOException
+     */
+    private long sumOfIDs(String file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long sum = 0;
+        while (raf.getFilePointer() < raf.length()) {
+            sum += raf.readLong();
+            raf.readDouble();
+        }
+        raf.close();
+        return sum;
+    }
+
+    /**
+     * Directories and globs name the shards, in name order
+     *
+     * @throws IOException
+     */
+    public void testExpand() throws IOException {
+        new ByteFile(dir + "/part-1.bin", 1).writeRandomRecords(
+            new Random(1));
+        new ByteFile(dir + "/part-0.bin", 1).writeRandomRecords(
+            new Random(0));
+        new ByteFile(dir + "/other.dat", 1).writeRandomRecords(
+            new Random(2));
+        List<String> glob = ShardSorter.expand(dir + "/part-*.bin");
+        assertEquals(2, glob.size());
+        assertTrue(glob.get(0).endsWith("part-0.bin"));
+        assertEquals(3, ShardSorter.expand(dir).size());
+        assertEquals(1, ShardSorter.expand(output).size());
+    }
+
+    /**
+     * Shards of different sizes come out as one sorted file
+     *
+     * @throws IOException
+     */
+    public void testSortShards() throws IOException {
+        long ids = 0;
+        long blocks = 0;
+        for (int i = 0; i < 5; i++) {
+            String shard = dir + "/part-" + i + ".bin";
+            new ByteFile(shard, 3 + 4 * i).writeRandomRecords(
+                new Random(42 + i));
+            ids += sumOfIDs(shard);
+            blocks += 3 + 4 * i;
+        }
+        ShardSorter sorter = new ShardSorter(
+            ShardSorter.expand(dir + "/part-*.bin"), output,
+            "solutionTestData/shardRun.bin");
+        sorter.setThreads(3);
+        sorter.setFanIn(4);
+        sorter.sort();
+        assertEquals(blocks * ByteProcessor.BYTES_PER_BLOCK,
+            new File(output).length());
+        assertEquals(ids, sumOfIDs(output));
+        assertTrue(new ByteProcessor(output, null).isSorted());
+        assertFalse(new File("solutionTestData/shardRun.bin.0").exists());
+    }
+
+    /**
+     * Shards that are all empty replace an older output with an empty
+     * one
+     *
+     * @throws IOException
+     */
+    public void testEmptyShards() throws IOException {
+        new ByteFile(output, 2).writeRandomRecords(new Random(7));
+        for (int i = 0; i < 3; i++) {
+            new RandomAccessFile(dir + "/part-" + i + ".bin", "rw").close();
+        }
+        ShardSorter sorter = new ShardSorter(
+            ShardSorter.expand(dir + "/part-*.bin"), output,
+            "solutionTestData/shardRun.bin");
+        sorter.sort();
+        assertTrue(new File(output).exists());
+        assertEquals(0, new File(output).length());
+
+        new File(output).delete();
+        sorter.sort();
+        assertTrue(new File(output).exists());
+        assertEquals(0, new File(output).length());
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps the sorted output of earlier sorts, named by the fingerprint of
+ * their input and the sort settings, so an input that comes back is
+ * copied from the cache instead of being sorted again. The cache is a
+ * plain directory: an entry's modification time is its last use, and
+ * the least recently used entries are removed once the directory grows
+ * past its size limit.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class SortCache {
+    private File dir;
+    private long maxBytes;
+    private int hits;
+    private int misses;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new SortCache object.
+     *
+     * @param dir
+     *            the cache directory, created if needed
+     * @param maxBytes
+     *            the most bytes the cache may hold
+     */
+    public SortCache(String dir, long maxBytes) {
+        this.dir = new File(dir);
+        this.dir.mkdirs();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Build the cache key of a sort
+     *
+     * @param fingerprint
+     *          The fingerprint of the input
+     * @param settings
+     *          The settings that change the sorted output
+     * @return
+     *          The key
+     */
+    public static String key(Fingerprint fingerprint, String settings)
+    {
+        return fingerprint + "-" + settings.replaceAll("[^A-Za-z0-9]", "_");
+    }
+
+    /**
+     * Get the file of a cache entry
+     *
+     * @param key
+     *          The cache key
+     * @return
+     *          The entry file
+     */
+    private File entry(String key)
+    {
+        return new File(dir, key + ".bin");
+    }
+
+    /**
+     * Copy a cached sorted output to dest
+     *
+     * @param key
+     *          The cache key
+     * @param dest
+     *          The file to write the sorted output to
+     * @return
+     *          True on a hit, false if nothing is cached for key
+     * @throws IOException
+     */
+    public synchronized boolean fetch(String key, String dest)
+        throws IOException
+    {
+        File cached = entry(key);
+        if (!cached.exists())
+        {
+            misses++;
+            return false;
+        }
+        Files.copy(cached.toPath(), new File(dest).toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        cached.setLastModified(System.currentTimeMillis());
+        hits++;
+        return true;
+    }
+
+    /**
+     * Save a sorted output under key, then evict the least recently
+     * used entries until the cache fits its limit again
+     *
+     * @param key
+     *          The cache key
+     * @param sorted
+     *          The sorted output to save
+     * @throws IOException
+     */
+    public synchronized void store(String key, String sorted)
+        throws IOException
+    {
+        File src = new File(sorted);
+        if (src.length() > maxBytes)
+        {
+            return;
+        }
+        //Copy under a temporary name so a half written entry is never hit
+        File tmp = File.createTempFile("entry", ".tmp", dir);
+        Files.copy(src.toPath(), tmp.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp.toPath(), entry(key).toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        entry(key).setLastModified(System.currentTimeMillis());
+        evict();
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits
+     */
+    private void evict()
+    {
+        File[] entries = dir.listFiles((d, name) -> name.endsWith(".bin"));
+        if (entries == null)
+        {
+            return;
+        }
+        long total = 0;
+        for (File file : entries)
+        {
+            total += file.length();
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length && total > maxBytes; i++)
+        {
+            total -= entries[i].length();
+            entries[i].delete();
+        }
+    }
+
+    /**
+     * Get the number of fetches that found an entry
+     *
+     * @return
+     *          The number of hits
+     */
+    public synchronized int getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Get the number of fetches that found nothing
+     *
+     * @return
+     *          The number of misses
+     */
+    public synchronized int getMisses()
+    {
+        return misses;
+    }
+}
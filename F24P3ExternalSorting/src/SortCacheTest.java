@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class SortCacheTest extends TestCase {
+    private String input;
+    private String cacheDir;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/cacheInput.bin";
+        cacheDir = "solutionTestData/cache";
+        File[] old = new File(cacheDir).listFiles();
+        if (old != null) {
+            for (File f : old) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        File[] cached = new File(cacheDir).listFiles();
+        if (cached != null) {
+            for (File f : cached) {
+                f.delete();
+            }
+        }
+        new File(cacheDir).delete();
+        new File(input).delete();
+    }
+
+    /**
+     * Write the same random input every time
+     *
+     * @throws IOException
+     */
+    private void writeInput() throws IOException {
+        ByteFile file = new ByteFile(input, 20);
+        file.writeRandomRecords(new Random(35));
+    }
+
+    /**
+     * An input sorted before is copied from the cache, and the copy is
+     * the same as a real sort
+     *
+     * @throws IOException
+     */
+    public void testHitAfterMiss() throws IOException {
+        SortCache cache = new SortCache(cacheDir, 1 << 20);
+        writeInput();
+        Sorter sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setCache(cache);
+        assertTrue(sorter.sort());
+        assertFalse(sorter.isCacheHit());
+        byte[] sorted = Files.readAllBytes(new File(input).toPath());
+
+        writeInput();
+        sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setCache(cache);
+        assertTrue(sorter.sort());
+        assertTrue(sorter.isCacheHit());
+        assertNull(sorter.getPlanner());
+        assertTrue(Arrays.equals(sorted,
+            Files.readAllBytes(new File(input).toPath())));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        //A different combiner is a different output
+        writeInput();
+        sorter = new Sorter(input, Externalsort.RUN_FILE);
+        sorter.setCache(cache);
+        sorter.setCombiner(Combine.DISTINCT);
+        sorter.sort();
+        assertFalse(sorter.isCacheHit());
+    }
+
+    /**
+     * The least recently used entry goes when the cache is full
+     *
+     * @throws IOException
+     */
+    public void testEviction() throws IOException {
+        long entry = 20L * ByteProcessor.BYTES_PER_BLOCK;
+        SortCache cache = new SortCache(cacheDir, 2 * entry);
+        writeInput();
+        cache.store("a", input);
+        cache.store("b", input);
+        new File(cacheDir, "a.bin").setLastModified(1000);
+        new File(cacheDir, "b.bin").setLastModified(2000);
+        cache.store("c", input);
+        assertFalse(cache.fetch("a", input));
+        assertTrue(cache.fetch("b", input));
+        assertTrue(cache.fetch("c", input));
+    }
+}
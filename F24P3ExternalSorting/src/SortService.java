@@ -0,0 +1,276 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sorts many files at once. Every job gets its own scratch run file,
+ * the memory budget is split evenly between the jobs that can run at
+ * the same time, and an IoScheduler keeps the jobs from fighting over
+ * the same disk.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class SortService {
+    private ExecutorService pool;
+    private IoScheduler scheduler;
+    private int heapRecords;
+    private List<SortJob> jobs;
+    private long created;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new SortService object.
+     *
+     * @param threads
+     *            the number of jobs that run at once
+     * @param memoryRecords
+     *            the number of records all running jobs may hold
+     * @param streamsPerDisk
+     *            the number of streams allowed on each disk at once
+     */
+    public SortService(int threads, int memoryRecords, int streamsPerDisk) {
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.scheduler = new IoScheduler(streamsPerDisk);
+        this.heapRecords = Math.max(ByteProcessor.RECORDS_PER_BLOCK,
+            memoryRecords / threads);
+        this.jobs = new ArrayList<SortJob>();
+        this.created = System.nanoTime();
+    }
+
+    /**
+     * Queue a file to be sorted in place
+     *
+     * @param input
+     *          The file to sort
+     * @return
+     *          The job, which holds its latency stats
+     */
+    public synchronized SortJob submit(String input)
+    {
+        SortJob job = new SortJob(input);
+        job.future = pool.submit(() -> {
+            job.run();
+            return null;
+        });
+        jobs.add(job);
+        return job;
+    }
+
+    /**
+     * Wait for every submitted job, then stop the worker threads
+     *
+     * @throws IOException
+     *          If any job failed
+     */
+    public void awaitAll() throws IOException
+    {
+        pool.shutdown();
+        IOException failure = null;
+        for (SortJob job : jobs)
+        {
+            try
+            {
+                job.future.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for jobs", e);
+            }
+            catch (ExecutionException e)
+            {
+                if (failure == null)
+                {
+                    failure = new IOException("sort of " + job.input
+                        + " failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Describe every job and the whole batch
+     *
+     * @return
+     *          The report
+     */
+    public synchronized String report()
+    {
+        StringBuilder sb = new StringBuilder();
+        long bytes = 0;
+        long last = created;
+        for (SortJob job : jobs)
+        {
+            sb.append(job).append('\n');
+            bytes += job.bytes;
+            last = Math.max(last, job.finished);
+        }
+        double seconds = (last - created) / 1e9;
+        sb.append(String.format("%d jobs, %d bytes in %.3f s (%.1f MB/s)",
+            jobs.size(), bytes, seconds,
+            seconds > 0 ? bytes / seconds / 1e6 : 0.0));
+        return sb.toString();
+    }
+
+    /**
+     * Sort every file named on the command line at once
+     *
+     * @param args
+     *     Command line parameters: optionally -threads n, -memory
+     *     records and -streams n, followed by the files to sort. An
+     *     unknown option is an IllegalArgumentException
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int memory = 8 * ByteProcessor.HEAP_RECORDS;
+        int streams = 2;
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("-threads") && i + 1 < args.length)
+            {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-memory") && i + 1 < args.length)
+            {
+                memory = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-streams") && i + 1 < args.length)
+            {
+                streams = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].startsWith("-"))
+            {
+                throw new IllegalArgumentException("unknown option "
+                    + args[i] + ", or it is missing its value");
+            }
+            else
+            {
+                files.add(args[i]);
+            }
+        }
+        SortService service = new SortService(threads, memory, streams);
+        for (String file : files)
+        {
+            service.submit(file);
+        }
+        try
+        {
+            service.awaitAll();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        System.out.println(service.report());
+    }
+
+    /**
+     * One file to sort and how long it took
+     */
+    public class SortJob {
+        private String input;
+        private Future<Void> future;
+        private long submitted;
+        private long started;
+        private long finished;
+        private long bytes;
+
+        /**
+         * Create a new SortJob object.
+         *
+         * @param input
+         *            the file to sort
+         */
+        private SortJob(String input) {
+            this.input = input;
+            this.submitted = System.nanoTime();
+        }
+
+        /**
+         * Sort the file using a scratch run file next to it
+         *
+         * @throws IOException
+         */
+        private void run() throws IOException
+        {
+            started = System.nanoTime();
+            File in = new File(input);
+            bytes = in.length();
+            File dir = in.getAbsoluteFile().getParentFile();
+            File scratch = Files.createTempFile(dir.toPath(), "run",
+                ".bin").toFile();
+            try
+            {
+                Sorter sorter = new Sorter(input, scratch.getPath());
+                sorter.setHeapRecords(heapRecords);
+                sorter.setScheduler(scheduler);
+                sorter.sort();
+            }
+            finally
+            {
+                scratch.delete();
+                finished = System.nanoTime();
+            }
+        }
+
+        /**
+         * Get the time spent waiting for a worker thread
+         *
+         * @return
+         *          The queue time in nanoseconds
+         */
+        public long getQueueNanos()
+        {
+            return started - submitted;
+        }
+
+        /**
+         * Get the time spent sorting
+         *
+         * @return
+         *          The run time in nanoseconds
+         */
+        public long getRunNanos()
+        {
+            return finished - started;
+        }
+
+        /**
+         * Get the time from submit until the sort finished
+         *
+         * @return
+         *          The latency in nanoseconds
+         */
+        public long getLatencyNanos()
+        {
+            return finished - submitted;
+        }
+
+        /**
+         * Describe the job's latency
+         *
+         * @return
+         *          The description
+         */
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %d bytes, queued %.3f s, "
+                + "sorted %.3f s, latency %.3f s", input, bytes,
+                getQueueNanos() / 1e9, getRunNanos() / 1e9,
+                getLatencyNanos() / 1e9);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class SortServiceTest extends TestCase {
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        //nothing to set up.
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        for (int i = 0; i < 4; i++) {
+            new File("solutionTestData/serviceInput" + i + ".bin").delete();
+        }
+    }
+
+    /**
+     * Test sorting several files in the same directory at once
+     *
+     * @throws IOException
+     */
+    public void testConcurrentSorts() throws IOException {
+        ByteFile[] files = new ByteFile[4];
+        SortService service = new SortService(3,
+            2 * ByteProcessor.HEAP_RECORDS, 1);
+        SortService.SortJob[] jobs = new SortService.SortJob[files.length];
+        for (int i = 0; i < files.length; i++) {
+            String name = "solutionTestData/serviceInput" + i + ".bin";
+            files[i] = new ByteFile(name, 10 + 5 * i);
+            files[i].writeRandomRecords(new Random(i));
+            jobs[i] = service.submit(name);
+        }
+        service.awaitAll();
+        for (int i = 0; i < files.length; i++) {
+            assertTrue(files[i].isSorted());
+            assertTrue(jobs[i].getLatencyNanos() >= jobs[i].getRunNanos());
+        }
+        assertTrue(service.report().startsWith(
+            "solutionTestData/serviceInput0.bin"));
+    }
+
+    /**
+     * Test that an unknown option is an error rather than a file
+     */
+    public void testUnknownOption() {
+        Exception thrown = null;
+        try {
+            SortService.main(new String[] { "-thread", "2",
+                "solutionTestData/serviceInput0.bin" });
+        }
+        catch (IllegalArgumentException e) {
+            thrown = e;
+        }
+        assertNotNull(thrown);
+        assertTrue(thrown.getMessage().contains("-thread"));
+    }
+}
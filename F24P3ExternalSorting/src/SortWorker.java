@@ -0,0 +1,209 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * One worker process of a DistributedSort. The coordinator starts every
+ * worker twice, as a separate JVM each time:
+ * scatter reads the worker's slice of the input and writes each record
+ * to the shuffle file of the worker that owns its key range, then
+ * sort gathers every shuffle file sent to the worker and sorts them
+ * with the normal replacement selection and merge.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class SortWorker {
+
+    /**
+     * @param args
+     *     Command line parameters:
+     *     scatter workDir input worker workers splitter...
+     *     or sort workDir worker workers
+     */
+    public static void main(String[] args) {
+        try
+        {
+            File workDir = new File(args[1]);
+            if (args[0].equals("scatter"))
+            {
+                double[] splitters = new double[args.length - 5];
+                for (int i = 0; i < splitters.length; i++)
+                {
+                    splitters[i] = Double.parseDouble(args[i + 5]);
+                }
+                scatter(workDir, args[2], Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]), splitters);
+            }
+            else
+            {
+                gatherAndSort(workDir, Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]));
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Get the file records from one worker to another are shuffled
+     * through
+     *
+     * @param workDir
+     *          The shared work directory
+     * @param from
+     *          The worker that scattered the records
+     * @param to
+     *          The worker that owns their key range
+     * @return
+     *          The shuffle file
+     */
+    public static File shuffleFile(File workDir, int from, int to)
+    {
+        return new File(workDir, "shuffle_" + from + "_" + to + ".bin");
+    }
+
+    /**
+     * Get the sorted partition file of a worker
+     *
+     * @param workDir
+     *          The shared work directory
+     * @param worker
+     *          The worker
+     * @return
+     *          The partition file
+     */
+    public static File partitionFile(File workDir, int worker)
+    {
+        return new File(workDir, "partition_" + worker + ".bin");
+    }
+
+    /**
+     * Find the key range a key belongs to. Equal keys always go to the
+     * same range.
+     *
+     * @param splitters
+     *          The sorted range boundaries
+     * @param key
+     *          The key
+     * @return
+     *          The number of splitters less than or equal to key
+     */
+    public static int rangeOf(double[] splitters, double key)
+    {
+        int low = 0;
+        int high = splitters.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(splitters[mid], key) <= 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Write this worker's slice of the input to the shuffle files
+     *
+     * @param workDir
+     *          The shared work directory
+     * @param input
+     *          The input file
+     * @param worker
+     *          This worker
+     * @param workers
+     *          The number of workers
+     * @param splitters
+     *          The workers - 1 sorted range boundaries
+     * @throws IOException
+     */
+    public static void scatter(File workDir, String input, int worker,
+        int workers, double[] splitters) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        long records = raf.length() / Record.BYTES;
+        long first = records * worker / workers;
+        long last = records * (worker + 1) / workers;
+        DataOutputStream[] out = new DataOutputStream[workers];
+        for (int to = 0; to < workers; to++)
+        {
+            out[to] = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(shuffleFile(workDir, worker, to)),
+                ByteProcessor.BYTES_PER_BLOCK));
+        }
+        byte[] basicBuffer = new byte[ByteProcessor.BYTES_PER_BLOCK];
+        ByteBuffer bb = ByteBuffer.wrap(basicBuffer);
+        raf.seek(first * Record.BYTES);
+        long left = last - first;
+        while (left > 0)
+        {
+            int n = (int)Math.min(left, ByteProcessor.RECORDS_PER_BLOCK);
+            raf.readFully(basicBuffer, 0, n * Record.BYTES);
+            bb.position(0);
+            for (int rec = 0; rec < n; rec++)
+            {
+                long recID = bb.getLong();
+                double recKey = bb.getDouble();
+                DataOutputStream to = out[rangeOf(splitters, recKey)];
+                to.writeLong(recID);
+                to.writeDouble(recKey);
+            }
+            left -= n;
+        }
+        for (DataOutputStream to : out)
+        {
+            to.close();
+        }
+        raf.close();
+    }
+
+    /**
+     * Concatenate every shuffle file sent to this worker and sort the
+     * result into the worker's partition file
+     *
+     * @param workDir
+     *          The shared work directory
+     * @param worker
+     *          This worker
+     * @param workers
+     *          The number of workers
+     * @throws IOException
+     */
+    public static void gatherAndSort(File workDir, int worker, int workers)
+        throws IOException
+    {
+        File partition = partitionFile(workDir, worker);
+        RandomAccessFile pf = new RandomAccessFile(partition, "rw");
+        pf.setLength(0);
+        byte[] buffer = new byte[ByteProcessor.BYTES_PER_BLOCK];
+        for (int from = 0; from < workers; from++)
+        {
+            File shuffle = shuffleFile(workDir, from, worker);
+            RandomAccessFile sf = new RandomAccessFile(shuffle, "r");
+            int bytesRead;
+            while ((bytesRead = sf.read(buffer)) != -1)
+            {
+                pf.write(buffer, 0, bytesRead);
+            }
+            sf.close();
+            shuffle.delete();
+        }
+        pf.close();
+        File runFile = new File(workDir, "run_" + worker + ".bin");
+        new Sorter(partition.getPath(), runFile.getPath()).sort();
+        runFile.delete();
+    }
+}
@@ -0,0 +1,564 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs one complete external sort of a file in place: replacement
+ * selection into a run file, then the planned merge back into the file.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class Sorter {
+    private String input;
+    private String runFile;
+    private int heapRecords;
+    private int arity;
+    private int fanIn;
+    private Combiner combiner;
+    private IoScheduler scheduler;
+    private boolean checkpoint;
+    private int partitions;
+    private double[] splitters;
+    private PartitionedOutput output;
+    private SortCache cache;
+    private boolean cacheHit;
+    private long runMemory;
+    private boolean lowFootprint;
+    private boolean loadSort;
+    private ScratchDirs scratch;
+    private RunStore store;
+    private long spilledBytes;
+    private long peakScratchBytes;
+    private ByteProcessor processor;
+    private MergePlanner planner;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new Sorter object.
+     *
+     * @param input
+     *            the file to sort
+     * @param runFile
+     *            the scratch file the runs are written to
+     */
+    public Sorter(String input, String runFile) {
+        this.input = input;
+        this.runFile = runFile;
+        this.heapRecords = ByteProcessor.HEAP_RECORDS;
+        this.fanIn = MergePlanner.DEFAULT_FAN_IN;
+    }
+
+    /**
+     * Set the number of records the replacement selection heap holds
+     *
+     * @param heapRecords
+     *          The heap size in records
+     */
+    public void setHeapRecords(int heapRecords)
+    {
+        this.heapRecords = heapRecords;
+    }
+
+    /**
+     * Set the arity of the replacement selection heap
+     *
+     * @param arity
+     *          The number of children per node, or 0 for MinHeap
+     */
+    public void setArity(int arity)
+    {
+        this.arity = arity;
+    }
+
+    /**
+     * Set the number of runs merged at once
+     *
+     * @param fanIn
+     *          The merge fan-in
+     */
+    public void setFanIn(int fanIn)
+    {
+        this.fanIn = fanIn;
+    }
+
+    /**
+     * Set the combiner used to fold equal records
+     *
+     * @param combiner
+     *          The combiner, or null to keep every record
+     */
+    public void setCombiner(Combiner combiner)
+    {
+        this.combiner = combiner;
+    }
+
+    /**
+     * Set the scheduler that limits how many streams use each disk
+     *
+     * @param scheduler
+     *          The scheduler, or null for no limit
+     */
+    public void setScheduler(IoScheduler scheduler)
+    {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Turn checkpoints on or off. With checkpoints, a manifest is kept
+     * next to the run file and a sort that was cut off resumes from the
+     * last finished merge.
+     *
+     * @param checkpoint
+     *          True to write checkpoints
+     */
+    public void setCheckpoint(boolean checkpoint)
+    {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Write the sorted output to key range partitions instead of back
+     * over the input. The partitions are named after the input.
+     *
+     * @param parts
+     *          The number of partitions, or 0 to sort in place
+     * @param bounds
+     *          The sorted parts - 1 range boundaries, or null to pick
+     *          them from a sample of the input
+     */
+    public void setPartitions(int parts, double[] bounds)
+    {
+        this.partitions = parts;
+        this.splitters = bounds;
+    }
+
+    /**
+     * Make the runs by loading, sorting and storing heapRecords records
+     * at a time instead of by replacement selection
+     *
+     * @param load
+     *          True to load, sort and store
+     */
+    public void setLoadSort(boolean load)
+    {
+        this.loadSort = load;
+    }
+
+    /**
+     * Keep the runs in memory outside the Java heap until the merge,
+     * spilling to disk only what does not fit. Checkpointed sorts
+     * always write the run file.
+     *
+     * @param bytes
+     *          The memory the runs may use, or 0 to write the run file
+     */
+    public void setRunMemory(long bytes)
+    {
+        this.runMemory = bytes;
+    }
+
+    /**
+     * Keep the runs in segment files that are deleted as soon as the
+     * merge has read them, instead of in one run file that only grows.
+     * The scratch space then peaks near one copy of the data instead
+     * of one copy per merge level. Checkpointed sorts always write the
+     * run file.
+     *
+     * @param low
+     *          True to release scratch space as it is consumed
+     */
+    public void setLowFootprint(boolean low)
+    {
+        this.lowFootprint = low;
+    }
+
+    /**
+     * Stripe the runs and the intermediate merge outputs over several
+     * scratch directories instead of writing them to the run file.
+     * Checkpointed sorts always write the run file.
+     *
+     * @param dirs
+     *          The directories, or null to use the run file
+     */
+    public void setScratchDirs(ScratchDirs dirs)
+    {
+        this.scratch = dirs;
+    }
+
+    /**
+     * Keep sorted outputs in a cache, so an input that was sorted
+     * before with the same settings is copied instead of sorted.
+     * Partitioned sorts are never cached.
+     *
+     * @param sortCache
+     *          The cache, or null for no caching
+     */
+    public void setCache(SortCache sortCache)
+    {
+        this.cache = sortCache;
+    }
+
+    /**
+     * Sort the input file
+     *
+     * @return
+     *          True if the file had to be sorted, false if it already was
+     * @throws IOException
+     */
+    public boolean sort() throws IOException
+    {
+        processor = new ByteProcessor(input, newHeap(), runFile,
+            heapRecords);
+        processor.setCombiner(combiner);
+        processor.setLoadSort(loadSort);
+        cacheHit = false;
+        MergeManifest manifest = checkpoint ? resume() : null;
+        String cacheKey = null;
+        List<Run> runs;
+        int planFanIn = fanIn;
+        if (manifest != null)
+        {
+            runs = manifest.getRuns();
+            planFanIn = manifest.getFanIn();
+        }
+        else
+        {
+            //If the input file is sorted, we are done, unless records
+            //still have to be combined or partitioned
+            boolean shortcut = combiner == null && partitions == 0;
+            boolean cached = cache != null && partitions == 0;
+            //The cache key comes from the same pass as the sorted check
+            Fingerprint fingerprint = cached ? new Fingerprint() : null;
+            boolean sorted = false;
+            if (shortcut || cached)
+            {
+                sorted = processor.isSorted(fingerprint);
+            }
+            if (shortcut && sorted)
+            {
+                return false;
+            }
+            if (cached)
+            {
+                cacheKey = SortCache.key(fingerprint, settings());
+                if (cache.fetch(cacheKey, input))
+                {
+                    cacheHit = true;
+                    return true;
+                }
+            }
+            if (scratch != null && !checkpoint)
+            {
+                store = new RunStore(scratch,
+                    new File(runFile).getName() + ".spill", runMemory,
+                    RunStore.STRIPE_BYTES);
+                processor.setRunStore(store);
+            }
+            else if ((runMemory > 0 || lowFootprint) && !checkpoint)
+            {
+                store = new RunStore(runFile + ".spill", runMemory,
+                    lowFootprint ? RunStore.FILE_SEGMENT_BYTES
+                        : RunStore.SEGMENT_BYTES);
+                processor.setRunStore(store);
+            }
+            //Create the runFile using replacement selection on inputFile
+            IoScheduler.Permit permit = acquire(input, runFile);
+            try
+            {
+                processor.readRecords();
+                runs = store != null ? MergePlanner.findRuns(store)
+                    : MergePlanner.findRuns(runFile);
+            }
+            catch (IOException e)
+            {
+                closeStore();
+                throw e;
+            }
+            finally
+            {
+                permit.release();
+            }
+            if (checkpoint)
+            {
+                manifest = new MergeManifest(input, runFile, settings(),
+                    fanIn, processor.getRunBytes(),
+                    processor.getRunChecksum(), runs);
+                manifest.save();
+            }
+        }
+        //Merge the runs smallest first, writing to inputFile
+        planner = new MergePlanner(planFanIn, combiner);
+        planner.setStore(store);
+        IoScheduler.Permit permit = acquire(runFile, input);
+        try
+        {
+            planner.plan(runs);
+            if (partitions > 0)
+            {
+                if (splitters == null)
+                {
+                    splitters = DistributedSort.chooseSplitters(input,
+                        partitions, new Random(partitions));
+                }
+                output = new PartitionedOutput(input + ".part", splitters);
+                planner.execute(runFile, output, manifest);
+            }
+            else
+            {
+                planner.execute(runFile, input, manifest);
+            }
+        }
+        finally
+        {
+            permit.release();
+            closeStore();
+        }
+        if (manifest != null)
+        {
+            manifest.delete();
+        }
+        if (cacheKey != null)
+        {
+            cache.store(cacheKey, input);
+        }
+        return true;
+    }
+
+    /**
+     * Free the memory held by the run store, if there is one
+     *
+     * @throws IOException
+     */
+    private void closeStore() throws IOException
+    {
+        if (store != null)
+        {
+            spilledBytes = store.getSpilledBytes();
+            peakScratchBytes = store.getPeakBytes();
+            store.close();
+            store = null;
+        }
+    }
+
+    /**
+     * Get the number of run bytes the last sort had to spill to disk
+     * because they did not fit in the run memory
+     *
+     * @return
+     *          The spilled bytes
+     */
+    public long getSpilledBytes()
+    {
+        return spilledBytes;
+    }
+
+    /**
+     * Get the most scratch space, in memory and on disk, the runs of
+     * the last sort took at once when they were kept in a store
+     *
+     * @return
+     *          The peak scratch bytes
+     */
+    public long getPeakScratchBytes()
+    {
+        return peakScratchBytes;
+    }
+
+    /**
+     * Describe the settings that change what the sorted output holds
+     *
+     * @return
+     *          The settings part of the cache key and the manifest
+     */
+    private String settings()
+    {
+        return combiner == null ? "plain" : combiner.toString();
+    }
+
+    /**
+     * Sort the input up to the final merge, and hand back that merge
+     * to be pulled one record at a time. The input file is left as it
+     * is and the sorted output is never written, which saves a full
+     * write and read of the data when it is only read once. The run
+     * file must stay in place until the iterator is done. Checkpoints,
+     * partitions and the cache do not apply.
+     *
+     * @return
+     *          The sorted records; close it if it is not read to the end
+     * @throws IOException
+     */
+    public MergeIterator sortLazily() throws IOException
+    {
+        processor = new ByteProcessor(input, newHeap(), runFile,
+            heapRecords);
+        processor.setCombiner(combiner);
+        processor.setLoadSort(loadSort);
+        planner = null;
+        //The records must come out in natural order, ties included, as
+        //the stream reports them SORTED
+        if (combiner == null && processor.isSortedById())
+        {
+            //Read the input itself as the one run
+            List<Run> whole = new ArrayList<Run>();
+            whole.add(new Run(input, 0,
+                new File(input).length() / Record.BYTES));
+            return new MergeIterator(whole, null);
+        }
+        List<Run> runs;
+        IoScheduler.Permit permit = acquire(input, runFile);
+        try
+        {
+            processor.readRecords();
+            runs = MergePlanner.findRuns(runFile);
+        }
+        finally
+        {
+            permit.release();
+        }
+        planner = new MergePlanner(fanIn, combiner);
+        planner.plan(runs);
+        return planner.iterate(runFile);
+    }
+
+    /**
+     * Sort the input lazily, as a stream of records in sorted order
+     *
+     * @return
+     *          The sorted records; close the stream when done with it
+     * @throws IOException
+     */
+    public Stream<Record> stream() throws IOException
+    {
+        MergeIterator records = sortLazily();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+            records, Spliterator.ORDERED | Spliterator.SORTED
+                | Spliterator.NONNULL), false).onClose(records::close);
+    }
+
+    /**
+     * Load the manifest of an earlier sort that was cut off
+     *
+     * @return
+     *          The manifest to resume from, or null to start over
+     * @throws IOException
+     *          If the input was already being overwritten and the run
+     *          file can no longer be trusted
+     */
+    private MergeManifest resume() throws IOException
+    {
+        MergeManifest manifest = MergeManifest.load(input, runFile,
+            settings());
+        if (manifest != null && !manifest.verify())
+        {
+            if (manifest.isFinalStarted())
+            {
+                throw new IOException("run file " + runFile
+                    + " is damaged and " + input
+                    + " was partly overwritten");
+            }
+            //The input is untouched, so just sort it again
+            manifest.delete();
+            manifest = null;
+        }
+        return manifest;
+    }
+
+    /**
+     * Create the replacement selection heap. Load-sort-store runs are
+     * sorted in long arrays, so no heap of heapRecords slots is made
+     * for them.
+     *
+     * @return
+     *          The empty heap, or null when making load-sort-store runs
+     */
+    private PriorityHeap<Record> newHeap()
+    {
+        if (loadSort)
+        {
+            return null;
+        }
+        if (arity > 0)
+        {
+            return new DaryHeap<Record>(arity, heapRecords);
+        }
+        return new MinHeap<Record>(new Record[heapRecords], 0, heapRecords);
+    }
+
+    /**
+     * Wait for the scheduler to allow streams over the given files
+     *
+     * @param files
+     *          The files that will be streamed
+     * @return
+     *          The permit to release once the streams are done
+     * @throws IOException
+     */
+    private IoScheduler.Permit acquire(String... files) throws IOException
+    {
+        if (scheduler == null)
+        {
+            return IoScheduler.Permit.NONE;
+        }
+        return scheduler.acquire(files);
+    }
+
+    /**
+     * Print the first record from each block of the sorted output
+     *
+     * @throws IOException
+     */
+    public void print() throws IOException
+    {
+        ByteProcessor printer = new ByteProcessor(input, null);
+        if (output == null)
+        {
+            printer.print(input);
+            return;
+        }
+        for (int p = 0; p < output.getPartitions(); p++)
+        {
+            printer.print(output.partitionFile(p));
+        }
+    }
+
+    /**
+     * Get the partitioned output of the last sort
+     *
+     * @return
+     *          The output, or null if the sort was in place
+     */
+    public PartitionedOutput getOutput()
+    {
+        return output;
+    }
+
+    /**
+     * Check if the last sort was answered from the cache
+     *
+     * @return
+     *          True if the output was copied from the cache
+     */
+    public boolean isCacheHit()
+    {
+        return cacheHit;
+    }
+
+    /**
+     * Get the planner used by the last sort
+     *
+     * @return
+     *          The planner, or null if the file was already sorted or
+     *          came from the cache
+     */
+    public MergePlanner getPlanner()
+    {
+        return planner;
+    }
+}
@@ -0,0 +1,684 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Picks how to sort a file from a cheap look at it. A few blocks spread
+ * over the file give its presortedness, key range, NaN share and
+ * duplicate share, and a cost model turns those, the cores, the memory
+ * budget and the scratch drives into an estimated time for each way
+ * of sorting:
+ *
+ * in memory, when the whole file fits;
+ * distribution, which scatters into key range buckets and sorts them
+ * on every core;
+ * merge sort with replacement selection runs, which are long when
+ * the input is nearly sorted;
+ * merge sort with load-sort-store runs, which are shorter but much
+ * cheaper to make.
+ *
+ * The merge fan-in is the smallest one that needs the fewest passes.
+ * The cheapest estimate wins unless a strategy is forced, and the
+ * report shows every estimate so a run can be compared with them.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class StrategyPlanner {
+    /**
+     * the number of blocks read to sample the input
+     */
+    public final static int SAMPLE_BLOCKS = 64;
+    /**
+     * the assumed sequential bandwidth of one drive, in MB per second
+     */
+    public final static double DEFAULT_BANDWIDTH = 200;
+    /**
+     * the most runs one merge reads
+     */
+    public final static int MAX_FAN_IN = 64;
+    /**
+     * nanoseconds per record per level of a heap of Record objects
+     */
+    public final static double HEAP_NS = 20;
+    /**
+     * nanoseconds per record per level of sorting long arrays
+     */
+    public final static double SORT_NS = 5;
+    /**
+     * nanoseconds to scatter one record to its bucket
+     */
+    public final static double SCATTER_NS = 15;
+    /**
+     * heap bytes per record of a replacement selection heap
+     */
+    public final static int HEAP_RECORD_BYTES = 48;
+    /**
+     * heap bytes per record of a load-sort-store buffer
+     */
+    public final static int LOAD_RECORD_BYTES = 32;
+
+    /**
+     * The ways to sort
+     */
+    public enum Strategy {
+        /**
+         * read the whole file, sort it and write it back
+         */
+        IN_MEMORY,
+        /**
+         * scatter into key range buckets and sort each one in memory
+         */
+        DISTRIBUTION,
+        /**
+         * merge sort, with runs made by replacement selection
+         */
+        REPLACEMENT_SELECTION,
+        /**
+         * merge sort, with runs made by loading, sorting and storing
+         */
+        LOAD_SORT_STORE;
+
+        /**
+         * Find the strategy with the given name, ignoring case and
+         * allowing - for _
+         *
+         * @param name
+         *          The name of the strategy
+         * @return
+         *          The strategy
+         */
+        public static Strategy fromName(String name)
+        {
+            return valueOf(name.toUpperCase().replace('-', '_'));
+        }
+
+        /**
+         * Get the name used on the command line
+         *
+         * @return
+         *          The lower case name
+         */
+        public String label()
+        {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private String input;
+    private String runFile;
+    private long memory;
+    private int cores;
+    private double bandwidth;
+    private int devices;
+    private ScratchDirs scratch;
+    private Strategy override;
+
+    private long records;
+    private int sampled;
+    private double descents;
+    private boolean looksSorted;
+    private double minKey;
+    private double maxKey;
+    private double nanShare;
+    private double duplicateShare;
+    private double heavyShare;
+
+    private double[] costs;
+    private String[] notes;
+    private Strategy chosen;
+    private int fanIn;
+    private int runRecords;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new StrategyPlanner object that may use half the Java
+     * heap, every core and one drive of DEFAULT_BANDWIDTH.
+     *
+     * @param input
+     *            the file to sort in place
+     * @param runFile
+     *            the scratch file
+     */
+    public StrategyPlanner(String input, String runFile) {
+        this.input = input;
+        this.runFile = runFile;
+        this.memory = Runtime.getRuntime().maxMemory() / 2;
+        this.cores = Runtime.getRuntime().availableProcessors();
+        this.bandwidth = DEFAULT_BANDWIDTH;
+        this.devices = 1;
+    }
+
+    /**
+     * Set the memory the sort may use
+     *
+     * @param bytes
+     *          The memory budget
+     */
+    public void setMemory(long bytes)
+    {
+        this.memory = bytes;
+    }
+
+    /**
+     * Set the number of cores the sort may use
+     *
+     * @param count
+     *          The number of cores
+     */
+    public void setCores(int count)
+    {
+        this.cores = count;
+    }
+
+    /**
+     * Describe the scratch drives
+     *
+     * @param mbPerSecond
+     *          The sequential bandwidth of one drive
+     * @param count
+     *          The number of drives scratch files are striped over
+     */
+    public void setDevices(double mbPerSecond, int count)
+    {
+        this.bandwidth = mbPerSecond;
+        this.devices = count;
+    }
+
+    /**
+     * Stripe the runs of a merge sort over several directories, and
+     * plan for one drive per device they are on
+     *
+     * @param dirs
+     *          The directories, or null to use the run file
+     */
+    public void setScratchDirs(ScratchDirs dirs)
+    {
+        this.scratch = dirs;
+        setDevices(bandwidth, dirs == null ? 1 : dirs.devices());
+    }
+
+    /**
+     * Force a strategy, for benchmarking one against the others
+     *
+     * @param strategy
+     *          The strategy, or null to take the cheapest
+     */
+    public void setOverride(Strategy strategy)
+    {
+        this.override = strategy;
+    }
+
+    /**
+     * Sample the input and estimate every strategy
+     *
+     * @return
+     *          The chosen strategy
+     * @throws IOException
+     */
+    public Strategy plan() throws IOException
+    {
+        sample();
+        long bytes = records * Record.BYTES;
+        costs = new double[Strategy.values().length];
+        notes = new String[costs.length];
+
+        //In memory: one read, one write and one array sort
+        int inMemory = Strategy.IN_MEMORY.ordinal();
+        if (3 * bytes <= memory && bytes < Integer.MAX_VALUE / 2)
+        {
+            costs[inMemory] = 2 * io(bytes, 1)
+                + cpu(records * log2(records) * SORT_NS);
+            notes[inMemory] = "fits in memory";
+        }
+        else
+        {
+            costs[inMemory] = Double.POSITIVE_INFINITY;
+            notes[inMemory] = "needs " + mb(3 * bytes) + " of memory";
+        }
+
+        //Distribution: two passes, buckets sorted on every core, and
+        //buckets of one heavy key merge sorted instead
+        int distribution = Strategy.DISTRIBUTION.ordinal();
+        long bucketRecords = Math.max(1,
+            memory / (3L * cores * Record.BYTES));
+        costs[distribution] = 2 * io(bytes, 1) + 2 * io(bytes, devices)
+            + cpu(records * SCATTER_NS + records * log2(Math.min(records,
+                bucketRecords)) * SORT_NS / cores)
+            + heavyShare * mergeCost(bytes, memory / HEAP_RECORD_BYTES,
+                2, HEAP_NS);
+        notes[distribution] = cores + " threads, "
+            + percent(heavyShare) + " in heavy key buckets";
+
+        //Merge sorts: the runs decide the passes, and the check Sorter
+        //makes first ends the sort when the input is already sorted
+        int selection = Strategy.REPLACEMENT_SELECTION.ordinal();
+        long heapRecords = runLimit(HEAP_RECORD_BYTES);
+        double runLength = heapRecords
+            / Math.max(descents, 1.0 / Math.max(1, sampled));
+        costs[selection] = mergeCost(bytes, heapRecords, runLength,
+            HEAP_NS);
+        notes[selection] = describeMerge(runLength);
+
+        int loadSort = Strategy.LOAD_SORT_STORE.ordinal();
+        long loadRecords = runLimit(LOAD_RECORD_BYTES);
+        costs[loadSort] = mergeCost(bytes, loadRecords, loadRecords,
+            SORT_NS);
+        notes[loadSort] = describeMerge(loadRecords);
+        if (looksSorted)
+        {
+            costs[selection] = io(bytes, 1);
+            costs[loadSort] = costs[selection];
+            notes[selection] = "the sorted check ends it";
+            notes[loadSort] = notes[selection];
+        }
+
+        chosen = override;
+        if (chosen == null)
+        {
+            chosen = Strategy.values()[0];
+            for (Strategy strategy : Strategy.values())
+            {
+                if (costs[strategy.ordinal()] < costs[chosen.ordinal()])
+                {
+                    chosen = strategy;
+                }
+            }
+        }
+        //Set up the chosen merge sort
+        if (chosen == Strategy.REPLACEMENT_SELECTION)
+        {
+            runRecords = (int)heapRecords;
+            fanIn = fanInFor(runCount(runLength));
+        }
+        else
+        {
+            runRecords = (int)loadRecords;
+            fanIn = fanInFor(runCount(loadRecords));
+        }
+        return chosen;
+    }
+
+    /**
+     * Read SAMPLE_BLOCKS blocks spread over the input and measure them
+     *
+     * @throws IOException
+     */
+    private void sample() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        try
+        {
+            records = raf.length() / Record.BYTES;
+            long blocks = (records + ByteProcessor.RECORDS_PER_BLOCK - 1)
+                / ByteProcessor.RECORDS_PER_BLOCK;
+            int reads = (int)Math.min(blocks, SAMPLE_BLOCKS);
+            byte[] block = new byte[ByteProcessor.BYTES_PER_BLOCK];
+            long[] keys = new long[reads * ByteProcessor.RECORDS_PER_BLOCK];
+            long[] ids = new long[ByteProcessor.RECORDS_PER_BLOCK];
+            long[] blockKeys = new long[ByteProcessor.RECORDS_PER_BLOCK];
+            sampled = 0;
+            long pairs = 0;
+            long down = 0;
+            looksSorted = true;
+            long lastKey = Long.MIN_VALUE;
+            for (int i = 0; i < reads; i++)
+            {
+                long at = blocks * i / reads * ByteProcessor.BYTES_PER_BLOCK;
+                raf.seek(at);
+                int bytes = (int)Math.min(block.length, raf.length() - at);
+                bytes -= bytes % Record.BYTES;
+                raf.readFully(block, 0, bytes);
+                int n = BlockScan.decode(block, bytes, ids, blockKeys);
+                long blockDown = 0;
+                for (int r = 1; r < n; r++)
+                {
+                    if (blockKeys[r] < blockKeys[r - 1])
+                    {
+                        blockDown++;
+                    }
+                }
+                pairs += Math.max(0, n - 1);
+                down += blockDown;
+                //A block without descents runs from its min to its max,
+                //so it follows the last block if its min is high enough
+                if (n > 0)
+                {
+                    if (blockDown > 0 || BlockScan.min(blockKeys, n) < lastKey)
+                    {
+                        looksSorted = false;
+                    }
+                    lastKey = BlockScan.max(blockKeys, n);
+                }
+                System.arraycopy(blockKeys, 0, keys, sampled, n);
+                sampled += n;
+            }
+            descents = pairs == 0 ? 0.5 : (double)down / pairs;
+            measureKeys(Arrays.copyOf(keys, sampled));
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Find the key range and how much the sampled keys repeat
+     *
+     * @param keys
+     *          The sampled sortable keys
+     */
+    private void measureKeys(long[] keys)
+    {
+        Arrays.sort(keys);
+        minKey = Double.NaN;
+        maxKey = Double.NaN;
+        int nans = 0;
+        int distinct = 0;
+        int heavy = 0;
+        //A key fills a bucket of its own once it has this many records
+        long bucketRecords = Math.max(1,
+            memory / (3L * cores * Record.BYTES));
+        int run = 0;
+        for (int i = 0; i < keys.length; i++)
+        {
+            double key = BlockScan.key(keys[i]);
+            if (Double.isNaN(key))
+            {
+                nans++;
+            }
+            else
+            {
+                minKey = Double.isNaN(minKey) ? key : minKey;
+                maxKey = key;
+            }
+            run++;
+            if (i == keys.length - 1 || keys[i + 1] != keys[i])
+            {
+                distinct++;
+                if ((double)run / keys.length * records > bucketRecords)
+                {
+                    heavy += run;
+                }
+                run = 0;
+            }
+        }
+        nanShare = keys.length == 0 ? 0 : (double)nans / keys.length;
+        duplicateShare = keys.length == 0 ? 0
+            : 1 - (double)distinct / keys.length;
+        heavyShare = keys.length == 0 ? 0 : (double)heavy / keys.length;
+    }
+
+    /**
+     * Get the most records memory holds for making runs
+     *
+     * @param recordBytes
+     *          The memory one record takes
+     * @return
+     *          The number of records, at least one block and at most
+     *          the whole input
+     */
+    private long runLimit(int recordBytes)
+    {
+        long most = Math.min(Integer.MAX_VALUE - 8, memory / recordBytes);
+        return Math.max(ByteProcessor.RECORDS_PER_BLOCK,
+            Math.min(records, most));
+    }
+
+    /**
+     * Estimate a merge sort at the fan-in fanInFor picks
+     *
+     * @param bytes
+     *          The input size
+     * @param memRecords
+     *          The records memory holds while making runs
+     * @param runLength
+     *          The expected records per run
+     * @param levelNs
+     *          The cost per record per level of making runs
+     * @return
+     *          The estimated seconds
+     */
+    private double mergeCost(long bytes, long memRecords, double runLength,
+        double levelNs)
+    {
+        long runs = runCount(runLength);
+        int k = fanInFor(runs);
+        int passes = passes(runs, k);
+        //Input read and run file written, then the run file is read
+        //and written once per pass, the last write going to the input
+        double io = io(bytes, 1) + io(bytes, devices)
+            + Math.max(0, passes - 1) * 2 * io(bytes, devices)
+            + io(bytes, devices) + io(bytes, 1);
+        double cpu = records * log2(memRecords) * levelNs
+            + passes * records * log2(k) * HEAP_NS;
+        return io + cpu(cpu);
+    }
+
+    /**
+     * Count the runs of a given length the input makes
+     *
+     * @param runLength
+     *          The expected records per run
+     * @return
+     *          The number of runs, at least one
+     */
+    private long runCount(double runLength)
+    {
+        return Math.max(1, (long)Math.ceil(records
+            / Math.max(1, Math.min(records, runLength))));
+    }
+
+    /**
+     * Find the smallest fan-in that merges the runs in as few passes as
+     * the largest fan-in memory allows
+     *
+     * @param runs
+     *          The number of runs
+     * @return
+     *          The fan-in
+     */
+    private int fanInFor(long runs)
+    {
+        int most = (int)Math.max(2, Math.min(MAX_FAN_IN,
+            memory / (2L * ByteProcessor.BYTES_PER_BLOCK)));
+        int fewest = passes(runs, most);
+        int k = 2;
+        while (k < most && passes(runs, k) > fewest)
+        {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Count the merge passes for a number of runs
+     *
+     * @param runs
+     *          The number of runs
+     * @param k
+     *          The fan-in
+     * @return
+     *          The number of passes, at least one for the copy back
+     */
+    private static int passes(long runs, int k)
+    {
+        int passes = 1;
+        for (long reach = k; reach < runs; reach *= k)
+        {
+            passes++;
+        }
+        return passes;
+    }
+
+    /**
+     * Describe the runs and merge passes a merge sort expects
+     *
+     * @param runLength
+     *          The expected records per run
+     * @return
+     *          The description
+     */
+    private String describeMerge(double runLength)
+    {
+        long runs = runCount(runLength);
+        int k = fanInFor(runs);
+        return runs + " runs, fan-in " + k + ", " + passes(runs, k)
+            + " passes";
+    }
+
+    /**
+     * Estimate the seconds to move bytes once
+     *
+     * @param bytes
+     *          The bytes
+     * @param drives
+     *          The drives the bytes are spread over
+     * @return
+     *          The seconds
+     */
+    private double io(long bytes, int drives)
+    {
+        return bytes / (bandwidth * (1 << 20) * Math.max(1, drives));
+    }
+
+    /**
+     * Turn nanoseconds into seconds
+     *
+     * @param ns
+     *          The nanoseconds
+     * @return
+     *          The seconds
+     */
+    private static double cpu(double ns)
+    {
+        return ns / 1e9;
+    }
+
+    /**
+     * Take the base 2 logarithm, at least 1
+     *
+     * @param n
+     *          The number
+     * @return
+     *          The logarithm
+     */
+    private static double log2(double n)
+    {
+        return Math.max(1, Math.log(n) / Math.log(2));
+    }
+
+    /**
+     * Format bytes as megabytes
+     *
+     * @param bytes
+     *          The bytes
+     * @return
+     *          The text
+     */
+    private static String mb(long bytes)
+    {
+        return (bytes >> 20) + " MB";
+    }
+
+    /**
+     * Format a share as a percentage
+     *
+     * @param share
+     *          The share, from 0 to 1
+     * @return
+     *          The text
+     */
+    private static String percent(double share)
+    {
+        return String.format("%.1f%%", 100 * share);
+    }
+
+    /**
+     * Sort the input with the strategy plan chose
+     *
+     * @throws IOException
+     */
+    public void execute() throws IOException
+    {
+        if (chosen == Strategy.IN_MEMORY || chosen == Strategy.DISTRIBUTION)
+        {
+            DistributionSorter sorter = new DistributionSorter(input,
+                runFile);
+            sorter.setMemory(memory);
+            sorter.setThreads(chosen == Strategy.IN_MEMORY ? 1 : cores);
+            sorter.sort();
+            return;
+        }
+        Sorter sorter = new Sorter(input, runFile);
+        sorter.setHeapRecords(runRecords);
+        sorter.setFanIn(fanIn);
+        sorter.setLoadSort(chosen == Strategy.LOAD_SORT_STORE);
+        sorter.setScratchDirs(scratch);
+        sorter.sort();
+    }
+
+    /**
+     * Describe the sample, every estimate and the decision
+     *
+     * @return
+     *          The report
+     */
+    public String report()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(records).append(" records, ").append(sampled)
+            .append(" sampled: ").append(percent(descents))
+            .append(" descents").append(looksSorted ? " (looks sorted)"
+                : "").append(", keys ").append(minKey).append(" to ")
+            .append(maxKey).append(", ").append(percent(nanShare))
+            .append(" NaN, ").append(percent(duplicateShare))
+            .append(" duplicates\n");
+        sb.append(cores).append(" cores, ").append(mb(memory))
+            .append(" memory, ").append(devices).append(" drives at ")
+            .append(bandwidth).append(" MB/s\n");
+        for (Strategy strategy : Strategy.values())
+        {
+            double cost = costs[strategy.ordinal()];
+            sb.append(strategy.label()).append(": ")
+                .append(Double.isInfinite(cost) ? "-"
+                    : String.format("%.1f s", cost))
+                .append(" (").append(notes[strategy.ordinal()])
+                .append(")\n");
+        }
+        sb.append(override != null ? "forced " : "chose ")
+            .append(chosen.label()).append(", estimated ")
+            .append(String.format("%.1f s", costs[chosen.ordinal()]));
+        if (chosen == Strategy.REPLACEMENT_SELECTION
+            || chosen == Strategy.LOAD_SORT_STORE)
+        {
+            sb.append(" with fan-in ").append(fanIn).append(" and ")
+                .append(runRecords).append(" records per load");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the fan-in the chosen merge sort uses
+     *
+     * @return
+     *          The fan-in
+     */
+    public int getFanIn()
+    {
+        return fanIn;
+    }
+
+    /**
+     * Get the estimated seconds of a strategy
+     *
+     * @param strategy
+     *          The strategy
+     * @return
+     *          The estimate, or infinity if it cannot be used
+     */
+    public double getCost(Strategy strategy)
+    {
+        return costs[strategy.ordinal()];
+    }
+}
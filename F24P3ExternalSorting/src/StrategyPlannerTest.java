@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class StrategyPlannerTest extends TestCase {
+    private String file;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        file = "solutionTestData/planned.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(file).delete();
+        for (String name : new String[] { "planScratchA", "planScratchB" }) {
+            File dir = new File("solutionTestData", name);
+            File[] left = dir.listFiles();
+            if (left != null) {
+                for (File f : left) {
+                    f.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Write a file with the given shape
+     *
+     * @param records
+     *            the number of records
+     * @param shape
+     *            the key shape
+     * @return the file contents with its records in order
+     * @throws IOException
+     */
+    private byte[] generate(long records, DataGenerator.Shape shape)
+        throws IOException {
+        DataGenerator generator = new DataGenerator(file, records, shape);
+        generator.setSeed(11);
+        generator.write();
+        return ordered(Files.readAllBytes(new File(file).toPath()));
+    }
+
+    /**
+     * Put records in key and then ID order
+     *
+     * @param data
+     *            the records
+     * @return the ordered records
+     */
+    private byte[] ordered(byte[] data) {
+        int n = data.length / Record.BYTES;
+        long[] ids = new long[n];
+        long[] keys = new long[n];
+        BlockScan.decode(data, data.length, ids, keys);
+        BlockScan.sortBlock(keys, ids, n);
+        ByteBuffer bb = ByteBuffer.allocate(data.length);
+        for (int i = 0; i < n; i++) {
+            bb.putLong(ids[i]).putDouble(BlockScan.key(keys[i]));
+        }
+        return bb.array();
+    }
+
+    /**
+     * A small file is sorted in memory, and a large one with little
+     * memory is not
+     *
+     * @throws IOException
+     */
+    public void testSmallFileInMemory() throws IOException {
+        generate(20000, DataGenerator.Shape.UNIFORM);
+        StrategyPlanner planner = new StrategyPlanner(file,
+            Externalsort.RUN_FILE);
+        assertEquals(StrategyPlanner.Strategy.IN_MEMORY, planner.plan());
+        assertTrue(planner.report().contains("chose in-memory"));
+
+        planner.setMemory(64 * ByteProcessor.BYTES_PER_BLOCK);
+        assertFalse(planner.plan() == StrategyPlanner.Strategy.IN_MEMORY);
+        assertTrue(Double.isInfinite(planner.getCost(
+            StrategyPlanner.Strategy.IN_MEMORY)));
+    }
+
+    /**
+     * Every strategy sorts correctly when forced
+     *
+     * @throws IOException
+     */
+    public void testForcedStrategies() throws IOException {
+        for (StrategyPlanner.Strategy strategy : StrategyPlanner.Strategy
+            .values()) {
+            byte[] expected = generate(60000,
+                DataGenerator.Shape.DUPLICATES);
+            StrategyPlanner planner = new StrategyPlanner(file,
+                Externalsort.RUN_FILE);
+            planner.setMemory(64 * ByteProcessor.BYTES_PER_BLOCK);
+            planner.setCores(2);
+            planner.setOverride(StrategyPlanner.Strategy.fromName(
+                strategy.label()));
+            assertEquals(strategy, planner.plan());
+            assertTrue(planner.report().contains("forced "
+                + strategy.label()));
+            planner.execute();
+            assertTrue(new ByteProcessor(file, null).isSorted());
+            assertTrue(Arrays.equals(expected, ordered(Files.readAllBytes(
+                new File(file).toPath()))));
+        }
+    }
+
+    /**
+     * Scratch directories set the drives planned for and take the runs
+     * of a merge sort
+     *
+     * @throws IOException
+     */
+    public void testScratchDirs() throws IOException {
+        byte[] expected = generate(60000, DataGenerator.Shape.UNIFORM);
+        ScratchDirs dirs = ScratchDirs.parse("solutionTestData/planScratchA,"
+            + "solutionTestData/planScratchB");
+        StrategyPlanner planner = new StrategyPlanner(file,
+            Externalsort.RUN_FILE);
+        planner.setMemory(64 * ByteProcessor.BYTES_PER_BLOCK);
+        planner.setScratchDirs(dirs);
+        planner.setOverride(StrategyPlanner.Strategy.REPLACEMENT_SELECTION);
+        planner.plan();
+        assertTrue(planner.report().contains(dirs.devices() + " drives"));
+        planner.execute();
+        dirs.close();
+        assertTrue(Arrays.equals(expected, ordered(Files.readAllBytes(
+            new File(file).toPath()))));
+        assertEquals(0, new File("solutionTestData/planScratchA").list()
+            .length);
+    }
+
+    /**
+     * Presorted input is seen, and a merge sort then costs no more
+     * than the check that finds it sorted
+     *
+     * @throws IOException
+     */
+    public void testPresorted() throws IOException {
+        generate(100000, DataGenerator.Shape.SORTED);
+        StrategyPlanner planner = new StrategyPlanner(file,
+            Externalsort.RUN_FILE);
+        planner.setMemory(64 * ByteProcessor.BYTES_PER_BLOCK);
+        planner.plan();
+        assertTrue(planner.report().contains("looks sorted"));
+        assertTrue(planner.report().contains("sorted check ends it"));
+        assertFalse(planner.plan() == StrategyPlanner.Strategy
+            .DISTRIBUTION);
+        double check = planner.getCost(StrategyPlanner.Strategy
+            .REPLACEMENT_SELECTION);
+
+        generate(100000, DataGenerator.Shape.UNIFORM);
+        planner.plan();
+        assertFalse(planner.report().contains("looks sorted"));
+        assertTrue(planner.getCost(StrategyPlanner.Strategy
+            .REPLACEMENT_SELECTION) > check);
+    }
+
+    /**
+     * Load-sort-store runs give the same output as replacement
+     * selection runs
+     *
+     * @throws IOException
+     */
+    public void testLoadSort() throws IOException {
+        byte[] expected = generate(50000, DataGenerator.Shape.SPECIAL);
+        Sorter sorter = new Sorter(file, Externalsort.RUN_FILE);
+        sorter.setHeapRecords(ByteProcessor.RECORDS_PER_BLOCK * 3);
+        sorter.setFanIn(4);
+        sorter.setLoadSort(true);
+        sorter.sort();
+        assertTrue(new ByteProcessor(file, null).isSorted());
+        assertTrue(Arrays.equals(expected, ordered(Files.readAllBytes(
+            new File(file).toPath()))));
+    }
+}
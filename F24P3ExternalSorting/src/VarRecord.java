@@ -0,0 +1,217 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Holds a single variable length record: a byte string key and a
+ * payload. On disk a record is its key length and payload length as
+ * ints, then the key bytes and the payload bytes, and records are
+ * packed back to back.
+ *
+ * Keys compare as unsigned bytes, so UTF-8 strings sort by code point.
+ * The first 8 key bytes are kept as a normalized prefix: a big endian
+ * long, padded with zeros, that compares the same way when compared
+ * unsigned. Most comparisons are settled by the prefix alone, and the
+ * full key is only looked at when the prefixes tie.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class VarRecord
+    implements Comparable<VarRecord>
+{
+    /**
+     * the bytes of the two length fields in front of every record
+     */
+    public static final int HEADER_BYTES = 8;
+
+    /**
+     * the largest key or payload accepted, to catch a damaged file
+     */
+    public static final int MAX_BYTES = 1 << 24;
+
+    private long            prefix;
+    private byte[]          key;
+    private byte[]          payload;
+    private int             run;
+
+    /**
+     * The constructor for the VarRecord class
+     *
+     * @param key
+     *            record key
+     * @param payload
+     *            record payload
+     */
+    public VarRecord(byte[] key, byte[] payload)
+    {
+        this(key, payload, -1);
+    }
+
+    /**
+     * The constructor for the VarRecord class
+     *
+     * @param key
+     *            record key
+     * @param payload
+     *            record payload
+     * @param run
+     *            record run
+     */
+    public VarRecord(byte[] key, byte[] payload, int run)
+    {
+        this.prefix = normalize(key);
+        this.key = key;
+        this.payload = payload;
+        this.run = run;
+    }
+
+    /**
+     * Pack the first 8 bytes of a key into a long that orders the same
+     * way under Long.compareUnsigned
+     *
+     * @param key
+     *          The key
+     * @return
+     *          The normalized prefix
+     */
+    public static long normalize(byte[] key)
+    {
+        long p = 0;
+        for (int i = 0; i < Long.BYTES; i++)
+        {
+            p = (p << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return p;
+    }
+
+    /**
+     * Read the next record from a stream
+     *
+     * @param in
+     *          The stream
+     * @param run
+     *          The run the record comes from
+     * @return
+     *          The record, or null at the end of the stream
+     * @throws IOException
+     *          Also if the stream ends inside a record
+     */
+    public static VarRecord read(DataInputStream in, int run)
+        throws IOException
+    {
+        int first = in.read();
+        if (first == -1)
+        {
+            return null;
+        }
+        int keyLength = (first << 24) | (in.readUnsignedByte() << 16)
+            | in.readUnsignedShort();
+        int payloadLength = in.readInt();
+        if (keyLength < 0 || keyLength > MAX_BYTES || payloadLength < 0
+            || payloadLength > MAX_BYTES)
+        {
+            throw new IOException("bad record lengths " + keyLength + ", "
+                + payloadLength);
+        }
+        byte[] key = new byte[keyLength];
+        byte[] payload = new byte[payloadLength];
+        in.readFully(key);
+        in.readFully(payload);
+        return new VarRecord(key, payload, run);
+    }
+
+    /**
+     * Write this record to a stream
+     *
+     * @param out
+     *          The stream
+     * @throws IOException
+     */
+    public void write(DataOutputStream out) throws IOException
+    {
+        out.writeInt(key.length);
+        out.writeInt(payload.length);
+        out.write(key);
+        out.write(payload);
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Return the number of bytes the record takes on disk
+     *
+     * @return record size
+     */
+    public int getBytes()
+    {
+        return HEADER_BYTES + key.length + payload.length;
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Return the key of the record
+     *
+     * @return record key
+     */
+    public byte[] getKey()
+    {
+        return key;
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Return the payload of the record
+     *
+     * @return record payload
+     */
+    public byte[] getPayload()
+    {
+        return payload;
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Return the normalized key prefix of the record
+     *
+     * @return record prefix
+     */
+    public long getPrefix()
+    {
+        return prefix;
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Return the run value from the record
+     *
+     * @return record run
+     */
+    public int getRun()
+    {
+        return run;
+    }
+
+    // ----------------------------------------------------------
+    /**
+     * Compare two records by key, looking at the prefixes first. Equal
+     * keys are ordered by payload so the order is always the same.
+     *
+     * @return int
+     */
+    @Override
+    public int compareTo(VarRecord toBeCompared)
+    {
+        int cmp = Long.compareUnsigned(this.prefix, toBeCompared.prefix);
+        if (cmp == 0)
+        {
+            cmp = Arrays.compareUnsigned(this.key, toBeCompared.key);
+        }
+        if (cmp == 0)
+        {
+            cmp = Arrays.compareUnsigned(this.payload,
+                toBeCompared.payload);
+        }
+        return cmp;
+    }
+}
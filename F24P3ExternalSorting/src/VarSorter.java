@@ -0,0 +1,409 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts a file of variable length records in place. Run generation
+ * is replacement selection with a memory budget in bytes instead of a
+ * fixed number of records, and the runs are merged smallest first with
+ * at most fanIn runs at once. Every file is read and written
+ * sequentially through one block sized buffer per stream.
+ *
+ * @author kuzoto
+ * @version October 2024
+ */
+public class VarSorter {
+    /**
+     * the bytes a record is assumed to cost in memory besides its data
+     */
+    public final static int OBJECT_BYTES = 64;
+
+    private String input;
+    private String runFile;
+    private long memoryBytes;
+    private int fanIn;
+    private List<long[]> runs;
+    private int merges;
+
+    // ----------------------------------------------------------
+    /**
+     * Create a new VarSorter object.
+     *
+     * @param input
+     *            the file to sort
+     * @param runFile
+     *            the scratch file the runs are written to
+     * @param memoryBytes
+     *            the memory the selection heap may use
+     * @param fanIn
+     *            the maximum number of runs merged at once
+     */
+    public VarSorter(String input, String runFile, long memoryBytes,
+        int fanIn) {
+        if (fanIn < 2)
+        {
+            throw new IllegalArgumentException("fan-in must be at least 2");
+        }
+        this.input = input;
+        this.runFile = runFile;
+        this.memoryBytes = memoryBytes;
+        this.fanIn = fanIn;
+    }
+
+    /**
+     * Sort the input file
+     *
+     * @throws IOException
+     */
+    public void sort() throws IOException
+    {
+        makeRuns();
+        merges = 0;
+        //Merge the smallest runs first, like MergePlanner
+        PriorityQueue<long[]> queue = new PriorityQueue<long[]>(
+            (a, b) -> Long.compare(a[1], b[1]));
+        queue.addAll(runs);
+        long end = 0;
+        for (long[] run : runs)
+        {
+            end += run[1];
+        }
+        while (queue.size() > fanIn)
+        {
+            List<long[]> inputs = new ArrayList<long[]>();
+            for (int i = 0; i < fanIn; i++)
+            {
+                inputs.add(queue.poll());
+            }
+            long bytes = merge(inputs, runFile, true);
+            queue.add(new long[] { end, bytes });
+            end += bytes;
+        }
+        merge(new ArrayList<long[]>(queue), input, false);
+    }
+
+    /**
+     * Write sorted runs of the input to the run file with replacement
+     * selection. Each heap entry carries the number of the run it
+     * belongs to, so a record smaller than the last one written waits
+     * for the next run.
+     *
+     * @throws IOException
+     */
+    private void makeRuns() throws IOException
+    {
+        runs = new ArrayList<long[]>();
+        int capacity = (int)Math.max(1, Math.min(Integer.MAX_VALUE - 8,
+            memoryBytes / (VarRecord.HEADER_BYTES + OBJECT_BYTES)));
+        DaryHeap<Entry> heap = new DaryHeap<Entry>(4, capacity);
+        DataInputStream in = open(input, 0, Long.MAX_VALUE);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(runFile), ByteProcessor.BYTES_PER_BLOCK));
+        long heapBytes = 0;
+        long written = 0;
+        long runStart = 0;
+        int current = 0;
+        VarRecord last = null;
+        try
+        {
+            VarRecord rec;
+            while (true)
+            {
+                rec = VarRecord.read(in, -1);
+                //Make room for the next record, or drain at the end
+                while (heap.heapSize() > 0 && (rec == null
+                    || heap.heapSize() == capacity
+                    || heapBytes + cost(rec) > memoryBytes))
+                {
+                    Entry min = heap.removeMin();
+                    if (min.run != current)
+                    {
+                        runs.add(new long[] { runStart, written - runStart });
+                        runStart = written;
+                        current = min.run;
+                    }
+                    min.rec.write(out);
+                    written += min.rec.getBytes();
+                    heapBytes -= cost(min.rec);
+                    last = min.rec;
+                }
+                if (rec == null)
+                {
+                    break;
+                }
+                boolean late = last != null && rec.compareTo(last) < 0;
+                heap.insert(new Entry(late ? current + 1 : current, rec));
+                heapBytes += cost(rec);
+            }
+            if (written > runStart)
+            {
+                runs.add(new long[] { runStart, written - runStart });
+            }
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Merge runs of the run file into dest
+     *
+     * @param inputs
+     *          The runs, as byte offset and length pairs
+     * @param dest
+     *          The file to write
+     * @param append
+     *          True to add to the end of dest, false to replace it
+     * @return
+     *          The number of bytes written
+     * @throws IOException
+     */
+    private long merge(List<long[]> inputs, String dest, boolean append)
+        throws IOException
+    {
+        int k = inputs.size();
+        DataInputStream[] in = new DataInputStream[k];
+        MinHeap<VarRecord> heap = new MinHeap<VarRecord>(new VarRecord[k],
+            0, k);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(dest, append),
+            ByteProcessor.BYTES_PER_BLOCK));
+        long written = 0;
+        try
+        {
+            for (int i = 0; i < k; i++)
+            {
+                in[i] = open(runFile, inputs.get(i)[0], inputs.get(i)[1]);
+                VarRecord head = VarRecord.read(in[i], i);
+                if (head != null)
+                {
+                    heap.insert(head);
+                }
+            }
+            while (heap.heapSize() > 0)
+            {
+                VarRecord min = heap.getMin();
+                min.write(out);
+                written += min.getBytes();
+                VarRecord next = VarRecord.read(in[min.getRun()],
+                    min.getRun());
+                if (next != null)
+                {
+                    heap.replaceMin(next);
+                }
+                else
+                {
+                    heap.removeMin();
+                }
+            }
+        }
+        finally
+        {
+            for (DataInputStream stream : in)
+            {
+                if (stream != null)
+                {
+                    stream.close();
+                }
+            }
+            out.close();
+        }
+        merges++;
+        return written;
+    }
+
+    /**
+     * Open part of a file for block at a time reading
+     *
+     * @param name
+     *          The file
+     * @param offset
+     *          The first byte to read
+     * @param bytes
+     *          The number of bytes the stream may read
+     * @return
+     *          The stream
+     * @throws IOException
+     */
+    private static DataInputStream open(String name, long offset,
+        long bytes) throws IOException
+    {
+        FileInputStream file = new FileInputStream(name);
+        file.getChannel().position(offset);
+        return new DataInputStream(new LimitedStream(new BufferedInputStream(
+            file, ByteProcessor.BYTES_PER_BLOCK), bytes));
+    }
+
+    /**
+     * Get the memory a record is charged against the budget
+     *
+     * @param rec
+     *          The record
+     * @return
+     *          The bytes
+     */
+    private static long cost(VarRecord rec)
+    {
+        return rec.getBytes() + OBJECT_BYTES;
+    }
+
+    /**
+     * Get the number of runs made by the last sort
+     *
+     * @return
+     *          The number of runs
+     */
+    public int getRuns()
+    {
+        return runs.size();
+    }
+
+    /**
+     * Get the number of merges done by the last sort
+     *
+     * @return
+     *          The number of merges
+     */
+    public int getMerges()
+    {
+        return merges;
+    }
+
+    /**
+     * @param args
+     *     Command line parameters: the file to sort, with -memory n to
+     *     give the heap n bytes and -fanIn k to merge k runs at once.
+     *     Anything else is an IllegalArgumentException
+     */
+    public static void main(String[] args) {
+        long memory = (long)ByteProcessor.HEAP_RECORDS
+            * ByteProcessor.BYTES_PER_RECORD;
+        int fanIn = MergePlanner.DEFAULT_FAN_IN;
+        for (int i = 1; i < args.length; i++)
+        {
+            if (args[i].equals("-memory") && i + 1 < args.length)
+            {
+                memory = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-fanIn") && i + 1 < args.length)
+            {
+                fanIn = Integer.parseInt(args[++i]);
+            }
+            else
+            {
+                throw new IllegalArgumentException("unknown option "
+                    + args[i] + ", or it is missing its value");
+            }
+        }
+        VarSorter sorter = new VarSorter(args[0], Externalsort.RUN_FILE,
+            memory, fanIn);
+        try
+        {
+            sorter.sort();
+            System.out.println(sorter.getRuns() + " runs, "
+                + sorter.getMerges() + " merges");
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A record in the selection heap and the run it will go to
+     */
+    private static class Entry implements Comparable<Entry> {
+        private int run;
+        private VarRecord rec;
+
+        // ----------------------------------------------------------
+        /**
+         * Create a new Entry object.
+         *
+         * @param run
+         *            the run the record goes to
+         * @param rec
+         *            the record
+         */
+        Entry(int run, VarRecord rec) {
+            this.run = run;
+            this.rec = rec;
+        }
+
+        /**
+         * Order by run, then by record
+         *
+         * @return int
+         */
+        @Override
+        public int compareTo(Entry other)
+        {
+            int cmp = Integer.compare(run, other.run);
+            return cmp != 0 ? cmp : rec.compareTo(other.rec);
+        }
+    }
+
+    /**
+     * A stream that ends after a fixed number of bytes
+     */
+    private static class LimitedStream extends InputStream {
+        private InputStream in;
+        private long left;
+
+        // ----------------------------------------------------------
+        /**
+         * Create a new LimitedStream object.
+         *
+         * @param in
+         *            the stream to read from
+         * @param bytes
+         *            the number of bytes to allow
+         */
+        LimitedStream(InputStream in, long bytes) {
+            this.in = in;
+            this.left = bytes;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (left == 0)
+            {
+                return -1;
+            }
+            left--;
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (left == 0)
+            {
+                return -1;
+            }
+            int n = in.read(b, off, (int)Math.min(len, left));
+            if (n > 0)
+            {
+                left -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import student.TestCase;
+
+/**
+ * @author kuzoto
+ * @version October 2024
+ */
+public class VarSorterTest extends TestCase {
+    private String input;
+    private String runFile;
+
+    /**
+     * set up for tests
+     */
+    public void setUp() {
+        input = "solutionTestData/varInput.bin";
+        runFile = "solutionTestData/varRun.bin";
+    }
+
+    /**
+     * clean up after tests
+     */
+    public void tearDown() {
+        new File(input).delete();
+        new File(runFile).delete();
+    }
+
+    /**
+     * Make a record with a string key and a payload
+     *
+     * @param key
+     *            the key
+     * @param payload
+     *            the payload length
+     * @return the record
+     */
+    private VarRecord record(String key, int payload) {
+        return new VarRecord(key.getBytes(StandardCharsets.UTF_8),
+            new byte[payload]);
+    }
+
+    /**
+     * Prefixes decide most comparisons, and the full key the rest
+     */
+    public void testPrefixOrder() {
+        assertEquals(VarRecord.normalize(new byte[] { 1 }),
+            0x0100000000000000L);
+        assertTrue(record("apple", 0).compareTo(record("banana", 0)) < 0);
+        assertTrue(record("ab", 0).compareTo(record("ab\0", 0)) < 0);
+        assertTrue(record("prefix-tie-a", 0).compareTo(
+            record("prefix-tie-b", 0)) < 0);
+        assertTrue(record("\u00e9", 0).compareTo(record("z", 0)) > 0);
+        assertTrue(record("same", 1).compareTo(record("same", 2)) < 0);
+    }
+
+    /**
+     * A file of records too big for memory is sorted through several
+     * runs and cascaded merges
+     *
+     * @throws IOException
+     */
+    public void testSortManyRuns() throws IOException {
+        Random rand = new Random(39);
+        List<VarRecord> expected = new ArrayList<VarRecord>();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(input)));
+        for (int i = 0; i < 5000; i++) {
+            //Shared 10 byte prefixes force full key comparisons
+            String key = "log-entry-" + rand.nextInt(2000);
+            byte[] payload = new byte[rand.nextInt(300)];
+            rand.nextBytes(payload);
+            VarRecord rec = new VarRecord(
+                key.getBytes(StandardCharsets.UTF_8), payload);
+            rec.write(out);
+            expected.add(rec);
+        }
+        out.close();
+        Collections.sort(expected);
+
+        VarSorter sorter = new VarSorter(input, runFile, 64 * 1024, 3);
+        sorter.sort();
+        assertTrue(sorter.getRuns() > 3);
+        assertTrue(sorter.getMerges() > 1);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(input)));
+        for (VarRecord rec : expected) {
+            VarRecord got = VarRecord.read(in, -1);
+            assertNotNull(got);
+            assertEquals(0, rec.compareTo(got));
+        }
+        assertNull(VarRecord.read(in, -1));
+        in.close();
+    }
+
+    /**
+     * Test that an unknown option or a missing value is an error
+     */
+    public void testUnknownOption() {
+        String[][] bad = { { input, "-fanin", "4" }, { input, "-memory" } };
+        for (String[] args : bad) {
+            Exception thrown = null;
+            try {
+                VarSorter.main(args);
+            }
+            catch (IllegalArgumentException e) {
+                thrown = e;
+            }
+            assertNotNull(thrown);
+        }
+    }
+}